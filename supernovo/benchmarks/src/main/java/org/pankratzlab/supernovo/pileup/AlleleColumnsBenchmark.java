@@ -0,0 +1,72 @@
+package org.pankratzlab.supernovo.pileup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Weighted depths of a pileup's columns: the previous sequential loop, the striped scalar loop and
+ * the Vector API kernel, which is only used by the fork that resolves the incubating module
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class AlleleColumnsBenchmark {
+
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+  @Param({"64", "1024", "16384"})
+  int reads;
+
+  @Param({"2", "4"})
+  int alleles;
+
+  private int[] alleleCodes;
+  private double[] weights;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    alleleCodes = new int[reads];
+    weights = new double[reads];
+    for (int i = 0; i < reads; i++) {
+      // Mostly the first two alleles, as at a heterozygous site
+      alleleCodes[i] = random.nextInt(10) == 0 ? random.nextInt(alleles) : random.nextInt(2);
+      weights[i] = 1.0 - Math.pow(10, -random.nextInt(40) / 10.0);
+    }
+  }
+
+  @Benchmark
+  @Fork(1)
+  public double[] sequential() {
+    double[] depths = new double[alleles];
+    for (int i = 0; i < reads; i++) depths[alleleCodes[i]] += weights[i];
+    return depths;
+  }
+
+  @Benchmark
+  @Fork(1)
+  public double[] striped() {
+    return AlleleColumns.weightedDepths(alleleCodes, weights, reads, alleles);
+  }
+
+  @Benchmark
+  @Fork(
+      value = 1,
+      jvmArgsAppend = {"--add-modules", VECTOR_MODULE})
+  public double[] vector() {
+    return AlleleColumns.weightedDepths(alleleCodes, weights, reads, alleles);
+  }
+}
@@ -23,6 +23,23 @@ public abstract class AbstractPileAllele implements PileAllele {
         * Phred.getAccuracy(samRecord.getMappingQuality());
   }
 
+  /**
+   * @param samRecord read
+   * @param readPos first read position
+   * @param length number of read positions
+   * @return mean {@link #singlePosWeightedDepth(SAMRecord, int)} of the read positions from
+   *     readPos, stopping at the end of the read
+   */
+  protected static final double meanWeightedDepth(SAMRecord samRecord, int readPos, int length) {
+    int limit = Integer.min(samRecord.getReadLength(), readPos + length);
+    if (limit <= readPos) return 0.0;
+    double sum = 0.0;
+    for (int i = readPos; i < limit; i++) {
+      sum += singlePosWeightedDepth(samRecord, i);
+    }
+    return sum / (limit - readPos);
+  }
+
   /* (non-Javadoc)
    * @see java.lang.Object#hashCode()
    */
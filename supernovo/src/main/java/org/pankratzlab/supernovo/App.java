@@ -2,29 +2,94 @@ package org.pankratzlab.supernovo;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.columnar.ColumnarExporter;
+import org.pankratzlab.supernovo.frequency.PopulationFrequencyIndex;
+import org.pankratzlab.supernovo.frequency.PopulationFrequencyIndexBuilder;
+import org.pankratzlab.supernovo.incremental.CandidateSitesWriter;
+import org.pankratzlab.supernovo.incremental.IncrementalPlan;
+import org.pankratzlab.supernovo.io.BamIndex;
+import org.pankratzlab.supernovo.io.BgzfBlockCache;
+import org.pankratzlab.supernovo.io.IndexedBamReader;
+import org.pankratzlab.supernovo.io.MergedSamReader;
+import org.pankratzlab.supernovo.io.ParallelBamReader;
+import org.pankratzlab.supernovo.io.ParallelVcfReader;
+import org.pankratzlab.supernovo.output.DeNovoResultWriter;
+import org.pankratzlab.supernovo.output.RunManifest;
+import org.pankratzlab.supernovo.output.RunReport;
+import org.pankratzlab.supernovo.pileup.ReadLengths;
+import org.pankratzlab.supernovo.server.SuperNovoServer;
+import org.pankratzlab.supernovo.sites.SiteManifest;
+import org.pankratzlab.supernovo.sites.SiteManifestBuilder;
+import org.pankratzlab.supernovo.summary.Rescorer;
+import org.pankratzlab.supernovo.summary.SiteSummaryWriter;
+import org.pankratzlab.supernovo.utilities.MeteredThreadPool;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.MoreExecutors;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFFileReader;
 import picocli.CommandLine;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 public class App implements Runnable {
 
+  /** Standalone tools, invoked by passing the tool name as the first argument */
+  private static final ImmutableMap<String, Supplier<Runnable>> TOOLS =
+      ImmutableMap.of(
+          "index",
+          PopulationFrequencyIndexBuilder::new,
+          "rescore",
+          Rescorer::new,
+          "export",
+          ColumnarExporter::new,
+          "prepare",
+          SiteManifestBuilder::new);
+  private static final int VCF_READ_AHEAD_PER_THREAD = 4;
+  private static final int OUTPUT_READ_AHEAD_PER_THREAD = 4;
+  /** Manifest inputs that may change between a run and an incremental run reusing it */
+  private static final String VCF_INPUT = "vcf";
+  private static final String SITE_MANIFEST_INPUT = "siteManifest";
+  /** Child records sampled to derive the read length from */
+  private static final int READ_LENGTH_SAMPLE = 1000;
+  private static final long DEFAULT_BGZF_CACHE_BYTES = 64L * 1024 * 1024;
+
   @Option(
     names = {"--vcf", "-v"},
     paramLabel = "VCF",
-    description = "VCF with variants to query for de novo mutations",
-    required = true
+    description =
+        "VCF with variants to query for de novo mutations, only used to check the trio when "
+            + "sites are read from a --siteManifest"
   )
   private File vcf;
 
   @Option(
     names = {"--childBam", "--bam"},
     paramLabel = "BAM",
-    description = "BAM of child",
+    split = ",",
+    description =
+        "BAM or CRAM of child, repeat or separate with commas for a sample sequenced across "
+            + "several files",
     required = true
   )
-  private File childBam;
+  private List<File> childBams;
 
   @Option(
     names = {"--childID", "--cID"},
@@ -37,10 +102,13 @@ public class App implements Runnable {
   @Option(
     names = {"--parent1Bam", "--p1Bam"},
     paramLabel = "BAM",
-    description = "BAM of parent 1",
+    split = ",",
+    description =
+        "BAM or CRAM of parent 1, repeat or separate with commas for a sample sequenced across "
+            + "several files",
     required = true
   )
-  private File p1Bam;
+  private List<File> p1Bams;
 
   @Option(
     names = {"--parent1ID", "--p1ID"},
@@ -53,10 +121,13 @@ public class App implements Runnable {
   @Option(
     names = {"--parent2Bam", "--p2Bam"},
     paramLabel = "BAM",
-    description = "BAM of parent 2",
+    split = ",",
+    description =
+        "BAM or CRAM of parent 2, repeat or separate with commas for a sample sequenced across "
+            + "several files",
     required = true
   )
-  private File p2Bam;
+  private List<File> p2Bams;
 
   @Option(
     names = {"--parent2ID", "--p2ID"},
@@ -66,28 +137,553 @@ public class App implements Runnable {
   )
   private String p2ID;
 
+  @Option(
+    names = {"--reference", "-R"},
+    paramLabel = "FASTA",
+    description = "Reference FASTA the CRAMs were aligned to, needed to decode CRAMs"
+  )
+  private File reference;
+
   @Option(
     names = {"--output", "-o"},
     paramLabel = "FILE",
-    description = "Output file for parsed de novo variants",
-    required = true
+    description =
+        "Output file for parsed de novo variants, written as BGZF with a tabix index when ending "
+            + "in .gz or .bgz, required unless serving"
   )
   private File output;
 
+  @Option(
+    names = {"--popFreqIndex"},
+    paramLabel = "INDEX",
+    description = "Population frequency index (see the index tool) used to annotate sites"
+  )
+  private File popFreqIndex;
+
+  @Option(
+    names = {"--maxPopAF"},
+    paramLabel = "AF",
+    description =
+        "Skip sites with a population allele frequency above this (default: ${DEFAULT-VALUE})"
+  )
+  private double maxPopAF = 1.0;
+
+  @Option(
+    names = {"--serve"},
+    paramLabel = "PORT",
+    description =
+        "Instead of writing an output, keep readers open and answer site and region queries on "
+            + "this loopback port"
+  )
+  private Integer servePort;
+
+  @Option(
+    names = {"--serverWorkers"},
+    paramLabel = "N",
+    description =
+        "Number of concurrent queries to serve, each with its own readers "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private int serverWorkers = Runtime.getRuntime().availableProcessors();
+
+  @Option(
+    names = {"--shutdownToken"},
+    paramLabel = "TOKEN",
+    description =
+        "Let clients stop the server with a SHUTDOWN TOKEN query, otherwise SHUTDOWN queries are "
+            + "refused"
+  )
+  private String shutdownToken;
+
+  @Option(
+    names = {"--pileupCacheBytes"},
+    paramLabel = "BYTES",
+    description =
+        "Approximate heap budget shared by the pileup caches (default: a quarter of the maximum "
+            + "heap)"
+  )
+  private long pileupCacheBytes = TrioEvaluator.defaultPileupCacheBytes();
+
+  @Option(
+    names = {"--minDeNovoPosterior"},
+    paramLabel = "P",
+    description =
+        "Only report sites with at least this trio likelihood de novo posterior "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private double minDeNovoPosterior = 0.0;
+
+  @Option(
+    names = {"--vcfThreads"},
+    paramLabel = "N",
+    description =
+        "Threads to inflate and parse the VCF with ahead of evaluation, 1 to read it on the "
+            + "evaluating thread (default: ${DEFAULT-VALUE})"
+  )
+  private int vcfThreads = 1;
+
+  @Option(
+    names = {"--bamThreads"},
+    paramLabel = "N",
+    description =
+        "Threads shared by the BAM readers to inflate blocks ahead of record decoding, 1 to "
+            + "inflate on the evaluating thread (default: ${DEFAULT-VALUE})"
+  )
+  private int bamThreads = 1;
+
+  @Option(
+    names = {"--bamReadAhead"},
+    paramLabel = "BLOCKS",
+    description =
+        "Maximum BAM blocks inflating or inflated ahead of each reader when using --bamThreads "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private int bamReadAhead = 8;
+
+  @Option(
+    names = {"--bamIndexCacheDir"},
+    paramLabel = "DIR",
+    description =
+        "Directory to keep the memory-mapped form of each BAM index in, for later runs to map "
+            + "instead of parsing the index (default: beside each index)"
+  )
+  private File bamIndexCacheDir;
+
+  @Option(
+    names = {"--bgzfCacheBytes"},
+    paramLabel = "BYTES",
+    description =
+        "Approximate heap budget of inflated BAM blocks shared by every reader, so nearby sites "
+            + "reading the same blocks do not inflate them again, 0 to disable (default: "
+            + "${DEFAULT-VALUE})"
+  )
+  private long bgzfCacheBytes = DEFAULT_BGZF_CACHE_BYTES;
+
+  @Option(
+    names = {"--outputThreads"},
+    paramLabel = "N",
+    description =
+        "Threads to deflate a .gz or .bgz output with, 1 to deflate on the evaluating thread "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private int outputThreads = 1;
+
+  @Option(
+    names = {"--outputCompressionLevel"},
+    paramLabel = "LEVEL",
+    description = "Compression level, 0 to 9, of a .gz or .bgz output (default: ${DEFAULT-VALUE})"
+  )
+  private int outputCompressionLevel = BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL;
+
+  @Option(
+    names = {"--slowestSites"},
+    paramLabel = "N",
+    description =
+        "Number of slowest sites to list with their phase latencies in the run report "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private int slowestSites = 20;
+
+  @Option(
+    names = {"--maxSiteRecords"},
+    paramLabel = "N",
+    description = "Downsample the records of a sample at a site to this many (default: no limit)"
+  )
+  private int maxSiteRecords = Integer.MAX_VALUE;
+
+  @Option(
+    names = {"--maxHaplotypeWork"},
+    paramLabel = "N",
+    description =
+        "Narrow, or skip, the haplotype search at a site so searched positions times child "
+            + "records stays within this (default: no limit)"
+  )
+  private long maxHaplotypeWork = Long.MAX_VALUE;
+
+  @Option(
+    names = {"--siteDeadlineMillis"},
+    paramLabel = "MILLIS",
+    description =
+        "Skip, or abandon, the haplotype search at a site once this long has been spent on it, "
+            + "0 for no deadline (default: ${DEFAULT-VALUE})"
+  )
+  private long siteDeadlineMillis = 0L;
+
+  @Option(
+    names = {"--haplotypeSearchDistance"},
+    paramLabel = "BP",
+    description =
+        "Distance either side of a site to search for other variants on the same reads (default: "
+            + "150, or the longest sampled child read length if longer)"
+  )
+  private Integer haplotypeSearchDistance;
+
+  @Option(
+    names = {"--countFragments"},
+    description =
+        "Count the two reads of a pair that overlap a site once, reconciling their qualities, so "
+            + "overlapping mates do not inflate depth"
+  )
+  private boolean countFragments = false;
+
+  @Option(
+    names = {"--summaryStore"},
+    paramLabel = "FILE",
+    description =
+        "Also capture per-site allele summaries of every candidate site to this store, for the "
+            + "rescore tool to rescore under new thresholds without reading the BAMs"
+  )
+  private File summaryStore;
+
+  @Option(
+    names = {"--columnarOutput"},
+    paramLabel = "FILE",
+    description =
+        "Also write the output rows to this columnar store, for filtering with the export tool "
+            + "without parsing text"
+  )
+  private File columnarOutput;
+
+  @Option(
+    names = {"--previousOutput"},
+    paramLabel = "FILE",
+    description =
+        "Output of a previous run over the same BAMs and parameters, only sites of the VCF that "
+            + "are new or changed since, or near a changed site, are evaluated again"
+  )
+  private File previousOutput;
+
+  @Option(
+    names = {"--siteManifest"},
+    paramLabel = "FILE",
+    description =
+        "Site manifest of the child's candidate sites written by the prepare tool, read instead "
+            + "of the VCF"
+  )
+  private File siteManifest;
+
+  @Option(
+    names = {"--firstSite"},
+    paramLabel = "INDEX",
+    description =
+        "Index of the first site of the --siteManifest to evaluate, to run a shard or resume "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private long firstSite = 0;
+
+  @Option(
+    names = {"--siteCount"},
+    paramLabel = "SITES",
+    description = "Maximum sites of the --siteManifest to evaluate (default: all sites)"
+  )
+  private long siteCount = Long.MAX_VALUE;
+
+  @Option(
+    names = {"--trioCheck"},
+    paramLabel = "MODE",
+    description =
+        "Check that the BAMs look like a child and its parents at common SNPs before calling, "
+            + "OFF, WARN to only report an inconsistent trio or FAIL to stop (default: "
+            + "${DEFAULT-VALUE})"
+  )
+  private TrioRelatednessCheck.Mode trioCheck = TrioRelatednessCheck.Mode.WARN;
+
+  @Option(
+    names = {"--trioCheckSites"},
+    paramLabel = "SITES",
+    description = "Maximum SNP sites of the VCF to check the trio at (default: ${DEFAULT-VALUE})"
+  )
+  private int trioCheckSites = TrioRelatednessCheck.DEFAULT_SITES;
+
+  @Mixin private ThresholdOptions thresholdOptions = new ThresholdOptions();
+
+  @Spec private CommandSpec spec;
+
   public static void main(String[] args) {
-    CommandLine.run(new App(), args);
+    if (args.length > 0 && TOOLS.containsKey(args[0])) {
+      CommandLine.run(TOOLS.get(args[0]).get(), Arrays.copyOfRange(args, 1, args.length));
+    } else {
+      CommandLine.run(new App(), args);
+    }
   }
 
   @Override
   public void run() {
-    SamReaderFactory srFactory = SamReaderFactory.make();
-    try (SamReader child = srFactory.open(childBam);
-        SamReader p1 = srFactory.open(p1Bam);
-        SamReader p2 = srFactory.open(p2Bam);
-        VCFFileReader vcfReader = new VCFFileReader(vcf)) {
-      new TrioEvaluator(child, childID, p1, p1ID, p2, p2ID).reportDeNovos(vcfReader, output);
+    if (servePort == null && output == null)
+      throw new ParameterException(spec.commandLine(), "Missing required option '--output'");
+    if (vcf == null && (siteManifest == null || servePort != null))
+      throw new ParameterException(spec.commandLine(), "Missing required option '--vcf'");
+    if (siteManifest == null && (firstSite != 0 || siteCount != Long.MAX_VALUE))
+      throw new ParameterException(
+          spec.commandLine(), "--firstSite and --siteCount require --siteManifest");
+    if (vcf == null && trioCheck == TrioRelatednessCheck.Mode.FAIL)
+      throw new ParameterException(
+          spec.commandLine(), "--trioCheck FAIL requires a --vcf to check sites of");
+    try {
+      Optional<PopulationFrequencyIndex> popFreqs =
+          popFreqIndex == null
+              ? Optional.empty()
+              : Optional.of(PopulationFrequencyIndex.load(popFreqIndex));
+      if (servePort != null) serve(popFreqs);
+      else report(popFreqs);
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
+
+  private void report(Optional<PopulationFrequencyIndex> popFreqs) throws IOException {
+    SamReaderFactory srFactory = samReaderFactory();
+    try (Closer closer = Closer.create()) {
+      RunReport runReport = new RunReport();
+      Optional<MeteredThreadPool> bamInflaters = createPool(closer, bamThreads, "supernovo-bam-%d");
+      Optional<MeteredThreadPool> vcfWorkers = createPool(closer, vcfThreads, "supernovo-vcf-%d");
+      Optional<MeteredThreadPool> deflaters =
+          createPool(closer, outputThreads, "supernovo-deflate-%d");
+      Optional<BgzfBlockCache> blockCache = createBlockCache();
+      SamReader child = openBams(closer, srFactory, childBams, bamInflaters, blockCache);
+      SamReader p1 = openBams(closer, srFactory, p1Bams, bamInflaters, blockCache);
+      SamReader p2 = openBams(closer, srFactory, p2Bams, bamInflaters, blockCache);
+      TrioEvaluator evaluator = createEvaluator(child, p1, p2, popFreqs, pileupCacheBytes);
+      if (trioCheck != TrioRelatednessCheck.Mode.OFF) {
+        if (vcf == null) System.err.println("Skipping trio check, no --vcf to check sites of");
+        else checkTrio(child, p1, p2, evaluator.getContigs(), popFreqs, runReport);
+      }
+      Optional<SiteManifest> sites =
+          siteManifest == null ? Optional.empty() : Optional.of(SiteManifest.load(siteManifest));
+      RunManifest manifest = runManifest(evaluator);
+      Optional<IncrementalPlan> previous =
+          previousOutput == null
+              ? Optional.empty()
+              : Optional.of(planIncremental(closer, evaluator, vcfWorkers, sites, manifest));
+      File manifestFile = RunManifest.manifestFile(output);
+      Files.deleteIfExists(manifestFile.toPath());
+      Stream<ReferencePosition> candidates =
+          sites.isPresent()
+              ? manifestCandidates(evaluator, sites.get())
+              : evaluator.candidatePositions(closer.register(openVariants(closer, vcfWorkers)));
+      DeNovoResultWriter writer =
+          DeNovoResultWriter.open(
+              output,
+              deflaters.map(ExecutorService.class::cast),
+              outputThreads * OUTPUT_READ_AHEAD_PER_THREAD,
+              outputCompressionLevel,
+              Optional.ofNullable(columnarOutput));
+      Optional<SiteSummaryWriter> summaries =
+          summaryStore == null
+              ? Optional.empty()
+              : Optional.of(new SiteSummaryWriter(summaryStore, childID, p1ID, p2ID));
+      evaluator.reportDeNovos(
+          candidates, writer, summaries, new CandidateSitesWriter(output), previous, runReport);
+      bamInflaters.ifPresent(pool -> pool.reportMetrics(runReport, "bamInflaterPool"));
+      blockCache.ifPresent(cache -> cache.reportMetrics(runReport, "bgzfBlockCache"));
+      vcfWorkers.ifPresent(pool -> pool.reportMetrics(runReport, "vcfPool"));
+      deflaters.ifPresent(pool -> pool.reportMetrics(runReport, "outputDeflaterPool"));
+      runReport.write(RunReport.reportFile(output));
+      manifest.write(manifestFile);
+    }
+  }
+
+  private RunManifest runManifest(TrioEvaluator evaluator) throws IOException {
+    ImmutableMap.Builder<String, String> inputs = ImmutableMap.builder();
+    inputs.put("childBam", fingerprints(childBams));
+    inputs.put("parent1Bam", fingerprints(p1Bams));
+    inputs.put("parent2Bam", fingerprints(p2Bams));
+    if (popFreqIndex != null) inputs.put("popFreqIndex", RunManifest.fingerprint(popFreqIndex));
+    if (siteManifest != null)
+      inputs.put(SITE_MANIFEST_INPUT, RunManifest.fingerprint(siteManifest));
+    else inputs.put(VCF_INPUT, RunManifest.fingerprint(vcf));
+    ImmutableMap<String, String> parameters =
+        ImmutableMap.<String, String>builder()
+            .put("childID", childID)
+            .put("parent1ID", p1ID)
+            .put("parent2ID", p2ID)
+            .put("maxPopAF", String.valueOf(maxPopAF))
+            .put("minDeNovoPosterior", String.valueOf(minDeNovoPosterior))
+            .put("maxSiteRecords", String.valueOf(maxSiteRecords))
+            .put("maxHaplotypeWork", String.valueOf(maxHaplotypeWork))
+            .put("siteDeadlineMillis", String.valueOf(siteDeadlineMillis))
+            .put(
+                "haplotypeSearchDistance", String.valueOf(evaluator.getHaplotypeSearchDistance()))
+            .put("countFragments", String.valueOf(evaluator.countsFragments()))
+            .put("thresholds", thresholdOptions.toThresholds().toString())
+            .build();
+    return new RunManifest(inputs.build(), parameters);
+  }
+
+  private static String fingerprints(List<File> files) throws IOException {
+    ImmutableList.Builder<String> fingerprints = ImmutableList.builder();
+    for (File file : files) {
+      fingerprints.add(RunManifest.fingerprint(file));
+    }
+    return Joiner.on(',').join(fingerprints.build());
+  }
+
+  private void checkTrio(
+      SamReader child,
+      SamReader p1,
+      SamReader p2,
+      Contigs contigs,
+      Optional<PopulationFrequencyIndex> popFreqs,
+      RunReport runReport) {
+    TrioRelatednessCheck.Result result;
+    try (VCFFileReader vcfReader = new VCFFileReader(vcf, false)) {
+      result =
+          new TrioRelatednessCheck(child, p1, p2, contigs, popFreqs)
+              .check(vcfReader, trioCheckSites);
+    }
+    result.reportMetrics(runReport);
+    if (result.isConsistent()) return;
+    if (trioCheck == TrioRelatednessCheck.Mode.FAIL && result.isInformative())
+      throw new ParameterException(
+          spec.commandLine(),
+          result.describe() + " (use --trioCheck WARN to call the trio anyway)");
+    System.err.println(result.describe());
+  }
+
+  private IncrementalPlan planIncremental(
+      Closer closer,
+      TrioEvaluator evaluator,
+      Optional<MeteredThreadPool> vcfWorkers,
+      Optional<SiteManifest> sites,
+      RunManifest manifest)
+      throws IOException {
+    RunManifest previous = RunManifest.load(RunManifest.manifestFile(previousOutput));
+    ImmutableList<String> differences =
+        manifest.differences(previous, ImmutableSet.of(VCF_INPUT, SITE_MANIFEST_INPUT));
+    if (!differences.isEmpty())
+      throw new ParameterException(
+          spec.commandLine(),
+          "--previousOutput was run with different " + Joiner.on(", ").join(differences));
+    if (sites.isPresent())
+      return IncrementalPlan.build(
+          previousOutput,
+          manifestCandidates(evaluator, sites.get()),
+          evaluator.getHaplotypeSearchDistance());
+    try (CloseableIterator<VariantContext> variants = openVariants(closer, vcfWorkers)) {
+      return IncrementalPlan.build(
+          previousOutput,
+          evaluator.candidatePositions(variants),
+          evaluator.getHaplotypeSearchDistance());
+    }
+  }
+
+  private Stream<ReferencePosition> manifestCandidates(
+      TrioEvaluator evaluator, SiteManifest sites) {
+    if (!sites.getChildID().equals(childID))
+      throw new ParameterException(
+          spec.commandLine(),
+          "--siteManifest was prepared for " + sites.getChildID() + ", not " + childID);
+    if (firstSite < 0 || firstSite > sites.size())
+      throw new ParameterException(
+          spec.commandLine(),
+          "--firstSite must be from 0 to the " + sites.size() + " sites of the --siteManifest");
+    long end = siteCount >= sites.size() - firstSite ? sites.size() : firstSite + siteCount;
+    return evaluator.candidatePositions(sites, firstSite, end);
+  }
+
+  private CloseableIterator<VariantContext> openVariants(
+      Closer closer, Optional<MeteredThreadPool> vcfWorkers) throws IOException {
+    if (vcfWorkers.isPresent() && !VCFFileReader.isBCF(vcf))
+      return new ParallelVcfReader(vcf, vcfWorkers.get(), vcfThreads * VCF_READ_AHEAD_PER_THREAD);
+    return closer.register(new VCFFileReader(vcf, false)).iterator();
+  }
+
+  private SamReaderFactory samReaderFactory() {
+    SamReaderFactory srFactory = SamReaderFactory.make();
+    return reference == null ? srFactory : srFactory.referenceSequence(reference);
+  }
+
+  private static Optional<MeteredThreadPool> createPool(
+      Closer closer, int threads, String nameFormat) {
+    if (threads <= 1) return Optional.empty();
+    MeteredThreadPool pool = new MeteredThreadPool(threads, nameFormat);
+    closer.register(pool::shutdownNow);
+    return Optional.of(pool);
+  }
+
+  private SamReader openBams(
+      Closer closer,
+      SamReaderFactory srFactory,
+      List<File> bams,
+      Optional<MeteredThreadPool> inflaters,
+      Optional<BgzfBlockCache> blockCache) {
+    ImmutableList.Builder<SamReader> readers = ImmutableList.builderWithExpectedSize(bams.size());
+    for (File bam : bams) {
+      readers.add(openBam(closer, srFactory, bam, inflaters, blockCache));
+    }
+    return MergedSamReader.of(readers.build());
+  }
+
+  private SamReader openBam(
+      Closer closer,
+      SamReaderFactory srFactory,
+      File bam,
+      Optional<MeteredThreadPool> inflaters,
+      Optional<BgzfBlockCache> blockCache) {
+    SamReader reader = closer.register(srFactory.open(bam));
+    Optional<BamIndex> index =
+        BamIndex.of(reader, bam, Optional.ofNullable(bamIndexCacheDir));
+    if (!index.isPresent()) return reader;
+    if (inflaters.isPresent())
+      return new ParallelBamReader(
+          reader, bam, index.get(), inflaters.get(), bamReadAhead, blockCache);
+    if (blockCache.isPresent())
+      return new ParallelBamReader(
+          reader, bam, index.get(), MoreExecutors.newDirectExecutorService(), 1, blockCache);
+    return new IndexedBamReader(reader, index.get());
+  }
+
+  private Optional<BgzfBlockCache> createBlockCache() {
+    if (bgzfCacheBytes <= 0) return Optional.empty();
+    return Optional.of(new BgzfBlockCache(bgzfCacheBytes));
+  }
+
+  private void serve(Optional<PopulationFrequencyIndex> popFreqs) throws IOException {
+    SamReaderFactory srFactory = samReaderFactory();
+    try (Closer closer = Closer.create()) {
+      Optional<MeteredThreadPool> bamInflaters = createPool(closer, bamThreads, "supernovo-bam-%d");
+      Optional<BgzfBlockCache> blockCache = createBlockCache();
+      ImmutableList.Builder<SuperNovoServer.Worker> workers = ImmutableList.builder();
+      for (int i = 0; i < serverWorkers; i++) {
+        SamReader child = openBams(closer, srFactory, childBams, bamInflaters, blockCache);
+        SamReader p1 = openBams(closer, srFactory, p1Bams, bamInflaters, blockCache);
+        SamReader p2 = openBams(closer, srFactory, p2Bams, bamInflaters, blockCache);
+        VCFFileReader vcfReader = closer.register(new VCFFileReader(vcf));
+        workers.add(
+            new SuperNovoServer.Worker(
+                createEvaluator(child, p1, p2, popFreqs, pileupCacheBytes / serverWorkers),
+                vcfReader));
+      }
+      new SuperNovoServer(workers.build(), servePort, Optional.ofNullable(shutdownToken)).serve();
+    }
+  }
+
+  private TrioEvaluator createEvaluator(
+      SamReader child,
+      SamReader p1,
+      SamReader p2,
+      Optional<PopulationFrequencyIndex> popFreqs,
+      long cacheBytes) {
+    return new TrioEvaluator(
+        child,
+        childID,
+        p1,
+        p1ID,
+        p2,
+        p2ID,
+        popFreqs,
+        maxPopAF,
+        cacheBytes,
+        minDeNovoPosterior,
+        slowestSites,
+        new SiteBudget(maxSiteRecords, maxHaplotypeWork, siteDeadlineMillis),
+        thresholdOptions.toThresholds(),
+        haplotypeSearchDistance(child),
+        countFragments);
+  }
+
+  private int haplotypeSearchDistance(SamReader child) {
+    if (haplotypeSearchDistance != null) return haplotypeSearchDistance;
+    return HaplotypeEvaluator.searchDistance(ReadLengths.longest(child, READ_LENGTH_SAMPLE));
+  }
 }
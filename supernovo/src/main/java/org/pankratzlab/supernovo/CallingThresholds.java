@@ -0,0 +1,112 @@
+package org.pankratzlab.supernovo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.pankratzlab.supernovo.pileup.Depth;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/** Depth, miscall and haplotype thresholds that sites are called against */
+public class CallingThresholds {
+
+  public static final int DEFAULT_MIN_DEPTH = 10;
+  public static final int DEFAULT_MIN_ALLELIC_DEPTH = 4;
+  public static final double DEFAULT_MAX_MISCALL_RATIO = 0.05;
+  public static final double DEFAULT_MAX_MISCALL_WEIGHT = 1.0;
+  public static final double DEFAULT_MIN_HAPLOTYPE_CONCORDANCE = 0.95;
+
+  public static final CallingThresholds DEFAULT =
+      new CallingThresholds(
+          DEFAULT_MIN_DEPTH,
+          DEFAULT_MIN_ALLELIC_DEPTH,
+          DEFAULT_MAX_MISCALL_RATIO,
+          DEFAULT_MAX_MISCALL_WEIGHT,
+          DEFAULT_MIN_HAPLOTYPE_CONCORDANCE);
+
+  private final double minDepth;
+  private final double minAllelicDepth;
+  private final double maxMiscallRatio;
+  private final double maxMiscallWeight;
+  private final double minHaplotypeConcordance;
+
+  /**
+   * @param minDepth minimum weighted depth of the two main alleles for a site to look variant
+   * @param minAllelicDepth minimum weighted depth of each of the two main alleles
+   * @param maxMiscallRatio alleles with at most this fraction of weighted depth are miscalls
+   * @param maxMiscallWeight alleles with at most this weighted depth are miscalls
+   * @param minHaplotypeConcordance minimum concordance with nearby heterozygous sites
+   */
+  public CallingThresholds(
+      double minDepth,
+      double minAllelicDepth,
+      double maxMiscallRatio,
+      double maxMiscallWeight,
+      double minHaplotypeConcordance) {
+    super();
+    this.minDepth = minDepth;
+    this.minAllelicDepth = minAllelicDepth;
+    this.maxMiscallRatio = maxMiscallRatio;
+    this.maxMiscallWeight = maxMiscallWeight;
+    this.minHaplotypeConcordance = minHaplotypeConcordance;
+  }
+
+  /** @return the minHaplotypeConcordance */
+  public double getMinHaplotypeConcordance() {
+    return minHaplotypeConcordance;
+  }
+
+  @Override
+  public String toString() {
+    return "minDepth="
+        + minDepth
+        + ",minAllelicDepth="
+        + minAllelicDepth
+        + ",maxMiscallRatio="
+        + maxMiscallRatio
+        + ",maxMiscallWeight="
+        + maxMiscallWeight
+        + ",minHaplotypeConcordance="
+        + minHaplotypeConcordance;
+  }
+
+  public boolean looksBiallelic(PileupSummary pileup) {
+    return looksVariant(pileup.getDepth()) && !moreThanTwoViableAlleles(pileup);
+  }
+
+  public boolean looksVariant(Depth depth) {
+    return depth.getBiAlleles().size() == 2
+        && depth.weightedBiallelicDepth() >= minDepth
+        && depth.allelicWeightedDepth(Depth.Allele.A1) >= minAllelicDepth
+        && depth.allelicWeightedDepth(Depth.Allele.A2) >= minAllelicDepth;
+  }
+
+  public boolean moreThanTwoViableAlleles(PileupSummary pileup) {
+    return possibleAlleles(pileup).size() > 2;
+  }
+
+  private Set<PileAllele> possibleAlleles(PileupSummary pileup) {
+    return pileup
+        .getWeightedBaseCounts()
+        .entrySet()
+        .stream()
+        .filter(e -> e.getValue() > maxMiscallWeight)
+        .map(Map.Entry::getKey)
+        .filter(b -> pileup.getWeightedBaseFractions().get(b) > maxMiscallRatio)
+        .collect(ImmutableSet.toImmutableSet());
+  }
+
+  public boolean looksDenovo(
+      PileupSummary childPileup, PileupSummary p1Pileup, PileupSummary p2Pileup) {
+    List<PileupSummary> parentPileups = ImmutableList.of(p1Pileup, p2Pileup);
+    Set<PileAllele> parentalAlleles =
+        parentPileups
+            .stream()
+            .map(this::possibleAlleles)
+            .flatMap(Set::stream)
+            .collect(ImmutableSet.toImmutableSet());
+    return !Sets.difference(childPileup.getDepth().getBiAlleles(), parentalAlleles).isEmpty();
+  }
+}
@@ -0,0 +1,78 @@
+package org.pankratzlab.supernovo;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * Contig names resolved once into indices, so positions can be compared and hashed as packed longs
+ * ordered like the sequence dictionary they were resolved against
+ */
+public class Contigs {
+
+  /** Index of a contig that is not in the dictionary */
+  public static final int UNKNOWN = -1;
+
+  private final ImmutableList<String> names;
+  private final ImmutableMap<String, Integer> indices;
+
+  /** @param names of contigs, in sort order */
+  public Contigs(List<String> names) {
+    super();
+    this.names = ImmutableList.copyOf(names);
+    ImmutableMap.Builder<String, Integer> indicesBuilder =
+        ImmutableMap.builderWithExpectedSize(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      indicesBuilder.put(names.get(i), i);
+    }
+    this.indices = indicesBuilder.build();
+  }
+
+  /**
+   * @param dictionary {@link SAMSequenceDictionary} of a BAM or VCF
+   * @return {@link Contigs} of dictionary, in dictionary order
+   */
+  public static Contigs of(SAMSequenceDictionary dictionary) {
+    return new Contigs(
+        dictionary
+            .getSequences()
+            .stream()
+            .map(SAMSequenceRecord::getSequenceName)
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * @param contig name of contig
+   * @return index of contig, {@link #UNKNOWN} if contig is not one of these
+   */
+  public int indexOf(String contig) {
+    return indices.getOrDefault(contig, UNKNOWN);
+  }
+
+  /**
+   * @param contig name of contig
+   * @return index of contig
+   * @throws IllegalArgumentException if contig is not one of these
+   */
+  public int requireIndex(String contig) {
+    int index = indexOf(contig);
+    if (index == UNKNOWN) throw new IllegalArgumentException("Unknown contig " + contig);
+    return index;
+  }
+
+  /**
+   * @param index of contig
+   * @return name of contig at index
+   */
+  public String name(int index) {
+    return names.get(index);
+  }
+
+  /** @return the names of the contigs, in index order */
+  public ImmutableList<String> getNames() {
+    return names;
+  }
+}
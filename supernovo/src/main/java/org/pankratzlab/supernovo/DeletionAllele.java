@@ -0,0 +1,123 @@
+package org.pankratzlab.supernovo;
+
+import java.nio.charset.StandardCharsets;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * A deletion of bases following an anchor base, supported by reads whose CIGAR deletes exactly
+ * those bases after the anchor. Its reference allele is supported by reads aligned through the
+ * anchor and every deleted base without an indel.
+ */
+public class DeletionAllele extends AbstractPileAllele {
+
+  private class NonDeletionAllele extends AbstractPileAllele {
+
+    private NonDeletionAllele(String referenceBases) {
+      super(referenceBases);
+    }
+
+    @Override
+    public boolean supported(SAMRecord record, int readPos) {
+      return anchor.supported(record, readPos)
+          && ReadIndels.alignedThrough(record, position, position + length);
+    }
+
+    @Override
+    public double weightedDepth(SAMRecord samRecord, int readPos) {
+      return meanWeightedDepth(samRecord, readPos, length + 1);
+    }
+
+    public DeletionAllele getDeletionAllele() {
+      return DeletionAllele.this;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = super.hashCode();
+      result = prime * result + DeletionAllele.this.hashCode();
+      return result;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!super.equals(obj)) return false;
+      if (!(obj instanceof NonDeletionAllele)) return false;
+      NonDeletionAllele other = (NonDeletionAllele) obj;
+      return getDeletionAllele().equals(other.getDeletionAllele());
+    }
+  }
+
+  private final int position;
+  private final SNPAllele anchor;
+  private final int length;
+  private final NonDeletionAllele nonDeletionAllele;
+
+  /**
+   * @param position reference position of the anchor base
+   * @param referenceBases anchor base followed by the deleted bases, as in the reference allele
+   *     of a VCF
+   */
+  public DeletionAllele(int position, byte[] referenceBases) {
+    super(String.valueOf((char) referenceBases[0]));
+    if (referenceBases.length < 2)
+      throw new IllegalArgumentException("A deletion must delete at least one base");
+    this.position = position;
+    this.anchor = SNPAllele.of(referenceBases[0]);
+    this.length = referenceBases.length - 1;
+    this.nonDeletionAllele =
+        new NonDeletionAllele(new String(referenceBases, StandardCharsets.US_ASCII));
+  }
+
+  @Override
+  public boolean supported(SAMRecord record, int readPos) {
+    return anchor.supported(record, readPos)
+        && ReadIndels.deletionAfter(record, position) == length;
+  }
+
+  /** Weighted by the bases either side of the deletion */
+  @Override
+  public double weightedDepth(SAMRecord samRecord, int readPos) {
+    return meanWeightedDepth(samRecord, readPos, 2);
+  }
+
+  /** @return a {@link PileAllele} that represents the alternative to this deletion */
+  public PileAllele getNonDeletionAllele() {
+    return nonDeletionAllele;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + position;
+    result = prime * result + anchor.hashCode();
+    result = prime * result + length;
+    return result;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!super.equals(obj)) return false;
+    if (!(obj instanceof DeletionAllele)) return false;
+    DeletionAllele other = (DeletionAllele) obj;
+    return position == other.position
+        && anchor.equals(other.anchor)
+        && length == other.length
+        && nonDeletionAllele.toString().equals(other.nonDeletionAllele.toString());
+  }
+}
@@ -1,20 +1,23 @@
 package org.pankratzlab.supernovo;
 
-import java.util.Optional;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
 
 public class GenomePosition implements Comparable<GenomePosition> {
 
   protected final String contig;
   protected final int position;
+  private final long packed;
 
   /**
    * @param contig
+   * @param contigIndex index of contig in the sequence dictionary, see {@link Contigs}
    * @param position
    */
-  public GenomePosition(String contig, int position) {
+  public GenomePosition(String contig, int contigIndex, int position) {
     super();
     this.contig = contig;
     this.position = position;
+    this.packed = PackedPosition.pack(contigIndex, position);
   }
 
   /** @return the contig */
@@ -22,45 +25,24 @@ public class GenomePosition implements Comparable<GenomePosition> {
     return contig;
   }
 
+  /** @return the index of the contig in the sequence dictionary */
+  public int getContigIndex() {
+    return PackedPosition.contigIndex(packed);
+  }
+
   /** @return the position */
   public int getPosition() {
     return position;
   }
 
-  private Optional<Integer> locateChrNumber() {
-    int i;
-    for (i = 0; i < contig.length(); i++) {
-      if (Character.isDigit(contig.charAt(i))) break;
-    }
-    StringBuilder digitBuilder = new StringBuilder();
-    for (; i < contig.length(); i++) {
-      char charAt = contig.charAt(i);
-      if (Character.isDigit(charAt)) digitBuilder.append(charAt);
-    }
-    try {
-      return Optional.of(Integer.parseInt(digitBuilder.toString()));
-    } catch (NumberFormatException e) {
-      return Optional.empty();
-    }
+  /** @return the contig index and position packed by {@link PackedPosition} */
+  public long getPacked() {
+    return packed;
   }
 
   @Override
   public int compareTo(GenomePosition o) {
-    int contigCmp = compareContigs(o);
-    if (contigCmp != 0) return contigCmp;
-    int posCmp = Integer.compare(position, o.position);
-    return posCmp;
-  }
-
-  private int compareContigs(GenomePosition o) {
-    if (contig.equals(o.contig)) return 0;
-    Optional<Integer> chrNumeric = locateChrNumber();
-    Optional<Integer> otherChrNumeric = o.locateChrNumber();
-    if (chrNumeric.isPresent() && otherChrNumeric.isPresent())
-      return chrNumeric.get().compareTo(otherChrNumeric.get());
-    if (chrNumeric.isPresent()) return -1;
-    if (otherChrNumeric.isPresent()) return 1;
-    return contig.compareTo(o.contig);
+    return Long.compare(packed, o.packed);
   }
 
   /* (non-Javadoc)
@@ -68,11 +50,7 @@ public class GenomePosition implements Comparable<GenomePosition> {
    */
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((contig == null) ? 0 : contig.hashCode());
-    result = prime * result + position;
-    return result;
+    return Long.hashCode(packed);
   }
 
   /* (non-Javadoc)
@@ -84,10 +62,6 @@ public class GenomePosition implements Comparable<GenomePosition> {
     if (obj == null) return false;
     if (!(obj instanceof GenomePosition)) return false;
     GenomePosition other = (GenomePosition) obj;
-    if (contig == null) {
-      if (other.contig != null) return false;
-    } else if (!contig.equals(other.contig)) return false;
-    if (position != other.position) return false;
-    return true;
+    return packed == other.packed;
   }
 }
@@ -1,7 +1,10 @@
 package org.pankratzlab.supernovo;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
+import org.pankratzlab.supernovo.pileup.AlignedColumns;
 import org.pankratzlab.supernovo.pileup.Depth.Allele;
 import org.pankratzlab.supernovo.pileup.Pileup;
 import com.google.common.collect.ImmutableList;
@@ -57,29 +60,67 @@ public class HaplotypeEvaluator {
     }
   }
 
-  private static final int HAPLOTYPE_SEARCH_DISTANCE = 150;
+  /** Search distance for short reads, widened to the read length for longer reads */
+  static final int HAPLOTYPE_SEARCH_DISTANCE = 150;
   private static final double MIN_HAPLOTYPE_CONCORDANCE = 0.75;
 
   private final ReferencePosition pos;
   private final Pileup child;
   private final Pileup p1;
   private final Pileup p2;
+  private final CallingThresholds thresholds;
+  private final int searchDistance;
   /**
    * @param child
    * @param p1
    * @param p2
    */
   public HaplotypeEvaluator(ReferencePosition pos, Pileup child, Pileup p1, Pileup p2) {
+    this(pos, child, p1, p2, CallingThresholds.DEFAULT, HAPLOTYPE_SEARCH_DISTANCE);
+  }
+
+  /**
+   * @param child
+   * @param p1
+   * @param p2
+   * @param thresholds {@link CallingThresholds} to evaluate other variants against
+   * @param searchDistance distance either side of pos to search for other variants
+   */
+  public HaplotypeEvaluator(
+      ReferencePosition pos,
+      Pileup child,
+      Pileup p1,
+      Pileup p2,
+      CallingThresholds thresholds,
+      int searchDistance) {
     super();
     this.pos = pos;
     this.child = child;
     this.p1 = p1;
     this.p2 = p2;
+    this.thresholds = thresholds;
+    this.searchDistance = searchDistance;
+  }
+
+  /**
+   * @param readLength length of the reads searched
+   * @return distance either side of a site to search for other variants on reads of readLength
+   */
+  public static int searchDistance(int readLength) {
+    return Integer.max(HAPLOTYPE_SEARCH_DISTANCE, readLength);
   }
 
   public Result haplotypeConcordance() {
-    int startSearch = Integer.max(0, pos.getPosition() - HAPLOTYPE_SEARCH_DISTANCE);
-    int stopSearch = pos.getPosition() + HAPLOTYPE_SEARCH_DISTANCE;
+    return haplotypeConcordance(() -> false).get();
+  }
+
+  /**
+   * @param abandon checked before each searched position, evaluation is abandoned once true
+   * @return the {@link Result}, empty if evaluation was abandoned
+   */
+  public Optional<Result> haplotypeConcordance(BooleanSupplier abandon) {
+    int startSearch = Integer.max(0, pos.getPosition() - searchDistance);
+    int stopSearch = pos.getPosition() + searchDistance;
 
     int otherDenovos = 0;
     int otherTriallelics = 0;
@@ -87,34 +128,40 @@ public class HaplotypeEvaluator {
     int otherVariants = 0;
     ImmutableList.Builder<Double> concordances = ImmutableList.builder();
 
-    for (int searchPos = startSearch; searchPos < stopSearch; searchPos++) {
+    AlignedColumns childColumns = new AlignedColumns(child.getRecords(), child.countsFragments());
+    AlignedColumns p1Columns = new AlignedColumns(p1.getRecords(), p1.countsFragments());
+    AlignedColumns p2Columns = new AlignedColumns(p2.getRecords(), p2.countsFragments());
+    for (int searchPos : childColumns.polymorphicPositions(startSearch, stopSearch)) {
       if (searchPos == pos.getPosition()) continue;
-      GenomePosition searchPosition = new GenomePosition(pos.getContig(), searchPos);
-      Pileup searchPileup = searchPileup(child, searchPosition);
-      if (TrioEvaluator.looksVariant(searchPileup.getDepth())) {
+      if (abandon.getAsBoolean()) return Optional.empty();
+      Pileup searchPileup = childColumns.pileup(searchPos);
+      if (thresholds.looksVariant(searchPileup.getDepth())) {
         otherVariants++;
-        if (TrioEvaluator.moreThanTwoViableAlleles(searchPileup)) {
+        if (thresholds.moreThanTwoViableAlleles(searchPileup.getSummary())) {
           otherTriallelics++;
         } else {
           otherBiallelics++;
           concordances.add(concordance(child, searchPileup));
-          if (TrioEvaluator.looksDenovo(
-              searchPileup, searchPileup(p1, searchPosition), searchPileup(p2, searchPosition))) {
+          if (thresholds.looksDenovo(
+              searchPileup.getSummary(),
+              p1Columns.pileup(searchPos).getSummary(),
+              p2Columns.pileup(searchPos).getSummary())) {
             otherDenovos++;
           }
         }
       }
     }
-    return new Result(
-        otherVariants, otherTriallelics, otherBiallelics, otherDenovos, concordances.build());
+    return Optional.of(
+        new Result(
+            otherVariants, otherTriallelics, otherBiallelics, otherDenovos, concordances.build()));
   }
 
   private static double concordance(Pileup base, Pileup search) {
-    Set<Integer> h1 = base.getDepth().allelicRecords(Allele.A1);
-    Set<Integer> h2 = base.getDepth().allelicRecords(Allele.A2);
+    Set<Integer> h1 = base.allelicRecords(Allele.A1);
+    Set<Integer> h2 = base.allelicRecords(Allele.A2);
 
-    Set<Integer> search1 = search.getDepth().allelicRecords(Allele.A1);
-    Set<Integer> search2 = search.getDepth().allelicRecords(Allele.A2);
+    Set<Integer> search1 = search.allelicRecords(Allele.A1);
+    Set<Integer> search2 = search.allelicRecords(Allele.A2);
 
     double totalOverlap = search.getDepth().rawTotalDepth();
     int maxOverlap =
@@ -123,8 +170,4 @@ public class HaplotypeEvaluator {
             Sets.intersection(search1, h2).size() + Sets.intersection(search2, h1).size());
     return maxOverlap / totalOverlap;
   }
-
-  private static Pileup searchPileup(Pileup base, GenomePosition searchPos) {
-    return new Pileup(base.getRecords(), searchPos);
-  }
 }
@@ -0,0 +1,66 @@
+package org.pankratzlab.supernovo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Multiple adjacent substituted bases, supported by reads that align every base of the allele
+ * without an indel between them and match each of them
+ */
+public class MnvAllele extends AbstractPileAllele {
+
+  private final int position;
+  private final byte[] bases;
+
+  /**
+   * @param position reference position of the first base
+   * @param bases of the allele
+   */
+  public MnvAllele(int position, byte[] bases) {
+    super(new String(bases, StandardCharsets.US_ASCII));
+    if (bases.length < 2)
+      throw new IllegalArgumentException("An MNV allele must have at least two bases");
+    this.position = position;
+    this.bases = bases.clone();
+  }
+
+  @Override
+  public boolean supported(SAMRecord record, int readPos) {
+    byte[] readBases = record.getReadBases();
+    if (readPos == -1 || readPos + bases.length > readBases.length) return false;
+    for (int i = 0; i < bases.length; i++) {
+      if (readBases[readPos + i] != bases[i]) return false;
+    }
+    return ReadIndels.alignedThrough(record, position, position + bases.length - 1);
+  }
+
+  @Override
+  public double weightedDepth(SAMRecord samRecord, int readPos) {
+    return meanWeightedDepth(samRecord, readPos, bases.length);
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + position;
+    result = prime * result + Arrays.hashCode(bases);
+    return result;
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!super.equals(obj)) return false;
+    if (!(obj instanceof MnvAllele)) return false;
+    MnvAllele other = (MnvAllele) obj;
+    return position == other.position && Arrays.equals(bases, other.bases);
+  }
+}
@@ -0,0 +1,87 @@
+package org.pankratzlab.supernovo;
+
+import java.util.Arrays;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Indel positions of a read, taken from its CIGAR once and cached on the record, so alleles can
+ * check a read's support for an indel at a site without walking the CIGAR or allocating again.
+ *
+ * <p>Each event is a pair of ints: the last reference position aligned before it and its length
+ * shifted left two bits over its operation.
+ */
+final class ReadIndels {
+
+  /** No event follows the position */
+  static final int NONE = 0;
+
+  private static final int INSERTION = 0;
+  private static final int DELETION = 1;
+  private static final int SKIP = 2;
+  private static final int OP_BITS = 2;
+  private static final int OP_MASK = (1 << OP_BITS) - 1;
+
+  private static final Object CACHE_KEY = ReadIndels.class;
+  private static final int[] NO_EVENTS = new int[0];
+
+  private ReadIndels() {}
+
+  private static int[] events(SAMRecord record) {
+    Object cached = record.getTransientAttribute(CACHE_KEY);
+    if (cached != null) return (int[]) cached;
+    int[] events = NO_EVENTS;
+    int count = 0;
+    int refPos = record.getAlignmentStart() - 1;
+    for (CigarElement element : record.getCigar()) {
+      CigarOperator op = element.getOperator();
+      int code;
+      if (op == CigarOperator.I) code = INSERTION;
+      else if (op == CigarOperator.D) code = DELETION;
+      else if (op == CigarOperator.N) code = SKIP;
+      else {
+        if (op.consumesReferenceBases()) refPos += element.getLength();
+        continue;
+      }
+      if (events.length == count) events = Arrays.copyOf(events, count + 4);
+      events[count++] = refPos;
+      events[count++] = element.getLength() << OP_BITS | code;
+      if (op.consumesReferenceBases()) refPos += element.getLength();
+    }
+    if (events.length != count) events = Arrays.copyOf(events, count);
+    record.setTransientAttribute(CACHE_KEY, events);
+    return events;
+  }
+
+  /**
+   * @param record read to check
+   * @param refPos reference position
+   * @return length of the deletion immediately after refPos in record, {@link #NONE} if no
+   *     deletion follows it
+   */
+  static int deletionAfter(SAMRecord record, int refPos) {
+    int[] events = events(record);
+    for (int i = 0; i < events.length && events[i] <= refPos; i += 2) {
+      if (events[i] == refPos && (events[i + 1] & OP_MASK) == DELETION)
+        return events[i + 1] >>> OP_BITS;
+    }
+    return NONE;
+  }
+
+  /**
+   * @param record read to check
+   * @param start first reference position
+   * @param end last reference position
+   * @return true if record aligns a base to every position from start to end with no indel or
+   *     skip between them
+   */
+  static boolean alignedThrough(SAMRecord record, int start, int end) {
+    if (record.getAlignmentStart() > start || record.getAlignmentEnd() < end) return false;
+    int[] events = events(record);
+    for (int i = 0; i < events.length && events[i] < end; i += 2) {
+      if (events[i] >= start) return false;
+    }
+    return true;
+  }
+}
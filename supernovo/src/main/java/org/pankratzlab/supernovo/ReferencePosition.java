@@ -10,55 +10,92 @@ public class ReferencePosition extends GenomePosition {
 
   private final PileAllele refAllele;
   private final Optional<PileAllele> altAllele;
+  private final int hash;
 
   /**
    * @param contig
+   * @param contigIndex
    * @param position
    * @param refAllele
    * @param altAllele
    */
   private ReferencePosition(
-      String contig, int position, PileAllele refAllele, Optional<PileAllele> altAllele) {
-    super(contig, position);
+      String contig,
+      int contigIndex,
+      int position,
+      PileAllele refAllele,
+      Optional<PileAllele> altAllele) {
+    super(contig, contigIndex, position);
     this.refAllele = refAllele;
     this.altAllele = altAllele;
+    this.hash = 31 * (31 * super.hashCode() + refAllele.hashCode()) + altAllele.hashCode();
   }
 
   /**
    * @param contig
+   * @param contigIndex
    * @param position
    * @param refAllele
    * @param altAllele
    */
   public ReferencePosition(
-      String contig, int position, PileAllele refAllele, PileAllele altAllele) {
-    this(contig, position, refAllele, Optional.of(altAllele));
+      String contig, int contigIndex, int position, PileAllele refAllele, PileAllele altAllele) {
+    this(contig, contigIndex, position, refAllele, Optional.of(altAllele));
   }
 
   /**
    * @param contig
+   * @param contigIndex
    * @param position
    * @param refAllele
-   * @param altAllele
    */
-  public ReferencePosition(String contig, int position, PileAllele refAllele) {
-    this(contig, position, refAllele, Optional.empty());
+  public ReferencePosition(String contig, int contigIndex, int position, PileAllele refAllele) {
+    this(contig, contigIndex, position, refAllele, Optional.empty());
   }
 
-  public static ReferencePosition fromVariantContext(VariantContext vc, Allele ref, Allele alt) {
+  /**
+   * @param vc variant
+   * @param contigs {@link Contigs} to resolve the contig of vc against
+   * @param ref reference {@link Allele}
+   * @param alt alternate {@link Allele}
+   * @return {@link ReferencePosition} of the SNP, MNV or indel from ref to alt
+   * @throws IllegalArgumentException if the contig of vc is not one of contigs
+   */
+  public static ReferencePosition fromVariantContext(
+      VariantContext vc, Contigs contigs, Allele ref, Allele alt) {
+    return fromAlleles(
+        vc.getContig(), contigs.requireIndex(vc.getContig()), vc.getStart(), ref, alt);
+  }
+
+  /**
+   * @param contig of the variant
+   * @param contigIndex index of contig, see {@link Contigs}
+   * @param position 1-based start of the variant
+   * @param ref reference {@link Allele}
+   * @param alt alternate {@link Allele}
+   * @return {@link ReferencePosition} of the SNP, MNV or indel from ref to alt
+   */
+  public static ReferencePosition fromAlleles(
+      String contig, int contigIndex, int position, Allele ref, Allele alt) {
     final PileAllele refAllele;
     final PileAllele altAllele;
     if (ref.length() == 1 && alt.length() == 1) {
       refAllele = SNPAllele.of(ref.getBases()[0]);
       altAllele = SNPAllele.of(alt.getBases()[0]);
+    } else if (ref.length() == alt.length()) {
+      refAllele = new MnvAllele(position, ref.getBases());
+      altAllele = new MnvAllele(position, alt.getBases());
     } else if (ref.length() == 1) {
       altAllele = generateInsertionAllele(alt, ref);
       refAllele = ((InsertionAllele) altAllele).getNonInsertionAllele();
     } else if (alt.length() == 1) {
-      refAllele = generateInsertionAllele(ref, alt);
-      altAllele = ((InsertionAllele) refAllele).getNonInsertionAllele();
-    } else throw new IllegalArgumentException("Only SNPs and Indels are supported");
-    return new ReferencePosition(vc.getContig(), vc.getStart(), refAllele, altAllele);
+      if (ref.getBases()[0] != alt.getBases()[0])
+        throw new IllegalArgumentException("Indels must match on first base");
+      DeletionAllele deletion = new DeletionAllele(position, ref.getBases());
+      altAllele = deletion;
+      refAllele = deletion.getNonDeletionAllele();
+    } else throw new IllegalArgumentException("Only SNPs, MNVs and Indels are supported");
+    return new ReferencePosition(contig, contigIndex, position, refAllele, altAllele);
   }
 
   private static InsertionAllele generateInsertionAllele(Allele ins, Allele del) {
@@ -85,13 +122,7 @@ public class ReferencePosition extends GenomePosition {
    */
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((altAllele == null) ? 0 : altAllele.hashCode());
-    result = prime * result + ((contig == null) ? 0 : contig.hashCode());
-    result = prime * result + position;
-    result = prime * result + ((refAllele == null) ? 0 : refAllele.hashCode());
-    return result;
+    return hash;
   }
 
   /* (non-Javadoc)
@@ -100,19 +131,11 @@ public class ReferencePosition extends GenomePosition {
   @Override
   public boolean equals(Object obj) {
     if (this == obj) return true;
-    if (obj == null) return false;
+    if (!super.equals(obj)) return false;
     if (!(obj instanceof ReferencePosition)) return false;
     ReferencePosition other = (ReferencePosition) obj;
-    if (altAllele == null) {
-      if (other.altAllele != null) return false;
-    } else if (!altAllele.equals(other.altAllele)) return false;
-    if (contig == null) {
-      if (other.contig != null) return false;
-    } else if (!contig.equals(other.contig)) return false;
-    if (position != other.position) return false;
-    if (refAllele == null) {
-      if (other.refAllele != null) return false;
-    } else if (!refAllele.equals(other.refAllele)) return false;
-    return true;
+    return hash == other.hash
+        && refAllele.equals(other.refAllele)
+        && altAllele.equals(other.altAllele);
   }
 }
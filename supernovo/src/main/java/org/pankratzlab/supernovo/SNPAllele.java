@@ -1,14 +1,17 @@
 package org.pankratzlab.supernovo;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import htsjdk.samtools.SAMRecord;
 
 public class SNPAllele extends AbstractPileAllele {
 
-  private static LoadingCache<Byte, SNPAllele> cache =
-      CacheBuilder.newBuilder().softValues().build(CacheLoader.from(SNPAllele::new));
+  /** Every {@link SNPAllele}, indexed by unsigned base */
+  private static final SNPAllele[] ALLELES = new SNPAllele[256];
+
+  static {
+    for (int base = 0; base < ALLELES.length; base++) {
+      ALLELES[base] = new SNPAllele((byte) base);
+    }
+  }
 
   public static final SNPAllele A = of((byte) 'A');
   public static final SNPAllele T = of((byte) 'T');
@@ -24,7 +27,7 @@ public class SNPAllele extends AbstractPileAllele {
   }
 
   public static SNPAllele of(byte base) {
-    return cache.getUnchecked(base);
+    return ALLELES[base & 0xFF];
   }
 
   @Override
@@ -0,0 +1,81 @@
+package org.pankratzlab.supernovo;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Joiner;
+
+/**
+ * Limits on the work spent evaluating a single site. A site exceeding a limit is still evaluated
+ * and reported, but with cheaper evaluation steps recorded as {@link Degradation}s.
+ */
+public class SiteBudget {
+
+  /** Cheaper evaluation steps applied to a site that exceeded its budget */
+  public enum Degradation {
+    /** Records of at least one sample were downsampled to the maximum record count */
+    DOWNSAMPLED,
+    /** Haplotype concordance was evaluated over a narrower window than usual */
+    REDUCED_HAPLOTYPE_WINDOW,
+    /** Haplotype concordance was not evaluated */
+    HAPLOTYPE_SKIPPED;
+  }
+
+  private static final String FULL_STATUS = "FULL";
+  private static final Joiner STATUS_JOINER = Joiner.on(',');
+
+  private final int maxRecords;
+  private final long maxHaplotypeWork;
+  private final long deadlineNanos;
+
+  /**
+   * @param maxRecords maximum records piled up per sample, more are downsampled
+   * @param maxHaplotypeWork maximum positions times child records evaluated for haplotype
+   *     concordance, the window is narrowed to stay within this
+   * @param deadlineMillis wall-clock time after the start of a site after which haplotype
+   *     concordance is skipped, 0 for no deadline
+   */
+  public SiteBudget(int maxRecords, long maxHaplotypeWork, long deadlineMillis) {
+    super();
+    if (maxRecords < 1) throw new IllegalArgumentException("maxRecords must be positive");
+    this.maxRecords = maxRecords;
+    this.maxHaplotypeWork = maxHaplotypeWork;
+    this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+  }
+
+  /** @return the maxRecords */
+  public int getMaxRecords() {
+    return maxRecords;
+  }
+
+  /**
+   * @param fullDistance search distance to use within budget
+   * @param records number of child records piled up at each searched position
+   * @return the largest search distance, up to fullDistance, within the haplotype work budget
+   */
+  public int haplotypeSearchDistance(int fullDistance, int records) {
+    long positionsInBudget = maxHaplotypeWork / Math.max(1, records);
+    return (int) Math.min(fullDistance, positionsInBudget / 2);
+  }
+
+  /**
+   * @param siteStartNanos {@link System#nanoTime()} at the start of the site
+   * @return true if the site has passed its deadline
+   */
+  public boolean pastDeadline(long siteStartNanos) {
+    return deadlineNanos > 0 && System.nanoTime() - siteStartNanos > deadlineNanos;
+  }
+
+  /**
+   * @param degradations applied to a site
+   * @return status to report for a site with degradations applied
+   */
+  public static String status(Set<Degradation> degradations) {
+    return degradations.isEmpty() ? FULL_STATUS : STATUS_JOINER.join(degradations);
+  }
+
+  /** @return a new, empty set of {@link Degradation}s */
+  public static EnumSet<Degradation> noDegradations() {
+    return EnumSet.noneOf(Degradation.class);
+  }
+}
@@ -0,0 +1,115 @@
+package org.pankratzlab.supernovo;
+
+import java.util.Optional;
+import java.util.Set;
+import org.pankratzlab.supernovo.output.DeNovoResult;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Everything a site is scored on once its BAM records have been piled up, so a site can be scored,
+ * or rescored under different {@link CallingThresholds}, without the records
+ */
+public class SiteEvidence {
+
+  private static final HaplotypeEvaluator.Result SKIPPED_HAPLOTYPES =
+      new HaplotypeEvaluator.Result(0, 0, 0, 0, ImmutableList.of());
+
+  private final ReferencePosition pos;
+  private final Optional<Double> populationAF;
+  private final PileupSummary child;
+  private final PileupSummary p1;
+  private final PileupSummary p2;
+  private final Optional<HaplotypeEvaluator.Result> haplotypes;
+  private final Set<SiteBudget.Degradation> degradations;
+
+  /**
+   * @param pos site evaluated
+   * @param populationAF population frequency of the alt allele at pos, if known
+   * @param child {@link PileupSummary} of the child at pos
+   * @param p1 {@link PileupSummary} of parent 1 at pos
+   * @param p2 {@link PileupSummary} of parent 2 at pos
+   * @param haplotypes {@link HaplotypeEvaluator.Result} around pos, absent if not evaluated
+   * @param degradations {@link SiteBudget.Degradation}s applied while evaluating pos
+   */
+  public SiteEvidence(
+      ReferencePosition pos,
+      Optional<Double> populationAF,
+      PileupSummary child,
+      PileupSummary p1,
+      PileupSummary p2,
+      Optional<HaplotypeEvaluator.Result> haplotypes,
+      Set<SiteBudget.Degradation> degradations) {
+    super();
+    this.pos = pos;
+    this.populationAF = populationAF;
+    this.child = child;
+    this.p1 = p1;
+    this.p2 = p2;
+    this.haplotypes = haplotypes;
+    this.degradations = degradations;
+  }
+
+  /**
+   * @param thresholds {@link CallingThresholds} to score against
+   * @param childID id of the child
+   * @param parent1ID id of parent 1
+   * @param parent2ID id of parent 2
+   * @return {@link DeNovoResult} for this site if the child looks variant under thresholds
+   */
+  public Optional<DeNovoResult> score(
+      CallingThresholds thresholds, String childID, String parent1ID, String parent2ID) {
+    if (!thresholds.looksVariant(child.getDepth())) return Optional.empty();
+    Set<SiteBudget.Degradation> scoredDegradations = SiteBudget.noDegradations();
+    scoredDegradations.addAll(degradations);
+    if (!haplotypes.isPresent()) scoredDegradations.add(SiteBudget.Degradation.HAPLOTYPE_SKIPPED);
+    return Optional.of(
+        new DeNovoResult(
+            pos,
+            populationAF,
+            haplotypes.orElse(SKIPPED_HAPLOTYPES),
+            scoredDegradations,
+            thresholds,
+            childID,
+            child,
+            parent1ID,
+            p1,
+            parent2ID,
+            p2));
+  }
+
+  /** @return the pos */
+  public ReferencePosition getPos() {
+    return pos;
+  }
+
+  /** @return the populationAF */
+  public Optional<Double> getPopulationAF() {
+    return populationAF;
+  }
+
+  /** @return the child {@link PileupSummary} */
+  public PileupSummary getChild() {
+    return child;
+  }
+
+  /** @return the parent 1 {@link PileupSummary} */
+  public PileupSummary getP1() {
+    return p1;
+  }
+
+  /** @return the parent 2 {@link PileupSummary} */
+  public PileupSummary getP2() {
+    return p2;
+  }
+
+  /** @return the {@link HaplotypeEvaluator.Result}, absent if haplotypes were not evaluated */
+  public Optional<HaplotypeEvaluator.Result> getHaplotypes() {
+    return haplotypes;
+  }
+
+  /** @return the degradations */
+  public Set<SiteBudget.Degradation> getDegradations() {
+    return degradations;
+  }
+}
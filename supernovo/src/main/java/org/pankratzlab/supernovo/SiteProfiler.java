@@ -0,0 +1,159 @@
+package org.pankratzlab.supernovo;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.output.RunReport;
+import org.pankratzlab.supernovo.pileup.Pileup;
+import org.pankratzlab.supernovo.utilities.LatencyHistogram;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Records per-site latency, overall and split into evaluation phases, and keeps the slowest sites
+ * with their depths and record counts so pathological sites can be identified after a run
+ */
+public class SiteProfiler {
+
+  public enum Phase {
+    /** Querying records from the BAMs */
+    FETCH,
+    /** Piling up queried records at the site */
+    PILEUP,
+    /** Evaluating haplotype concordance with nearby variants */
+    HAPLOTYPE,
+    /** Formatting and writing the result */
+    OUTPUT;
+  }
+
+  /** Timing of a single site, filled in as the site is evaluated on one thread */
+  public static class Site {
+    private final GenomePosition position;
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long totalNanos = -1L;
+    private String depths = "";
+
+    private Site(GenomePosition position) {
+      this.position = position;
+    }
+
+    /** @param pileups {@link Pileup}s of the site, child first, to report depth and records of */
+    public void setPileups(Pileup... pileups) {
+      this.depths =
+          Stream.of(pileups)
+              .map(p -> p.getBaseCounts().size() + "/" + p.getRecords().size())
+              .collect(Collectors.joining(" "));
+    }
+
+    private String describe() {
+      String phases =
+          Stream.of(Phase.values())
+              .map(p -> p.name().toLowerCase() + "Ms=" + millis(phaseNanos[p.ordinal()]))
+              .collect(Collectors.joining(" "));
+      return position.getContig()
+          + ":"
+          + position.getPosition()
+          + " totalMs="
+          + millis(totalNanos)
+          + " "
+          + phases
+          + " depth/records="
+          + depths;
+    }
+  }
+
+  private final LatencyHistogram siteLatencies = new LatencyHistogram();
+  private final Map<Phase, LatencyHistogram> phaseLatencies = Maps.newEnumMap(Phase.class);
+  private final int slowestCount;
+  private final PriorityQueue<Site> slowest =
+      new PriorityQueue<>(Comparator.comparingLong((Site s) -> s.totalNanos));
+  private final ThreadLocal<Site> currentSite = new ThreadLocal<>();
+
+  /** @param slowestCount number of slowest sites to keep */
+  public SiteProfiler(int slowestCount) {
+    super();
+    this.slowestCount = slowestCount;
+    for (Phase phase : Phase.values()) {
+      phaseLatencies.put(phase, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * Start timing a site, phases recorded by the calling thread are attributed to it until it is
+   * finished
+   *
+   * @param position of site
+   * @return the {@link Site} being timed
+   */
+  public Site start(GenomePosition position) {
+    Site site = new Site(position);
+    currentSite.set(site);
+    return site;
+  }
+
+  /**
+   * Add time spent in a phase to the site being timed by the calling thread, time spent outside
+   * of any site is not recorded
+   *
+   * @param phase that took nanos
+   * @param nanos duration of phase
+   */
+  public void record(Phase phase, long nanos) {
+    Site site = currentSite.get();
+    if (site != null) site.phaseNanos[phase.ordinal()] += nanos;
+  }
+
+  /**
+   * Stop timing a site and record its total latency and the time it spent in each phase, a
+   * single value per phase even where the phase was not needed, such as fetching cached pileups
+   *
+   * @param site to stop timing
+   */
+  public void finish(Site site) {
+    site.totalNanos = System.nanoTime() - site.startNanos;
+    if (currentSite.get() == site) currentSite.remove();
+    siteLatencies.record(site.totalNanos);
+    for (Phase phase : Phase.values()) {
+      phaseLatencies.get(phase).record(site.phaseNanos[phase.ordinal()]);
+    }
+    if (slowestCount == 0) return;
+    synchronized (slowest) {
+      if (slowest.size() < slowestCount) {
+        slowest.add(site);
+      } else if (slowest.peek().totalNanos < site.totalNanos) {
+        slowest.poll();
+        slowest.add(site);
+      }
+    }
+  }
+
+  /**
+   * Add latency histograms and the slowest sites, slowest first, to report
+   *
+   * @param report {@link RunReport} to add to
+   */
+  public void reportMetrics(RunReport report) {
+    report.put("siteLatency", siteLatencies.summary());
+    phaseLatencies.forEach(
+        (phase, hist) -> report.put(phase.name().toLowerCase() + "Latency", hist.summary()));
+    ImmutableList<Site> sites;
+    synchronized (slowest) {
+      sites =
+          slowest
+              .stream()
+              .sorted(Comparator.comparingLong((Site s) -> s.totalNanos).reversed())
+              .collect(ImmutableList.toImmutableList());
+    }
+    for (int i = 0; i < sites.size(); i++) {
+      report.put("slowestSite." + (i + 1), sites.get(i).describe());
+    }
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+}
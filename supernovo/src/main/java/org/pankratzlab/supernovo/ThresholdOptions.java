@@ -0,0 +1,58 @@
+package org.pankratzlab.supernovo;
+
+import picocli.CommandLine.Option;
+
+/** Command line options for the {@link CallingThresholds} of a run, shared by the commands */
+public class ThresholdOptions {
+
+  @Option(
+    names = {"--minDepth"},
+    paramLabel = "DEPTH",
+    description =
+        "Minimum weighted depth of the child's two main alleles for a site to look variant "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private double minDepth = CallingThresholds.DEFAULT_MIN_DEPTH;
+
+  @Option(
+    names = {"--minAllelicDepth"},
+    paramLabel = "DEPTH",
+    description =
+        "Minimum weighted depth of each of the child's two main alleles (default: "
+            + "${DEFAULT-VALUE})"
+  )
+  private double minAllelicDepth = CallingThresholds.DEFAULT_MIN_ALLELIC_DEPTH;
+
+  @Option(
+    names = {"--maxMiscallRatio"},
+    paramLabel = "RATIO",
+    description =
+        "Alleles with at most this fraction of a sample's weighted depth are treated as miscalls "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private double maxMiscallRatio = CallingThresholds.DEFAULT_MAX_MISCALL_RATIO;
+
+  @Option(
+    names = {"--maxMiscallWeight"},
+    paramLabel = "DEPTH",
+    description =
+        "Alleles with at most this weighted depth are treated as miscalls (default: "
+            + "${DEFAULT-VALUE})"
+  )
+  private double maxMiscallWeight = CallingThresholds.DEFAULT_MAX_MISCALL_WEIGHT;
+
+  @Option(
+    names = {"--minHaplotypeConcordance"},
+    paramLabel = "FRACTION",
+    description =
+        "Minimum concordance with nearby heterozygous sites for a site to be a superNovo "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private double minHaplotypeConcordance = CallingThresholds.DEFAULT_MIN_HAPLOTYPE_CONCORDANCE;
+
+  /** @return the {@link CallingThresholds} specified */
+  public CallingThresholds toThresholds() {
+    return new CallingThresholds(
+        minDepth, minAllelicDepth, maxMiscallRatio, maxMiscallWeight, minHaplotypeConcordance);
+  }
+}
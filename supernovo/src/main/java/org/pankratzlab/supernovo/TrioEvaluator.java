@@ -1,47 +1,52 @@
 package org.pankratzlab.supernovo;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.frequency.PopulationFrequencyIndex;
+import org.pankratzlab.supernovo.incremental.CandidateSitesWriter;
+import org.pankratzlab.supernovo.incremental.IncrementalPlan;
 import org.pankratzlab.supernovo.output.DeNovoResult;
-import org.pankratzlab.supernovo.output.OutputFields;
-import org.pankratzlab.supernovo.pileup.Depth;
+import org.pankratzlab.supernovo.output.DeNovoResultWriter;
+import org.pankratzlab.supernovo.output.RunReport;
 import org.pankratzlab.supernovo.pileup.Pileup;
 import org.pankratzlab.supernovo.pileup.SAMPositionOverlap;
+import org.pankratzlab.supernovo.sites.SiteManifest;
+import org.pankratzlab.supernovo.summary.SiteSummaryWriter;
 import com.google.common.base.Predicates;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MoreCollectors;
-import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
+import com.google.common.primitives.Ints;
 import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.vcf.VCFFileReader;
 
 public class TrioEvaluator {
 
-  private static final int READ_LENGTH = 150;
-  private static final int MIN_DEPTH = 10;
-  private static final int MIN_ALLELIC_DEPTH = 4;
-  private static final double MAX_MISCALL_RATIO = 0.05;
-  private static final double MAX_MISCALL_WEIGHT = 1.0;
-  private static final CacheBuilder<Object, Object> PILEUP_CACHE_BUILDER =
-      CacheBuilder.newBuilder().maximumSize(READ_LENGTH * 2L);
+  /** Fraction of the maximum heap shared by the pileup caches when no budget is given */
+  private static final double DEFAULT_PILEUP_CACHE_HEAP_FRACTION = 0.25;
+  private static final int PILEUP_CACHE_COUNT = 3;
 
   private final String childID;
   private final String parent1ID;
   private final String parent2ID;
+  private final Optional<PopulationFrequencyIndex> populationFrequencies;
+  private final double maxPopulationAF;
+  private final double minDeNovoPosterior;
+  private final SiteProfiler profiler;
+  private final SiteBudget budget;
+  private final CallingThresholds thresholds;
+  private final int haplotypeSearchDistance;
+  private final boolean countFragments;
+  private final Contigs contigs;
 
   private final LoadingCache<ReferencePosition, Pileup> childPileups;
   private final LoadingCache<ReferencePosition, Pileup> p1Pileups;
@@ -51,6 +56,17 @@ public class TrioEvaluator {
    * @param child {@link SamReader} of child to evluate for de novo variants
    * @param parent1 {@link SamReader} of one parent for child
    * @param parent2 {@link SamReader} of second parent for child
+   * @param populationFrequencies {@link PopulationFrequencyIndex} to annotate and filter sites
+   * @param maxPopulationAF sites with a population AF above this are skipped before any BAM I/O
+   * @param pileupCacheBytes approximate heap budget shared by the pileup caches
+   * @param minDeNovoPosterior sites with a lower {@link TrioLikelihoodModel} de novo posterior are
+   *     not reported
+   * @param slowestSites number of slowest sites to report with {@link #reportMetrics(RunReport)}
+   * @param budget {@link SiteBudget} limiting the work spent on each site
+   * @param thresholds {@link CallingThresholds} to call sites against
+   * @param haplotypeSearchDistance distance either side of a site to search for other variants,
+   *     see {@link HaplotypeEvaluator#searchDistance(int)}
+   * @param countFragments true to count overlapping mates once, as a single fragment
    */
   public TrioEvaluator(
       SamReader child,
@@ -58,116 +74,315 @@ public class TrioEvaluator {
       SamReader parent1,
       String parent1ID,
       SamReader parent2,
-      String parent2ID) {
+      String parent2ID,
+      Optional<PopulationFrequencyIndex> populationFrequencies,
+      double maxPopulationAF,
+      long pileupCacheBytes,
+      double minDeNovoPosterior,
+      int slowestSites,
+      SiteBudget budget,
+      CallingThresholds thresholds,
+      int haplotypeSearchDistance,
+      boolean countFragments) {
     super();
     this.childID = childID;
     this.parent1ID = parent1ID;
     this.parent2ID = parent2ID;
+    this.populationFrequencies = populationFrequencies;
+    this.maxPopulationAF = maxPopulationAF;
+    this.minDeNovoPosterior = minDeNovoPosterior;
+    this.profiler = new SiteProfiler(slowestSites);
+    this.budget = budget;
+    this.thresholds = thresholds;
+    this.haplotypeSearchDistance = haplotypeSearchDistance;
+    this.countFragments = countFragments;
+    this.contigs = Contigs.of(child.getFileHeader().getSequenceDictionary());
 
-    this.childPileups =
-        PILEUP_CACHE_BUILDER.build(
-            CacheLoader.from(
-                pos -> new Pileup(new SAMPositionOverlap(child, pos).getRecords(), pos)));
-    this.p1Pileups =
-        PILEUP_CACHE_BUILDER.build(
-            CacheLoader.from(
-                pos -> new Pileup(new SAMPositionOverlap(parent1, pos).getRecords(), pos)));
-    this.p2Pileups =
-        PILEUP_CACHE_BUILDER.build(
-            CacheLoader.from(
-                pos -> new Pileup(new SAMPositionOverlap(parent2, pos).getRecords(), pos)));
-  }
-
-  public void reportDeNovos(VCFFileReader queriedVariants, File output) throws IOException {
-    try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(output)))) {
-      writer.println(OutputFields.generateHeader(DeNovoResult.class));
-      queriedVariants
-          .iterator()
-          .stream()
-          .filter(this::keepVariant)
-          .map(this::generatePosition)
-          .map(this::evaluate)
-          .filter(Optional::isPresent)
-          .map(Optional::get)
-          .map(DeNovoResult::generateLine)
-          .forEachOrdered(writer::println);
+    this.childPileups = buildPileupCache(child, pileupCacheBytes / PILEUP_CACHE_COUNT);
+    this.p1Pileups = buildPileupCache(parent1, pileupCacheBytes / PILEUP_CACHE_COUNT);
+    this.p2Pileups = buildPileupCache(parent2, pileupCacheBytes / PILEUP_CACHE_COUNT);
+  }
+
+  /** @return the {@link Contigs} of the child's sequence dictionary that sites are resolved to */
+  public Contigs getContigs() {
+    return contigs;
+  }
+
+  /** @return the distance either side of a site searched for other variants */
+  public int getHaplotypeSearchDistance() {
+    return haplotypeSearchDistance;
+  }
+
+  /** @return true if overlapping mates are counted once, as a single fragment */
+  public boolean countsFragments() {
+    return countFragments;
+  }
+
+  /** @return default heap budget shared by the pileup caches, derived from the maximum heap */
+  public static long defaultPileupCacheBytes() {
+    return (long) (Runtime.getRuntime().maxMemory() * DEFAULT_PILEUP_CACHE_HEAP_FRACTION);
+  }
+
+  private LoadingCache<ReferencePosition, Pileup> buildPileupCache(
+      SamReader reader, long maxBytes) {
+    return CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher(
+            (ReferencePosition pos, Pileup pileup) ->
+                Ints.saturatedCast(pileup.getEstimatedRetainedBytes()))
+        .recordStats()
+        .build(CacheLoader.from(pos -> loadPileup(reader, pos)));
+  }
+
+  private Pileup loadPileup(SamReader reader, ReferencePosition pos) {
+    long start = System.nanoTime();
+    SAMPositionOverlap overlap = new SAMPositionOverlap(reader, pos, budget.getMaxRecords());
+    long fetched = System.nanoTime();
+    profiler.record(SiteProfiler.Phase.FETCH, fetched - start);
+    Pileup pileup =
+        new Pileup(overlap.getRecords(), pos, overlap.isDownsampled(), countFragments);
+    profiler.record(SiteProfiler.Phase.PILEUP, System.nanoTime() - fetched);
+    return pileup;
+  }
+
+  /**
+   * Add pileup cache statistics and site latencies to report
+   *
+   * @param report {@link RunReport} to add to
+   */
+  public void reportMetrics(RunReport report) {
+    profiler.reportMetrics(report);
+    reportCacheMetrics(report, "childPileupCache", childPileups);
+    reportCacheMetrics(report, "p1PileupCache", p1Pileups);
+    reportCacheMetrics(report, "p2PileupCache", p2Pileups);
+  }
+
+  private static void reportCacheMetrics(
+      RunReport report, String name, LoadingCache<ReferencePosition, Pileup> cache) {
+    CacheStats stats = cache.stats();
+    report
+        .put(name + ".hitCount", stats.hitCount())
+        .put(name + ".missCount", stats.missCount())
+        .put(name + ".hitRate", stats.hitRate())
+        .put(name + ".evictionCount", stats.evictionCount())
+        .put(name + ".averageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0)
+        .put(
+            name + ".retainedBytes",
+            cache.asMap().values().stream().mapToLong(Pileup::getEstimatedRetainedBytes).sum());
+  }
+
+  /**
+   * @param candidates candidate sites to evaluate, in order, see {@link
+   *     #candidatePositions(CloseableIterator)} and {@link #candidatePositions(SiteManifest, long,
+   *     long)}
+   * @param writer {@link DeNovoResultWriter} to write {@link DeNovoResult}s to, closed when done
+   * @param summaries {@link SiteSummaryWriter} to capture the {@link SiteEvidence} of every
+   *     candidate site to for rescoring, closed when done
+   * @param sites {@link CandidateSitesWriter} to record every candidate site to, closed when done
+   * @param previous {@link IncrementalPlan} of a previous run to reuse the rows of
+   * @param report {@link RunReport} to add run metrics to
+   * @throws IOException
+   */
+  public void reportDeNovos(
+      Stream<ReferencePosition> candidates,
+      DeNovoResultWriter writer,
+      Optional<SiteSummaryWriter> summaries,
+      CandidateSitesWriter sites,
+      Optional<IncrementalPlan> previous,
+      RunReport report)
+      throws IOException {
+    try (Closer closer = Closer.create()) {
+      DeNovoResultWriter resultWriter = closer.register(writer);
+      summaries.ifPresent(closer::register);
+      CandidateSitesWriter sitesWriter = closer.register(sites);
+      candidates.forEachOrdered(
+          pos -> {
+            try {
+              sitesWriter.write(pos);
+              if (previous.isPresent() && previous.get().reusable(pos)) {
+                Optional<String> row = previous.get().previousRow(pos);
+                if (row.isPresent())
+                  resultWriter.writeRow(pos.getContig(), pos.getPosition(), row.get());
+              } else {
+                evaluateAndWrite(pos, resultWriter, summaries);
+              }
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
     }
+    reportMetrics(report);
+    previous.ifPresent(plan -> plan.reportMetrics(report));
   }
 
-  private boolean keepVariant(VariantContext vc) {
-    Genotype geno = vc.getGenotype(childID);
+  /**
+   * @param queriedVariants variants to find candidate sites among
+   * @return Stream of the candidate sites of queriedVariants that pass the population frequency
+   *     filter, in order
+   */
+  public Stream<ReferencePosition> candidatePositions(
+      CloseableIterator<VariantContext> queriedVariants) {
+    return queriedVariants
+        .stream()
+        .map(this::candidatePosition)
+        .filter(Optional::isPresent)
+        .map(Optional::get);
+  }
+
+  /**
+   * @param manifest {@link SiteManifest} of the child's candidate sites
+   * @param first index of the first manifest site
+   * @param end index after the last manifest site
+   * @return Stream of the candidate sites of manifest from first to end that pass the population
+   *     frequency filter, in order
+   */
+  public Stream<ReferencePosition> candidatePositions(SiteManifest manifest, long first, long end) {
+    if (!manifest.getChildID().equals(childID))
+      throw new IllegalArgumentException(
+          "Site manifest is of " + manifest.getChildID() + ", not " + childID);
+    return manifest.sites(first, end, contigs).filter(this::belowMaxPopulationAF);
+  }
+
+  private void evaluateAndWrite(
+      ReferencePosition pos, DeNovoResultWriter writer, Optional<SiteSummaryWriter> summaries) {
+    SiteProfiler.Site site = profiler.start(pos);
+    Optional<DeNovoResult> result = evaluate(pos, site, summaries);
+    if (result.isPresent()) {
+      long start = System.nanoTime();
+      try {
+        writer.write(result.get());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      profiler.record(SiteProfiler.Phase.OUTPUT, System.nanoTime() - start);
+    }
+    profiler.finish(site);
+  }
+
+  private static boolean keepVariant(Genotype geno) {
     return geno.isHet()
         && !geno.isHetNonRef()
-        && geno.getAlleles().stream().mapToInt(Allele::length).anyMatch(i -> i == 1);
+        && (geno.getAlleles().stream().mapToInt(Allele::length).anyMatch(i -> i == 1)
+            || geno.getAlleles().stream().mapToInt(Allele::length).distinct().count() == 1);
   }
 
-  private ReferencePosition generatePosition(VariantContext vc) {
-    Allele ref = vc.getReference();
+  /**
+   * @param vc variant
+   * @param childID id of the child
+   * @return the alt {@link Allele} of the child at vc, absent unless the child is a ref/alt het
+   *     for a SNV, MNV or indel
+   */
+  public static Optional<Allele> candidateAltAllele(VariantContext vc, String childID) {
     Genotype geno = vc.getGenotype(childID);
-    Allele alt =
+    if (!keepVariant(geno)) return Optional.empty();
+    return Optional.of(
         geno.getAlleles()
             .stream()
             .filter(Predicates.not(vc.getReference()::equals))
-            .collect(MoreCollectors.onlyElement());
-    return ReferencePosition.fromVariantContext(vc, ref, alt);
+            .collect(MoreCollectors.onlyElement()));
   }
 
-  private Optional<DeNovoResult> evaluate(ReferencePosition pos) {
-    Pileup childPile = childPileups.getUnchecked(pos);
-    if (looksVariant(childPile.getDepth())) {
-      return Optional.of(
-          new DeNovoResult(
-              pos,
-              new HaplotypeEvaluator(
-                      pos, childPile, p1Pileups.getUnchecked(pos), p2Pileups.getUnchecked(pos))
-                  .haplotypeConcordance(),
-              generateSample(childID, pos, childPile, childPile),
-              generateSample(parent1ID, pos, p1Pileups.getUnchecked(pos), childPile),
-              generateSample(parent2ID, pos, p2Pileups.getUnchecked(pos), childPile)));
-    }
-    return Optional.empty();
+  private Optional<Double> populationAF(ReferencePosition pos) {
+    return populationFrequencies
+        .map(index -> index.alleleFrequency(pos))
+        .filter(af -> !af.isNaN());
   }
 
-  public static boolean looksBiallelic(Pileup pileup) {
-    return looksVariant(pileup.getDepth()) && !moreThanTwoViableAlleles(pileup);
+  private boolean belowMaxPopulationAF(ReferencePosition pos) {
+    return !populationFrequencies.isPresent()
+        || !(populationFrequencies.get().alleleFrequency(pos) > maxPopulationAF);
   }
 
-  public static boolean looksVariant(Depth depth) {
-    return depth.getBiAlleles().size() == 2
-        && depth.weightedBiallelicDepth() >= MIN_DEPTH
-        && Arrays.stream(Depth.Allele.values())
-            .mapToDouble(depth::allelicWeightedDepth)
-            .allMatch(d -> d >= MIN_ALLELIC_DEPTH);
+  /**
+   * @param vc variant to evaluate
+   * @return {@link DeNovoResult} for vc if it is a candidate in the child that looks variant
+   */
+  public Optional<DeNovoResult> evaluate(VariantContext vc) {
+    return candidatePosition(vc).flatMap(this::evaluate);
   }
 
-  public static boolean moreThanTwoViableAlleles(Pileup pileup) {
-    return possibleAlleles(pileup).size() > 2;
+  /**
+   * @param vc variant
+   * @return the site of vc if it is a candidate in the child, on a contig of the BAMs, that passes
+   *     the population frequency filter
+   */
+  public Optional<ReferencePosition> candidatePosition(VariantContext vc) {
+    if (contigs.indexOf(vc.getContig()) == Contigs.UNKNOWN) return Optional.empty();
+    return candidateAltAllele(vc, childID)
+        .map(alt -> ReferencePosition.fromVariantContext(vc, contigs, vc.getReference(), alt))
+        .filter(this::belowMaxPopulationAF);
   }
 
-  private static Set<PileAllele> possibleAlleles(Pileup pileup) {
-    return pileup
-        .getWeightedBaseCounts()
-        .entrySet()
-        .stream()
-        .filter(e -> e.getValue() > MAX_MISCALL_WEIGHT)
-        .map(Map.Entry::getKey)
-        .filter(b -> pileup.getWeightedBaseFractions().get(b) > MAX_MISCALL_RATIO)
-        .collect(ImmutableSet.toImmutableSet());
+  /**
+   * @param pos site to evaluate
+   * @return {@link DeNovoResult} for pos if the child looks variant at pos
+   */
+  public Optional<DeNovoResult> evaluate(ReferencePosition pos) {
+    SiteProfiler.Site site = profiler.start(pos);
+    Optional<DeNovoResult> result = evaluate(pos, site, Optional.empty());
+    profiler.finish(site);
+    return result;
   }
 
-  private static DeNovoResult.Sample generateSample(String id, ReferencePosition pos, Pileup pileup, Pileup childPile) {
-    return new DeNovoResult.Sample(
-        id, pileup, pos, childPile.getDepth().getA1(), childPile.getDepth().getA2());
+  private Optional<DeNovoResult> evaluate(
+      ReferencePosition pos, SiteProfiler.Site site, Optional<SiteSummaryWriter> summaries) {
+    long siteStart = System.nanoTime();
+    Pileup childPile = childPileups.getUnchecked(pos);
+    boolean variant = thresholds.looksVariant(childPile.getDepth());
+    if (!variant && !summaries.isPresent()) {
+      site.setPileups(childPile);
+      return Optional.empty();
+    }
+    Pileup p1Pile = p1Pileups.getUnchecked(pos);
+    Pileup p2Pile = p2Pileups.getUnchecked(pos);
+    site.setPileups(childPile, p1Pile, p2Pile);
+    Set<SiteBudget.Degradation> degradations = SiteBudget.noDegradations();
+    if (childPile.isDownsampled() || p1Pile.isDownsampled() || p2Pile.isDownsampled())
+      degradations.add(SiteBudget.Degradation.DOWNSAMPLED);
+    Optional<HaplotypeEvaluator.Result> haplotypes = Optional.empty();
+    if (variant) {
+      long haplotypeStart = System.nanoTime();
+      haplotypes = evaluateHaplotypes(pos, childPile, p1Pile, p2Pile, siteStart, degradations);
+      profiler.record(SiteProfiler.Phase.HAPLOTYPE, System.nanoTime() - haplotypeStart);
+    }
+    SiteEvidence evidence =
+        new SiteEvidence(
+            pos,
+            populationAF(pos),
+            childPile.getSummary(),
+            p1Pile.getSummary(),
+            p2Pile.getSummary(),
+            haplotypes,
+            degradations);
+    if (summaries.isPresent()) {
+      long start = System.nanoTime();
+      try {
+        summaries.get().write(evidence);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      profiler.record(SiteProfiler.Phase.OUTPUT, System.nanoTime() - start);
+    }
+    return evidence
+        .score(thresholds, childID, parent1ID, parent2ID)
+        .filter(result -> !(result.deNovoPosterior < minDeNovoPosterior));
   }
 
-  public static boolean looksDenovo(Pileup childPileup, Pileup p1Pileup, Pileup p2Pileup) {
-    List<Pileup> parentPileups = ImmutableList.of(p1Pileup, p2Pileup);
-    Set<PileAllele> parentalAlleles =
-        parentPileups
-            .stream()
-            .map(TrioEvaluator::possibleAlleles)
-            .flatMap(Set::stream)
-            .collect(ImmutableSet.toImmutableSet());
-    return !Sets.difference(childPileup.getDepth().getBiAlleles(), parentalAlleles).isEmpty();
+  private Optional<HaplotypeEvaluator.Result> evaluateHaplotypes(
+      ReferencePosition pos,
+      Pileup childPile,
+      Pileup p1Pile,
+      Pileup p2Pile,
+      long siteStart,
+      Set<SiteBudget.Degradation> degradations) {
+    int searchDistance =
+        budget.haplotypeSearchDistance(haplotypeSearchDistance, childPile.getRecords().size());
+    if (searchDistance <= 0 || budget.pastDeadline(siteStart)) return Optional.empty();
+    Optional<HaplotypeEvaluator.Result> result =
+        new HaplotypeEvaluator(pos, childPile, p1Pile, p2Pile, thresholds, searchDistance)
+            .haplotypeConcordance(() -> budget.pastDeadline(siteStart));
+    if (result.isPresent() && searchDistance < haplotypeSearchDistance)
+      degradations.add(SiteBudget.Degradation.REDUCED_HAPLOTYPE_WINDOW);
+    return result;
   }
 }
@@ -0,0 +1,161 @@
+package org.pankratzlab.supernovo;
+
+import java.util.Set;
+import org.pankratzlab.supernovo.pileup.AlleleLikelihoods;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Biallelic trio genotype likelihood model. Parental genotypes are drawn from Hardy-Weinberg
+ * priors, each transmitted allele mutates with a fixed per-allele rate and the de novo posterior
+ * is the probability mass of child genotypes that Mendelian transmission cannot produce from the
+ * parental genotypes.
+ */
+public final class TrioLikelihoodModel {
+
+  public static final double DEFAULT_ALLELE_FREQUENCY = 0.001;
+  private static final double MUTATION_RATE = 1e-8;
+  private static final double MIN_ALLELE_FREQUENCY = 1e-6;
+  private static final int GENOTYPES = 3;
+
+  /** log10 P(child genotype | parent 1 genotype, parent 2 genotype), genotypes as alt copies */
+  private static final double[][][] LOG10_TRANSMISSION = new double[GENOTYPES][GENOTYPES][];
+  /** true where the child genotype can be transmitted without mutation */
+  private static final boolean[][][] MENDELIAN = new boolean[GENOTYPES][GENOTYPES][];
+
+  static {
+    for (int p1 = 0; p1 < GENOTYPES; p1++) {
+      for (int p2 = 0; p2 < GENOTYPES; p2++) {
+        LOG10_TRANSMISSION[p1][p2] = new double[GENOTYPES];
+        MENDELIAN[p1][p2] = new boolean[GENOTYPES];
+        double[] withMutation = childGenotypeProbabilities(p1, p2, MUTATION_RATE);
+        double[] withoutMutation = childGenotypeProbabilities(p1, p2, 0.0);
+        for (int child = 0; child < GENOTYPES; child++) {
+          LOG10_TRANSMISSION[p1][p2][child] = Math.log10(withMutation[child]);
+          MENDELIAN[p1][p2][child] = withoutMutation[child] > 0.0;
+        }
+      }
+    }
+  }
+
+  private TrioLikelihoodModel() {}
+
+  private static double[] childGenotypeProbabilities(int p1, int p2, double mutationRate) {
+    double t1 = transmissionProbability(p1, mutationRate);
+    double t2 = transmissionProbability(p2, mutationRate);
+    return new double[] {(1 - t1) * (1 - t2), t1 * (1 - t2) + (1 - t1) * t2, t1 * t2};
+  }
+
+  private static double transmissionProbability(int altCopies, double mutationRate) {
+    double transmitted = altCopies / 2.0;
+    return transmitted * (1 - mutationRate) + (1 - transmitted) * mutationRate;
+  }
+
+  /**
+   * @param pileup to compute likelihoods for
+   * @param ref first allele of the biallelic model
+   * @param alt second allele of the biallelic model
+   * @return log10 likelihoods of pileup under genotypes with 0, 1 and 2 copies of alt
+   */
+  public static double[] genotypeLog10Likelihoods(
+      PileupSummary pileup, PileAllele ref, PileAllele alt) {
+    ImmutableMap<PileAllele, AlleleLikelihoods> likelihoods = pileup.getAlleleLikelihoods();
+    double allMismatch = 0.0;
+    for (AlleleLikelihoods l : likelihoods.values()) {
+      allMismatch += l.getMismatch();
+    }
+    AlleleLikelihoods refL = likelihoods.get(ref);
+    AlleleLikelihoods altL = likelihoods.get(alt);
+    double refHom = refL == null ? 0.0 : refL.getHomMatch() - refL.getMismatch();
+    double refHet = refL == null ? 0.0 : refL.getHetMatch() - refL.getMismatch();
+    double altHom = altL == null ? 0.0 : altL.getHomMatch() - altL.getMismatch();
+    double altHet = altL == null ? 0.0 : altL.getHetMatch() - altL.getMismatch();
+    return new double[] {
+      allMismatch + refHom, allMismatch + refHet + altHet, allMismatch + altHom
+    };
+  }
+
+  /**
+   * @param child {@link PileupSummary} of child
+   * @param p1 {@link PileupSummary} of parent 1
+   * @param p2 {@link PileupSummary} of parent 2
+   * @param ref first allele of the biallelic model
+   * @param alt second allele of the biallelic model
+   * @param altFrequency population frequency of alt
+   * @return posterior probability that the child genotype is not Mendelian
+   */
+  public static double deNovoPosterior(
+      PileupSummary child,
+      PileupSummary p1,
+      PileupSummary p2,
+      PileAllele ref,
+      PileAllele alt,
+      double altFrequency) {
+    double f = Math.min(1 - MIN_ALLELE_FREQUENCY, Math.max(MIN_ALLELE_FREQUENCY, altFrequency));
+    double[] log10Priors = {
+      2 * Math.log10(1 - f), Math.log10(2 * f * (1 - f)), 2 * Math.log10(f)
+    };
+    double[] childL = genotypeLog10Likelihoods(child, ref, alt);
+    double[] p1L = genotypeLog10Likelihoods(p1, ref, alt);
+    double[] p2L = genotypeLog10Likelihoods(p2, ref, alt);
+
+    double[] joint = new double[GENOTYPES * GENOTYPES * GENOTYPES];
+    double max = Double.NEGATIVE_INFINITY;
+    for (int g1 = 0; g1 < GENOTYPES; g1++) {
+      for (int g2 = 0; g2 < GENOTYPES; g2++) {
+        for (int c = 0; c < GENOTYPES; c++) {
+          double l =
+              log10Priors[g1]
+                  + log10Priors[g2]
+                  + p1L[g1]
+                  + p2L[g2]
+                  + LOG10_TRANSMISSION[g1][g2][c]
+                  + childL[c];
+          joint[(g1 * GENOTYPES + g2) * GENOTYPES + c] = l;
+          max = Math.max(max, l);
+        }
+      }
+    }
+    double total = 0.0;
+    double deNovo = 0.0;
+    for (int g1 = 0; g1 < GENOTYPES; g1++) {
+      for (int g2 = 0; g2 < GENOTYPES; g2++) {
+        for (int c = 0; c < GENOTYPES; c++) {
+          double p = Math.pow(10, joint[(g1 * GENOTYPES + g2) * GENOTYPES + c] - max);
+          total += p;
+          if (!MENDELIAN[g1][g2][c]) deNovo += p;
+        }
+      }
+    }
+    return deNovo / total;
+  }
+
+  /**
+   * @param child {@link PileupSummary} of child
+   * @param p1 {@link PileupSummary} of parent 1
+   * @param p2 {@link PileupSummary} of parent 2
+   * @param pos site being evaluated
+   * @param altFrequency population frequency of the alt allele at pos
+   * @return posterior probability that the child genotype over the child's two most supported
+   *     alleles is not Mendelian, {@link Double#NaN} if the child does not have two alleles
+   */
+  public static double deNovoPosterior(
+      PileupSummary child,
+      PileupSummary p1,
+      PileupSummary p2,
+      ReferencePosition pos,
+      double altFrequency) {
+    Set<PileAllele> childAlleles = child.getDepth().getBiAlleles();
+    if (childAlleles.size() != 2) return Double.NaN;
+    PileAllele ref =
+        childAlleles.contains(pos.getRefAllele())
+            ? pos.getRefAllele()
+            : child.getDepth().getA1().get();
+    PileAllele alt = childAlleles.stream().filter(a -> !a.equals(ref)).findFirst().get();
+    double f =
+        pos.getAltAllele().filter(alt::equals).isPresent()
+            ? altFrequency
+            : DEFAULT_ALLELE_FREQUENCY;
+    return deNovoPosterior(child, p1, p2, ref, alt, f);
+  }
+}
@@ -0,0 +1,302 @@
+package org.pankratzlab.supernovo;
+
+import java.util.Optional;
+import org.pankratzlab.supernovo.frequency.PopulationFrequencyIndex;
+import org.pankratzlab.supernovo.output.RunReport;
+import org.pankratzlab.supernovo.pileup.Depth;
+import org.pankratzlab.supernovo.pileup.Pileup;
+import org.pankratzlab.supernovo.pileup.SAMPositionOverlap;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Quick check, before a full run, that the BAMs of a trio look like a child and its two parents.
+ * Common SNP sites spread across the genome are genotyped from small pileups of each sample, then
+ * Mendelian consistency and KING-robust kinship between each pair of samples are computed from
+ * those genotypes.
+ */
+public class TrioRelatednessCheck {
+
+  public enum Mode {
+    /** Do not check the trio */
+    OFF,
+    /** Check the trio and warn if it looks inconsistent */
+    WARN,
+    /** Check the trio and stop if it looks inconsistent */
+    FAIL;
+  }
+
+  /** Genotypes and kinships of the sampled sites */
+  public static class Result {
+
+    private final int sampledSites;
+    private final int calledSites;
+    private final int mendelianErrors;
+    private final double childP1Kinship;
+    private final double childP2Kinship;
+    private final double p1P2Kinship;
+
+    private Result(
+        int sampledSites,
+        int calledSites,
+        int mendelianErrors,
+        double childP1Kinship,
+        double childP2Kinship,
+        double p1P2Kinship) {
+      this.sampledSites = sampledSites;
+      this.calledSites = calledSites;
+      this.mendelianErrors = mendelianErrors;
+      this.childP1Kinship = childP1Kinship;
+      this.childP2Kinship = childP2Kinship;
+      this.p1P2Kinship = p1P2Kinship;
+    }
+
+    /** @return true if enough sites were called in all three samples to judge the trio */
+    public boolean isInformative() {
+      return calledSites >= MIN_CALLED_SITES;
+    }
+
+    /** @return the fraction of sites called in all three samples that violate Mendelian rules */
+    public double getMendelianErrorRate() {
+      return calledSites == 0 ? Double.NaN : mendelianErrors / (double) calledSites;
+    }
+
+    /** @return true if the trio is informative and looks like a child and its parents */
+    public boolean isConsistent() {
+      return isInformative()
+          && getMendelianErrorRate() <= MAX_MENDELIAN_ERROR_RATE
+          && looksParentChild(childP1Kinship)
+          && looksParentChild(childP2Kinship)
+          && p1P2Kinship < MIN_DUPLICATE_KINSHIP;
+    }
+
+    private static boolean looksParentChild(double kinship) {
+      return kinship >= MIN_PARENT_CHILD_KINSHIP && kinship <= MAX_PARENT_CHILD_KINSHIP;
+    }
+
+    /** @return a description of the check and, if inconsistent, why */
+    public String describe() {
+      StringBuilder description =
+          new StringBuilder(
+              String.format(
+                  "Trio check over %d of %d sampled sites: Mendelian error rate %.3f, kinship "
+                      + "child/parent1 %.3f, child/parent2 %.3f, parent1/parent2 %.3f",
+                  calledSites,
+                  sampledSites,
+                  getMendelianErrorRate(),
+                  childP1Kinship,
+                  childP2Kinship,
+                  p1P2Kinship));
+      if (!isInformative())
+        description.append("; too few sites called in all three samples to judge the trio");
+      else if (!isConsistent())
+        description.append(
+            "; expected a Mendelian error rate below "
+                + MAX_MENDELIAN_ERROR_RATE
+                + ", parent/child kinship near 0.25 and unrelated or related parents, the BAMs "
+                + "may be mislabelled or swapped");
+      return description.toString();
+    }
+
+    /**
+     * Add the genotyped site counts, Mendelian error rate and kinships to report
+     *
+     * @param report {@link RunReport} to add to
+     */
+    public void reportMetrics(RunReport report) {
+      report
+          .put("trioCheck.sampledSites", sampledSites)
+          .put("trioCheck.calledSites", calledSites)
+          .put("trioCheck.mendelianErrorRate", getMendelianErrorRate())
+          .put("trioCheck.childP1Kinship", childP1Kinship)
+          .put("trioCheck.childP2Kinship", childP2Kinship)
+          .put("trioCheck.p1P2Kinship", p1P2Kinship)
+          .put("trioCheck.consistent", isConsistent());
+    }
+  }
+
+  /** Sites sampled from the VCF when no other count is given */
+  public static final int DEFAULT_SITES = 2000;
+
+  private static final int MIN_CALLED_SITES = 100;
+  private static final double MAX_MENDELIAN_ERROR_RATE = 0.05;
+  private static final double MIN_PARENT_CHILD_KINSHIP = 0.15;
+  private static final double MAX_PARENT_CHILD_KINSHIP = 0.35;
+  /** Kinship at and above which two samples look like the same individual */
+  private static final double MIN_DUPLICATE_KINSHIP = 0.4;
+
+  private static final double MIN_COMMON_AF = 0.05;
+  private static final int MAX_SITE_RECORDS = 100;
+  private static final int MIN_GENOTYPE_DEPTH = 8;
+  private static final double MAX_HOM_REF_ALT_FRACTION = 0.1;
+  private static final double MIN_HET_ALT_FRACTION = 0.25;
+  private static final double MAX_HET_ALT_FRACTION = 0.75;
+  private static final double MIN_HOM_ALT_ALT_FRACTION = 0.9;
+  private static final int MAX_WINDOW = 100_000;
+  private static final int NO_CALL = -1;
+
+  private final SamReader child;
+  private final SamReader parent1;
+  private final SamReader parent2;
+  private final Contigs contigs;
+  private final Optional<PopulationFrequencyIndex> populationFrequencies;
+
+  /**
+   * @param child {@link SamReader} of the child
+   * @param parent1 {@link SamReader} of parent 1
+   * @param parent2 {@link SamReader} of parent 2
+   * @param contigs {@link Contigs} of the child's sequence dictionary
+   * @param populationFrequencies {@link PopulationFrequencyIndex} to restrict sites to common
+   *     variants with
+   */
+  public TrioRelatednessCheck(
+      SamReader child,
+      SamReader parent1,
+      SamReader parent2,
+      Contigs contigs,
+      Optional<PopulationFrequencyIndex> populationFrequencies) {
+    super();
+    this.child = child;
+    this.parent1 = parent1;
+    this.parent2 = parent2;
+    this.contigs = contigs;
+    this.populationFrequencies = populationFrequencies;
+  }
+
+  /**
+   * @param vcf {@link VCFFileReader} to sample SNP sites from, spread across the genome when it
+   *     is indexed and from its start otherwise
+   * @param sites maximum number of sites to sample
+   * @return the {@link Result} of checking the trio at the sampled sites
+   */
+  public Result check(VCFFileReader vcf, int sites) {
+    ImmutableList<ReferencePosition> positions =
+        vcf.isQueryable() ? spreadSites(vcf, sites) : leadingSites(vcf, sites);
+    int called = 0;
+    int mendelianErrors = 0;
+    KinshipCounts childP1 = new KinshipCounts();
+    KinshipCounts childP2 = new KinshipCounts();
+    KinshipCounts p1P2 = new KinshipCounts();
+    for (ReferencePosition pos : positions) {
+      int childGenotype = genotype(child, pos);
+      int p1Genotype = genotype(parent1, pos);
+      int p2Genotype = genotype(parent2, pos);
+      childP1.add(childGenotype, p1Genotype);
+      childP2.add(childGenotype, p2Genotype);
+      p1P2.add(p1Genotype, p2Genotype);
+      if (childGenotype == NO_CALL || p1Genotype == NO_CALL || p2Genotype == NO_CALL) continue;
+      called++;
+      if (!mendelian(childGenotype, p1Genotype, p2Genotype)) mendelianErrors++;
+    }
+    return new Result(
+        positions.size(),
+        called,
+        mendelianErrors,
+        childP1.kinship(),
+        childP2.kinship(),
+        p1P2.kinship());
+  }
+
+  private ImmutableList<ReferencePosition> spreadSites(VCFFileReader vcf, int sites) {
+    SAMSequenceDictionary dictionary = child.getFileHeader().getSequenceDictionary();
+    long genomeLength = Math.max(1L, dictionary.getReferenceLength());
+    long stride = Math.max(1L, genomeLength / Math.max(1, sites));
+    int window = (int) Math.min(stride, MAX_WINDOW);
+    ImmutableList.Builder<ReferencePosition> positions = ImmutableList.builder();
+    for (SAMSequenceRecord sequence : dictionary.getSequences()) {
+      for (long start = stride / 2 + 1; start <= sequence.getSequenceLength(); start += stride) {
+        try (CloseableIterator<VariantContext> variants =
+            vcf.query(sequence.getSequenceName(), (int) start, (int) start + window - 1)) {
+          firstSite(variants).ifPresent(positions::add);
+        }
+      }
+    }
+    return positions.build();
+  }
+
+  private ImmutableList<ReferencePosition> leadingSites(VCFFileReader vcf, int sites) {
+    ImmutableList.Builder<ReferencePosition> positions = ImmutableList.builder();
+    int sampled = 0;
+    try (CloseableIterator<VariantContext> variants = vcf.iterator()) {
+      while (sampled < sites) {
+        Optional<ReferencePosition> site = firstSite(variants);
+        if (!site.isPresent()) break;
+        positions.add(site.get());
+        sampled++;
+      }
+    }
+    return positions.build();
+  }
+
+  /** @return the next site of variants that is a common biallelic SNP on a known contig */
+  private Optional<ReferencePosition> firstSite(CloseableIterator<VariantContext> variants) {
+    while (variants.hasNext()) {
+      VariantContext vc = variants.next();
+      if (!vc.isSNP() || !vc.isBiallelic() || contigs.indexOf(vc.getContig()) == Contigs.UNKNOWN)
+        continue;
+      ReferencePosition pos =
+          ReferencePosition.fromVariantContext(
+              vc, contigs, vc.getReference(), vc.getAlternateAllele(0));
+      if (common(pos)) return Optional.of(pos);
+    }
+    return Optional.empty();
+  }
+
+  private boolean common(ReferencePosition pos) {
+    if (!populationFrequencies.isPresent()) return true;
+    double af = populationFrequencies.get().alleleFrequency(pos);
+    return af >= MIN_COMMON_AF && af <= 1.0 - MIN_COMMON_AF;
+  }
+
+  /** @return count of alt alleles called from a small pileup of reader at pos, or NO_CALL */
+  private static int genotype(SamReader reader, ReferencePosition pos) {
+    SAMPositionOverlap overlap = new SAMPositionOverlap(reader, pos, MAX_SITE_RECORDS);
+    Depth depth = new Pileup(overlap.getRecords(), pos).getDepth();
+    int refDepth = depth.allelicRawDepth(pos.getRefAllele());
+    int altDepth = pos.getAltAllele().map(depth::allelicRawDepth).orElse(0);
+    int total = refDepth + altDepth;
+    if (total < MIN_GENOTYPE_DEPTH) return NO_CALL;
+    double altFraction = altDepth / (double) total;
+    if (altFraction <= MAX_HOM_REF_ALT_FRACTION) return 0;
+    if (altFraction >= MIN_HOM_ALT_ALT_FRACTION) return 2;
+    if (altFraction >= MIN_HET_ALT_FRACTION && altFraction <= MAX_HET_ALT_FRACTION) return 1;
+    return NO_CALL;
+  }
+
+  private static boolean mendelian(int childGenotype, int p1Genotype, int p2Genotype) {
+    for (int p1Allele = p1Genotype == 2 ? 1 : 0; p1Allele <= Math.min(1, p1Genotype); p1Allele++) {
+      for (int p2Allele = p2Genotype == 2 ? 1 : 0;
+          p2Allele <= Math.min(1, p2Genotype);
+          p2Allele++) {
+        if (p1Allele + p2Allele == childGenotype) return true;
+      }
+    }
+    return false;
+  }
+
+  /** Counts for the KING-robust kinship estimator between two samples */
+  private static class KinshipCounts {
+    private int hetHet = 0;
+    private int opposingHoms = 0;
+    private int firstHets = 0;
+    private int secondHets = 0;
+
+    private void add(int first, int second) {
+      if (first == NO_CALL || second == NO_CALL) return;
+      if (first == 1) firstHets++;
+      if (second == 1) secondHets++;
+      if (first == 1 && second == 1) hetHet++;
+      if (Math.abs(first - second) == 2) opposingHoms++;
+    }
+
+    private double kinship() {
+      int hets = firstHets + secondHets;
+      return hets == 0 ? Double.NaN : (hetHet - 2.0 * opposingHoms) / hets;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.pankratzlab.supernovo.columnar;
+
+import java.util.Optional;
+
+/**
+ * Predicate on one column of a {@link ColumnarResultReader} store: a closed range for numeric and
+ * boolean columns or a value for string columns. Missing values never match.
+ */
+public class ColumnPredicate {
+
+  private final String column;
+  private final double min;
+  private final double max;
+  private final Optional<String> value;
+
+  private ColumnPredicate(String column, double min, double max, Optional<String> value) {
+    this.column = column;
+    this.min = min;
+    this.max = max;
+    this.value = value;
+  }
+
+  /**
+   * @param column name of a numeric column
+   * @param min smallest matching value
+   * @param max largest matching value
+   * @return {@link ColumnPredicate} matching values of column from min to max
+   */
+  public static ColumnPredicate between(String column, double min, double max) {
+    return new ColumnPredicate(column, min, max, Optional.empty());
+  }
+
+  /**
+   * @param column name of a numeric column
+   * @param min smallest matching value
+   * @return {@link ColumnPredicate} matching values of column of at least min
+   */
+  public static ColumnPredicate atLeast(String column, double min) {
+    return between(column, min, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * @param column name of a numeric column
+   * @param max largest matching value
+   * @return {@link ColumnPredicate} matching values of column of at most max
+   */
+  public static ColumnPredicate atMost(String column, double max) {
+    return between(column, Double.NEGATIVE_INFINITY, max);
+  }
+
+  /**
+   * @param column name of a boolean column
+   * @return {@link ColumnPredicate} matching rows where column is true
+   */
+  public static ColumnPredicate isTrue(String column) {
+    return between(column, 1, 1);
+  }
+
+  /**
+   * @param column name of a string column
+   * @param value to match
+   * @return {@link ColumnPredicate} matching rows where column is value
+   */
+  public static ColumnPredicate equalTo(String column, String value) {
+    return new ColumnPredicate(
+        column, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Optional.of(value));
+  }
+
+  /** @return the name of the column */
+  public String getColumn() {
+    return column;
+  }
+
+  /** @return the smallest matching value of a numeric column */
+  double getMin() {
+    return min;
+  }
+
+  /** @return the largest matching value of a numeric column */
+  double getMax() {
+    return max;
+  }
+
+  /** @return the matching value of a string column */
+  Optional<String> getValue() {
+    return value;
+  }
+}
@@ -0,0 +1,27 @@
+package org.pankratzlab.supernovo.columnar;
+
+/** Primitive encoding of a column of a {@link ColumnarResultWriter} store */
+public enum ColumnType {
+  /** 32-bit integers, {@link Integer#MIN_VALUE} when missing */
+  INT(Integer.BYTES),
+  /** 64-bit doubles, NaN when missing */
+  DOUBLE(Double.BYTES),
+  /** One byte, 1 for true, 0 for false and -1 when missing */
+  BOOLEAN(Byte.BYTES),
+  /** 32-bit codes into a dictionary of the column's distinct values */
+  STRING(Integer.BYTES);
+
+  static final int MISSING_INT = Integer.MIN_VALUE;
+  static final byte MISSING_BOOLEAN = -1;
+
+  private final int width;
+
+  private ColumnType(int width) {
+    this.width = width;
+  }
+
+  /** @return the width of a value in bytes */
+  public int getWidth() {
+    return width;
+  }
+}
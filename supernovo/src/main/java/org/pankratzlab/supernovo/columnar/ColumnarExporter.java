@@ -0,0 +1,116 @@
+package org.pankratzlab.supernovo.columnar;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Exports the rows of a {@link ColumnarResultReader} store, optionally filtered by column, as the
+ * tab separated output the store was written alongside
+ */
+@Command(
+  name = "export",
+  description = "Export a columnar result store, optionally filtered, as tab separated output"
+)
+public class ColumnarExporter implements Runnable {
+
+  @Option(
+    names = {"--input", "-i"},
+    paramLabel = "FILE",
+    description = "Columnar result store written with --columnarOutput",
+    required = true
+  )
+  private File input;
+
+  @Option(
+    names = {"--output", "-o"},
+    paramLabel = "FILE",
+    description = "Tab separated output file",
+    required = true
+  )
+  private File output;
+
+  @Option(
+    names = {"--min"},
+    paramLabel = "COLUMN=VALUE",
+    description = "Only export rows where the numeric COLUMN is at least VALUE"
+  )
+  private Map<String, Double> mins = Maps.newLinkedHashMap();
+
+  @Option(
+    names = {"--max"},
+    paramLabel = "COLUMN=VALUE",
+    description = "Only export rows where the numeric COLUMN is at most VALUE"
+  )
+  private Map<String, Double> maxes = Maps.newLinkedHashMap();
+
+  @Option(
+    names = {"--equal"},
+    paramLabel = "COLUMN=VALUE",
+    description = "Only export rows where COLUMN is VALUE, true or false for boolean columns"
+  )
+  private Map<String, String> values = Maps.newLinkedHashMap();
+
+  @Override
+  public void run() {
+    try {
+      ColumnarResultReader reader = ColumnarResultReader.load(input);
+      ImmutableList<ColumnPredicate> predicates = predicates(reader.getSchema());
+      export(reader, reader.select(predicates), output);
+      System.err.println(
+          "Skipped "
+              + reader.skippedBlocks(predicates)
+              + " of "
+              + reader.blockCount()
+              + " blocks by their column statistics");
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private ImmutableList<ColumnPredicate> predicates(ResultSchema schema) {
+    ImmutableList.Builder<ColumnPredicate> predicates = ImmutableList.builder();
+    mins.forEach((column, min) -> predicates.add(ColumnPredicate.atLeast(column, min)));
+    maxes.forEach((column, max) -> predicates.add(ColumnPredicate.atMost(column, max)));
+    values.forEach(
+        (column, value) -> {
+          ColumnType type = schema.getColumns().get(schema.indexOf(column)).getType();
+          if (type == ColumnType.STRING) predicates.add(ColumnPredicate.equalTo(column, value));
+          else if (type == ColumnType.BOOLEAN)
+            predicates.add(
+                Boolean.parseBoolean(value)
+                    ? ColumnPredicate.isTrue(column)
+                    : ColumnPredicate.between(column, 0, 0));
+          else {
+            double number = Double.parseDouble(value);
+            predicates.add(ColumnPredicate.between(column, number, number));
+          }
+        });
+    return predicates.build();
+  }
+
+  /**
+   * @param reader {@link ColumnarResultReader} to export from
+   * @param rows indices of the rows to export
+   * @param output file to write the header and rows to
+   * @throws IOException
+   */
+  public static void export(ColumnarResultReader reader, long[] rows, File output)
+      throws IOException {
+    try (PrintWriter writer =
+        new PrintWriter(new BufferedWriter(Files.newWriter(output, StandardCharsets.UTF_8)))) {
+      writer.println(reader.getHeader());
+      for (long row : rows) {
+        writer.println(reader.getRow(row));
+      }
+    }
+  }
+}
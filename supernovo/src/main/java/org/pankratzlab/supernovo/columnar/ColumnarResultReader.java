@@ -0,0 +1,292 @@
+package org.pankratzlab.supernovo.columnar;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Memory-mapped columnar store written by {@link ColumnarResultWriter}. Rows are selected by
+ * {@link ColumnPredicate}s evaluated directly on the mapped column arrays, skipping every block
+ * whose column statistics rule a predicate out.
+ */
+public class ColumnarResultReader {
+
+  private static final Joiner ROW_JOINER = Joiner.on('\t');
+
+  /** A {@link ColumnPredicate} resolved to a column index and numeric range */
+  private static class BoundPredicate {
+    private final int column;
+    private final double min;
+    private final double max;
+
+    private BoundPredicate(int column, double min, double max) {
+      this.column = column;
+      this.min = min;
+      this.max = max;
+    }
+
+    private boolean mayMatch(double blockMin, double blockMax) {
+      return blockMin <= max && blockMax >= min;
+    }
+
+    private boolean matches(double value) {
+      return value >= min && value <= max;
+    }
+  }
+
+  private final ResultSchema schema;
+  private final ImmutableList<ResultColumn> columns;
+  private final int blockRows;
+  private final MappedFile mapped;
+  private final long[][] columnOffsets;
+  private final int[] blockRowCounts;
+  private final double[][] mins;
+  private final double[][] maxes;
+  private final ImmutableList<ImmutableList<String>> dictionaries;
+  private final long rowCount;
+
+  private ColumnarResultReader(
+      ResultSchema schema,
+      int blockRows,
+      MappedFile mapped,
+      long[][] columnOffsets,
+      int[] blockRowCounts,
+      double[][] mins,
+      double[][] maxes,
+      ImmutableList<ImmutableList<String>> dictionaries) {
+    this.schema = schema;
+    this.columns = schema.getColumns();
+    this.blockRows = blockRows;
+    this.mapped = mapped;
+    this.columnOffsets = columnOffsets;
+    this.blockRowCounts = blockRowCounts;
+    this.mins = mins;
+    this.maxes = maxes;
+    this.dictionaries = dictionaries;
+    this.rowCount = Arrays.stream(blockRowCounts).asLongStream().sum();
+  }
+
+  public static ColumnarResultReader load(File storeFile) throws IOException {
+    ResultSchema schema;
+    int blockRows;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+      if (in.readInt() != ColumnarResultWriter.MAGIC)
+        throw new IOException(storeFile + " is not a columnar result store");
+      int version = in.readInt();
+      if (version != ColumnarResultWriter.VERSION)
+        throw new IOException("Unsupported columnar result store version " + version);
+      blockRows = in.readInt();
+      int columnCount = in.readInt();
+      ImmutableList.Builder<ResultColumn> columns =
+          ImmutableList.builderWithExpectedSize(columnCount);
+      for (int c = 0; c < columnCount; c++) {
+        columns.add(
+            new ResultColumn(
+                in.readUTF(), ColumnType.values()[in.readByte()], in.readBoolean()));
+      }
+      schema = new ResultSchema(columns.build());
+    }
+    MappedFile mapped = MappedFile.map(storeFile);
+    long trailerOffset = mapped.size() - ColumnarResultWriter.TRAILER_BYTES;
+    if (trailerOffset < 0
+        || mapped.getInt(trailerOffset + Long.BYTES) != ColumnarResultWriter.MAGIC)
+      throw new IOException(storeFile + " is truncated");
+    long footerOffset = mapped.getLong(trailerOffset);
+    byte[] footerBytes = new byte[(int) (trailerOffset - footerOffset)];
+    mapped.get(footerOffset, footerBytes);
+    ImmutableList<ResultColumn> columns = schema.getColumns();
+    try (DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes))) {
+      int blockCount = footer.readInt();
+      long[][] columnOffsets = new long[blockCount][columns.size()];
+      int[] blockRowCounts = new int[blockCount];
+      double[][] mins = new double[blockCount][columns.size()];
+      double[][] maxes = new double[blockCount][columns.size()];
+      for (int b = 0; b < blockCount; b++) {
+        long offset = footer.readLong();
+        blockRowCounts[b] = footer.readInt();
+        for (int c = 0; c < columns.size(); c++) {
+          columnOffsets[b][c] = offset;
+          offset =
+              MappedFile.align(
+                  offset + (long) blockRowCounts[b] * columns.get(c).getType().getWidth());
+          mins[b][c] = footer.readDouble();
+          maxes[b][c] = footer.readDouble();
+        }
+      }
+      ImmutableList.Builder<ImmutableList<String>> dictionaries =
+          ImmutableList.builderWithExpectedSize(columns.size());
+      for (int c = 0; c < columns.size(); c++) {
+        int size = footer.readInt();
+        ImmutableList.Builder<String> dictionary = ImmutableList.builderWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+          dictionary.add(footer.readUTF());
+        }
+        dictionaries.add(dictionary.build());
+      }
+      return new ColumnarResultReader(
+          schema,
+          blockRows,
+          mapped,
+          columnOffsets,
+          blockRowCounts,
+          mins,
+          maxes,
+          dictionaries.build());
+    }
+  }
+
+  /** @return the {@link ResultSchema} of the stored rows */
+  public ResultSchema getSchema() {
+    return schema;
+  }
+
+  /** @return the number of stored rows */
+  public long size() {
+    return rowCount;
+  }
+
+  /** @return the number of blocks */
+  public int blockCount() {
+    return blockRowCounts.length;
+  }
+
+  /**
+   * @param predicates {@link ColumnPredicate}s that every selected row matches
+   * @return the indices of the rows matching every one of predicates, in ascending order
+   */
+  public long[] select(List<ColumnPredicate> predicates) {
+    ImmutableList<BoundPredicate> bound =
+        predicates.stream().map(this::bind).collect(ImmutableList.toImmutableList());
+    long[] selected = new long[64];
+    int selectedCount = 0;
+    for (int b = 0; b < blockRowCounts.length; b++) {
+      if (!mayMatch(bound, b)) continue;
+      long firstRow = (long) b * blockRows;
+      for (int r = 0; r < blockRowCounts[b]; r++) {
+        if (!matches(bound, b, r)) continue;
+        if (selectedCount == selected.length)
+          selected = Arrays.copyOf(selected, selectedCount * 2);
+        selected[selectedCount++] = firstRow + r;
+      }
+    }
+    return Arrays.copyOf(selected, selectedCount);
+  }
+
+  /**
+   * @param predicates {@link ColumnPredicate}s that every selected row matches
+   * @return the number of blocks whose statistics show they have no row matching predicates
+   */
+  public int skippedBlocks(List<ColumnPredicate> predicates) {
+    ImmutableList<BoundPredicate> bound =
+        predicates.stream().map(this::bind).collect(ImmutableList.toImmutableList());
+    int skipped = 0;
+    for (int b = 0; b < blockRowCounts.length; b++) {
+      if (!mayMatch(bound, b)) skipped++;
+    }
+    return skipped;
+  }
+
+  private boolean mayMatch(List<BoundPredicate> predicates, int block) {
+    for (BoundPredicate predicate : predicates) {
+      if (!predicate.mayMatch(mins[block][predicate.column], maxes[block][predicate.column]))
+        return false;
+    }
+    return true;
+  }
+
+  private boolean matches(List<BoundPredicate> predicates, int block, int blockRow) {
+    for (BoundPredicate predicate : predicates) {
+      if (!predicate.matches(value(predicate.column, block, blockRow))) return false;
+    }
+    return true;
+  }
+
+  private BoundPredicate bind(ColumnPredicate predicate) {
+    int column = schema.indexOf(predicate.getColumn());
+    boolean stringColumn = columns.get(column).getType() == ColumnType.STRING;
+    if (stringColumn != predicate.getValue().isPresent())
+      throw new IllegalArgumentException(
+          "Column "
+              + predicate.getColumn()
+              + " is "
+              + columns.get(column).getType()
+              + ", it can only be matched "
+              + (stringColumn ? "to a value" : "to a range"));
+    if (!stringColumn) return new BoundPredicate(column, predicate.getMin(), predicate.getMax());
+    int code = dictionaries.get(column).indexOf(predicate.getValue().get());
+    return code == -1
+        ? new BoundPredicate(column, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY)
+        : new BoundPredicate(column, code, code);
+  }
+
+  private double value(int column, int block, int blockRow) {
+    ColumnType type = columns.get(column).getType();
+    long offset = columnOffsets[block][column] + (long) blockRow * type.getWidth();
+    switch (type) {
+      case DOUBLE:
+        return mapped.getDouble(offset);
+      case BOOLEAN:
+        byte flag = mapped.getByte(offset);
+        return flag == ColumnType.MISSING_BOOLEAN ? Double.NaN : flag;
+      default:
+        int value = mapped.getInt(offset);
+        return value == ColumnType.MISSING_INT ? Double.NaN : value;
+    }
+  }
+
+  /**
+   * @param column index of a numeric or boolean column
+   * @param row index of a row
+   * @return the value of column in row, NaN if missing, 1 or 0 for true or false
+   */
+  public double getNumber(int column, long row) {
+    return value(column, (int) (row / blockRows), (int) (row % blockRows));
+  }
+
+  /**
+   * @param column index of a column
+   * @param row index of a row
+   * @return the value of column in row as written in the tab separated output
+   */
+  public String getText(int column, long row) {
+    double value = getNumber(column, row);
+    switch (columns.get(column).getType()) {
+      case DOUBLE:
+        return columns.get(column).isOptional() && Double.isNaN(value)
+            ? ColumnarResultWriter.MISSING
+            : Double.toString(value);
+      case BOOLEAN:
+        return Double.isNaN(value) ? ColumnarResultWriter.MISSING : Boolean.toString(value != 0);
+      case STRING:
+        return dictionaries.get(column).get((int) value);
+      default:
+        return Double.isNaN(value) ? ColumnarResultWriter.MISSING : Integer.toString((int) value);
+    }
+  }
+
+  /**
+   * @param row index of a row
+   * @return the row as a tab separated line of the output
+   */
+  public String getRow(long row) {
+    String[] values = new String[columns.size()];
+    for (int c = 0; c < values.length; c++) {
+      values[c] = getText(c, row);
+    }
+    return ROW_JOINER.join(values);
+  }
+
+  /** @return the header line of the tab separated output */
+  public String getHeader() {
+    return ROW_JOINER.join(columns.stream().map(ResultColumn::getName).iterator());
+  }
+}
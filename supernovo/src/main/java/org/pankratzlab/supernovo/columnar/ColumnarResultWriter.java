@@ -0,0 +1,267 @@
+package org.pankratzlab.supernovo.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.pankratzlab.supernovo.output.DeNovoResult;
+import org.pankratzlab.supernovo.output.OutputFields;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Writes {@link DeNovoResult} rows as a columnar store read by {@link ColumnarResultReader}. Rows
+ * are buffered into blocks, and each block is written as one primitive array per column of the
+ * {@link ResultSchema}, keeping the minimum and maximum of every column for block skipping.
+ *
+ * <p>Layout: header (magic, version, rows per block, columns), then the blocks with each column
+ * array padded to 8 bytes, then a footer of block offsets, row counts and statistics followed by
+ * the string dictionaries, and finally the footer offset and magic.
+ */
+public class ColumnarResultWriter implements Closeable {
+
+  static final int MAGIC = 0x534e4352;
+  static final int VERSION = 2;
+  static final int DEFAULT_BLOCK_ROWS = 4096;
+  static final String MISSING = ".";
+  static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+  private static final char DELIM = '\t';
+
+  private final ImmutableList<ResultColumn> columns;
+  private final int blockRows;
+  private final CountingOutputStream counting;
+  private final DataOutputStream out;
+  private final int[][] intValues;
+  private final double[][] doubleValues;
+  private final List<Map<String, Integer>> dictionaries;
+  private final ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+  private final DataOutputStream footer = new DataOutputStream(footerBytes);
+  private final RowSink rowSink = new RowSink();
+  private int blockCount = 0;
+  private int bufferedRows = 0;
+
+  /**
+   * @param output file to write the store to
+   * @throws IOException
+   */
+  public ColumnarResultWriter(File output) throws IOException {
+    this(output, ResultSchema.of(DeNovoResult.class), DEFAULT_BLOCK_ROWS);
+  }
+
+  /**
+   * @param output file to write the store to
+   * @param schema {@link ResultSchema} of the rows to write
+   * @param blockRows number of rows per block
+   * @throws IOException
+   */
+  public ColumnarResultWriter(File output, ResultSchema schema, int blockRows)
+      throws IOException {
+    super();
+    this.columns = schema.getColumns();
+    this.blockRows = blockRows;
+    this.counting =
+        new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+    this.out = new DataOutputStream(counting);
+    this.intValues = new int[columns.size()][];
+    this.doubleValues = new double[columns.size()][];
+    this.dictionaries = Lists.newArrayListWithCapacity(columns.size());
+    for (int c = 0; c < columns.size(); c++) {
+      if (columns.get(c).getType() == ColumnType.DOUBLE) doubleValues[c] = new double[blockRows];
+      else intValues[c] = new int[blockRows];
+      dictionaries.add(Maps.newLinkedHashMap());
+    }
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(blockRows);
+    out.writeInt(columns.size());
+    for (ResultColumn column : columns) {
+      out.writeUTF(column.getName());
+      out.writeByte(column.getType().ordinal());
+      out.writeBoolean(column.isOptional());
+    }
+  }
+
+  /** Stores the values of the row being written, checking them against the column types */
+  private class RowSink implements OutputFields.ColumnSink {
+    private int column;
+
+    private int next(ColumnType type) {
+      if (column == columns.size()) throw new IllegalArgumentException("Too many columns");
+      ResultColumn next = columns.get(column);
+      if (next.getType() != type)
+        throw new IllegalArgumentException(
+            next.getName() + " is a " + next.getType() + " column, not " + type);
+      return column++;
+    }
+
+    @Override
+    public void putInt(int value) {
+      intValues[next(ColumnType.INT)][bufferedRows] = value;
+    }
+
+    @Override
+    public void putDouble(double value) {
+      doubleValues[next(ColumnType.DOUBLE)][bufferedRows] = value;
+    }
+
+    @Override
+    public void putBoolean(boolean value) {
+      intValues[next(ColumnType.BOOLEAN)][bufferedRows] = value ? 1 : 0;
+    }
+
+    @Override
+    public void putString(String value) {
+      int c = next(ColumnType.STRING);
+      intValues[c][bufferedRows] = code(c, value);
+    }
+
+    @Override
+    public void putMissing() {
+      if (column == columns.size()) throw new IllegalArgumentException("Too many columns");
+      store(column++, MISSING);
+    }
+  }
+
+  /**
+   * @param result row to write, with the columns of the {@link ResultSchema}
+   * @throws IOException
+   */
+  public void write(OutputFields result) throws IOException {
+    rowSink.column = 0;
+    result.putValues(rowSink);
+    if (rowSink.column < columns.size())
+      throw new IllegalArgumentException("Too few columns in " + result);
+    if (++bufferedRows == blockRows) flushBlock();
+  }
+
+  /**
+   * @param row tab separated line of a {@link DeNovoResult}, as generated for the text output, such
+   *     as a row reused from previous output
+   * @throws IOException
+   */
+  public void writeRow(String row) throws IOException {
+    int start = 0;
+    for (int c = 0; c < columns.size(); c++) {
+      int end = row.indexOf(DELIM, start);
+      if (end == -1) end = row.length();
+      if (end < start) throw new IllegalArgumentException("Too few columns in " + row);
+      store(c, row.substring(start, end));
+      start = end + 1;
+    }
+    if (start <= row.length()) throw new IllegalArgumentException("Too many columns in " + row);
+    if (++bufferedRows == blockRows) flushBlock();
+  }
+
+  private void store(int column, String value) {
+    switch (columns.get(column).getType()) {
+      case INT:
+        intValues[column][bufferedRows] =
+            MISSING.equals(value) ? ColumnType.MISSING_INT : Integer.parseInt(value);
+        break;
+      case DOUBLE:
+        doubleValues[column][bufferedRows] =
+            MISSING.equals(value) ? Double.NaN : Double.parseDouble(value);
+        break;
+      case BOOLEAN:
+        intValues[column][bufferedRows] =
+            MISSING.equals(value)
+                ? ColumnType.MISSING_BOOLEAN
+                : Boolean.parseBoolean(value) ? 1 : 0;
+        break;
+      case STRING:
+        intValues[column][bufferedRows] = code(column, value);
+        break;
+      default:
+        throw new IllegalStateException("Unhandled column type " + columns.get(column).getType());
+    }
+  }
+
+  private int code(int column, String value) {
+    Map<String, Integer> dictionary = dictionaries.get(column);
+    Integer code = dictionary.get(value);
+    if (code == null) {
+      code = dictionary.size();
+      dictionary.put(value, code);
+    }
+    return code;
+  }
+
+  private void flushBlock() throws IOException {
+    if (bufferedRows == 0) return;
+    pad();
+    footer.writeLong(counting.getCount());
+    footer.writeInt(bufferedRows);
+    for (int c = 0; c < columns.size(); c++) {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      switch (columns.get(c).getType()) {
+        case DOUBLE:
+          for (int r = 0; r < bufferedRows; r++) {
+            double value = doubleValues[c][r];
+            out.writeDouble(value);
+            if (value < min) min = value;
+            if (value > max) max = value;
+          }
+          break;
+        case BOOLEAN:
+          for (int r = 0; r < bufferedRows; r++) {
+            int value = intValues[c][r];
+            out.writeByte(value);
+            if (value == ColumnType.MISSING_BOOLEAN) continue;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+          }
+          break;
+        default:
+          for (int r = 0; r < bufferedRows; r++) {
+            int value = intValues[c][r];
+            out.writeInt(value);
+            if (value == ColumnType.MISSING_INT) continue;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+          }
+      }
+      pad();
+      footer.writeDouble(min);
+      footer.writeDouble(max);
+    }
+    blockCount++;
+    bufferedRows = 0;
+  }
+
+  private void pad() throws IOException {
+    long aligned = MappedFile.align(counting.getCount());
+    while (counting.getCount() < aligned) {
+      out.writeByte(0);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBlock();
+      long footerOffset = counting.getCount();
+      out.writeInt(blockCount);
+      footerBytes.writeTo(out);
+      for (Map<String, Integer> dictionary : dictionaries) {
+        out.writeInt(dictionary.size());
+        for (String value : dictionary.keySet()) {
+          out.writeUTF(value);
+        }
+      }
+      out.writeLong(footerOffset);
+      out.writeInt(MAGIC);
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package org.pankratzlab.supernovo.columnar;
+
+/** A column of a {@link ResultSchema}, named as in the tab separated output header */
+public class ResultColumn {
+
+  private final String name;
+  private final ColumnType type;
+  private final boolean optional;
+
+  /**
+   * @param name of the column, as in the output header
+   * @param type {@link ColumnType} the column is stored as
+   * @param optional true if the column can be missing
+   */
+  public ResultColumn(String name, ColumnType type, boolean optional) {
+    super();
+    this.name = name;
+    this.type = type;
+    this.optional = optional;
+  }
+
+  /** @return the name */
+  public String getName() {
+    return name;
+  }
+
+  /** @return the type */
+  public ColumnType getType() {
+    return type;
+  }
+
+  /** @return true if the column can be missing */
+  public boolean isOptional() {
+    return optional;
+  }
+}
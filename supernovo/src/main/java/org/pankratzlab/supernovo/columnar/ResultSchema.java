@@ -0,0 +1,92 @@
+package org.pankratzlab.supernovo.columnar;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.output.OutputFields;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Typed columns of an {@link OutputFields} class, derived from its public fields the same way
+ * {@link OutputFields#generateHeader(Class)} derives the header, so the columns line up with the
+ * tab separated output
+ */
+public class ResultSchema {
+
+  private final ImmutableList<ResultColumn> columns;
+
+  /** @param columns of the schema, in output order */
+  public ResultSchema(ImmutableList<ResultColumn> columns) {
+    super();
+    this.columns = columns;
+  }
+
+  /**
+   * @param outputClass {@link OutputFields} class to derive columns of
+   * @return {@link ResultSchema} with a column for each output column of outputClass
+   */
+  public static ResultSchema of(Class<? extends OutputFields> outputClass) {
+    return new ResultSchema(
+        columns(outputClass, "").collect(ImmutableList.toImmutableList()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Stream<ResultColumn> columns(
+      Class<? extends OutputFields> outputClass, String prefix) {
+    return Stream.of(outputClass.getFields())
+        .flatMap(
+            field ->
+                OutputFields.Computed.class.isAssignableFrom(field.getType())
+                    ? OutputFields.computedColumns(
+                            (Class<? extends OutputFields.Computed>) field.getType())
+                        .stream()
+                        .map(column -> column(column, prefix))
+                    : OutputFields.class.isAssignableFrom(field.getType())
+                        ? columns(
+                            (Class<? extends OutputFields>) field.getType(),
+                            prefix + field.getName() + "_")
+                        : Stream.of(column(field, prefix)));
+  }
+
+  private static ResultColumn column(OutputFields.Column column, String prefix) {
+    return new ResultColumn(prefix + column.getName(), type(column.getType()), column.isOptional());
+  }
+
+  private static ResultColumn column(Field field, String prefix) {
+    String name = prefix + OutputFields.headerName(field);
+    if (!Optional.class.equals(field.getType()))
+      return new ResultColumn(
+          name, type(field.getType()), field.isAnnotationPresent(OutputFields.Missable.class));
+    Type valueType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+    return new ResultColumn(
+        name, valueType instanceof Class ? type((Class<?>) valueType) : ColumnType.STRING, true);
+  }
+
+  private static ColumnType type(Class<?> valueClass) {
+    if (int.class.equals(valueClass) || Integer.class.equals(valueClass)) return ColumnType.INT;
+    if (double.class.equals(valueClass) || Double.class.equals(valueClass))
+      return ColumnType.DOUBLE;
+    if (boolean.class.equals(valueClass) || Boolean.class.equals(valueClass))
+      return ColumnType.BOOLEAN;
+    return ColumnType.STRING;
+  }
+
+  /** @return the columns, in output order */
+  public ImmutableList<ResultColumn> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @param name of a column
+   * @return index of the column named name
+   * @throws IllegalArgumentException if there is no such column
+   */
+  public int indexOf(String name) {
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).getName().equals(name)) return i;
+    }
+    throw new IllegalArgumentException("Unknown column " + name);
+  }
+}
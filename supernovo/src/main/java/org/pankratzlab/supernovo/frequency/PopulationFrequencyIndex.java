@@ -0,0 +1,183 @@
+package org.pankratzlab.supernovo.frequency;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.CountingInputStream;
+
+/**
+ * Memory-mapped, sorted index of population allele frequencies keyed by packed position and allele
+ * hash, as compiled by {@link PopulationFrequencyIndexBuilder}. Lookups are a binary search over
+ * the mapped keys and do not allocate.
+ *
+ * <p>Alleles are keyed in a normalized form, both when indexed and when looked up: the bases shared
+ * by the ends and then the starts of ref and alt are trimmed, keeping at least one base of each,
+ * and the position moves past the trimmed leading bases. The same SNV, MNV or indel therefore
+ * matches however much padding it was written with, including alts split from a multiallelic
+ * record. Indels are not left aligned, which would need the reference sequence.
+ *
+ * <p>Layout: header (magic, version, contig names, record count) padded to 8 bytes, followed by
+ * the sorted packed position keys as longs, the allele hashes as ints and the frequencies as
+ * floats.
+ */
+public class PopulationFrequencyIndex {
+
+  static final int MAGIC = 0x534e4146;
+  static final int VERSION = 2;
+
+  private final ImmutableMap<String, Integer> contigIndices;
+  private final MappedFile mapped;
+  private final long recordCount;
+  private final long keysOffset;
+  private final long hashesOffset;
+  private final long frequenciesOffset;
+
+  private PopulationFrequencyIndex(
+      ImmutableMap<String, Integer> contigIndices,
+      MappedFile mapped,
+      long recordCount,
+      long dataOffset) {
+    this.contigIndices = contigIndices;
+    this.mapped = mapped;
+    this.recordCount = recordCount;
+    this.keysOffset = dataOffset;
+    this.hashesOffset = keysOffset + recordCount * Long.BYTES;
+    this.frequenciesOffset = hashesOffset + recordCount * Integer.BYTES;
+  }
+
+  public static PopulationFrequencyIndex load(File indexFile) throws IOException {
+    ImmutableMap.Builder<String, Integer> contigIndices = ImmutableMap.builder();
+    final long recordCount;
+    final long headerLength;
+    try (CountingInputStream counting =
+            new CountingInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        DataInputStream in = new DataInputStream(counting)) {
+      if (in.readInt() != MAGIC)
+        throw new IOException(indexFile + " is not a population frequency index");
+      int version = in.readInt();
+      if (version != VERSION)
+        throw new IOException("Unsupported population frequency index version " + version);
+      int contigCount = in.readInt();
+      for (int i = 0; i < contigCount; i++) {
+        contigIndices.put(in.readUTF(), i);
+      }
+      recordCount = in.readLong();
+      headerLength = counting.getCount();
+    }
+    return new PopulationFrequencyIndex(
+        contigIndices.build(),
+        MappedFile.map(indexFile),
+        recordCount,
+        MappedFile.align(headerLength));
+  }
+
+  /** @return the number of indexed alleles */
+  public long size() {
+    return recordCount;
+  }
+
+  /**
+   * @param pos to lookup
+   * @return population frequency of the alt allele at pos or {@link Double#NaN} if not indexed
+   */
+  public double alleleFrequency(ReferencePosition pos) {
+    if (!pos.getAltAllele().isPresent()) return Double.NaN;
+    return alleleFrequency(
+        pos.getContig(),
+        pos.getPosition(),
+        pos.getRefAllele().toString(),
+        pos.getAltAllele().get().toString());
+  }
+
+  /**
+   * @param contig of allele
+   * @param position 1-based position of allele
+   * @param ref reference allele bases, padded or not
+   * @param alt alternate allele bases, padded or not
+   * @return population frequency of alt or {@link Double#NaN} if not indexed
+   */
+  public double alleleFrequency(String contig, int position, String ref, String alt) {
+    Integer contigIndex = contigIndices.get(contig);
+    if (contigIndex == null) return Double.NaN;
+    long key = alleleKey(contigIndex, position, ref, alt);
+    int hash = alleleHash(ref, alt);
+    for (long i = lowerBound(key); i < recordCount && keyAt(i) == key; i++) {
+      if (mapped.getInt(hashesOffset + i * Integer.BYTES) == hash)
+        return mapped.getFloat(frequenciesOffset + i * Float.BYTES);
+    }
+    return Double.NaN;
+  }
+
+  private long keyAt(long i) {
+    return mapped.getLong(keysOffset + i * Long.BYTES);
+  }
+
+  private long lowerBound(long key) {
+    long low = 0;
+    long high = recordCount;
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      if (keyAt(mid) < key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * @param contigIndex index of the contig of the allele
+   * @param position 1-based position of ref
+   * @param ref reference allele bases
+   * @param alt alternate allele bases
+   * @return packed position of the normalized allele
+   */
+  static long alleleKey(int contigIndex, int position, String ref, String alt) {
+    int prefix = sharedPrefix(ref, alt, sharedSuffix(ref, alt));
+    return PackedPosition.pack(contigIndex, position + prefix);
+  }
+
+  /**
+   * @param ref reference allele bases
+   * @param alt alternate allele bases
+   * @return hash of the bases of the normalized ref and alt
+   */
+  static int alleleHash(String ref, String alt) {
+    int suffix = sharedSuffix(ref, alt);
+    int prefix = sharedPrefix(ref, alt, suffix);
+    return 31 * hash(ref, prefix, ref.length() - suffix) + hash(alt, prefix, alt.length() - suffix);
+  }
+
+  private static int sharedSuffix(String ref, String alt) {
+    int shared = 0;
+    while (shared < ref.length() - 1
+        && shared < alt.length() - 1
+        && ref.charAt(ref.length() - 1 - shared) == alt.charAt(alt.length() - 1 - shared)) {
+      shared++;
+    }
+    return shared;
+  }
+
+  private static int sharedPrefix(String ref, String alt, int suffix) {
+    int shared = 0;
+    while (shared < ref.length() - suffix - 1
+        && shared < alt.length() - suffix - 1
+        && ref.charAt(shared) == alt.charAt(shared)) {
+      shared++;
+    }
+    return shared;
+  }
+
+  /** @return {@link String#hashCode()} of the substring of bases from start to end */
+  private static int hash(String bases, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + bases.charAt(i);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,162 @@
+package org.pankratzlab.supernovo.frequency;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Compiles a coordinate sorted sites/frequency VCF into a {@link PopulationFrequencyIndex}. Each
+ * alt of a multiallelic record is keyed on its own, normalized as the index looks alleles up, and
+ * symbolic and spanning deletion alts are skipped. Normalizing can only move an allele past the
+ * start of its record, so keys are held back only until a later record starts past them and
+ * memory use does not depend on the size of the VCF.
+ */
+@Command(name = "index", description = "Compile a population frequency VCF into a binary index")
+public class PopulationFrequencyIndexBuilder implements Runnable {
+
+  private static class Entry {
+    private final long key;
+    private final int hash;
+    private final float frequency;
+
+    private Entry(long key, int hash, float frequency) {
+      this.key = key;
+      this.hash = hash;
+      this.frequency = frequency;
+    }
+  }
+
+  @Option(
+    names = {"--vcf", "-v"},
+    paramLabel = "VCF",
+    description = "Coordinate sorted sites VCF with population allele frequencies",
+    required = true
+  )
+  private File vcf;
+
+  @Option(
+    names = {"--afField"},
+    paramLabel = "KEY",
+    description = "INFO key of the per-alt-allele frequency (default: ${DEFAULT-VALUE})"
+  )
+  private String afField = "AF";
+
+  @Option(
+    names = {"--output", "-o"},
+    paramLabel = "FILE",
+    description = "Output population frequency index",
+    required = true
+  )
+  private File output;
+
+  @Override
+  public void run() {
+    try {
+      build(vcf, afField, output);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public static void build(File vcf, String afField, File output) throws IOException {
+    Map<String, Integer> contigIndices = Maps.newLinkedHashMap();
+    File tmpDir = output.getAbsoluteFile().getParentFile();
+    File keysFile = File.createTempFile(output.getName(), ".keys", tmpDir);
+    File hashesFile = File.createTempFile(output.getName(), ".hashes", tmpDir);
+    File freqsFile = File.createTempFile(output.getName(), ".freqs", tmpDir);
+    long recordCount = 0;
+    try {
+      try (VCFFileReader reader = new VCFFileReader(vcf, false);
+          CloseableIterator<VariantContext> iterator = reader.iterator();
+          DataOutputStream keys = dataOutput(keysFile);
+          DataOutputStream hashes = dataOutput(hashesFile);
+          DataOutputStream freqs = dataOutput(freqsFile)) {
+        PriorityQueue<Entry> pending = new PriorityQueue<>(Comparator.comparingLong(e -> e.key));
+        long previousKey = Long.MIN_VALUE;
+        while (iterator.hasNext()) {
+          VariantContext vc = iterator.next();
+          Integer contigIndex = contigIndices.get(vc.getContig());
+          if (contigIndex == null) {
+            contigIndex = contigIndices.size();
+            contigIndices.put(vc.getContig(), contigIndex);
+          }
+          long key = PackedPosition.pack(contigIndex, vc.getStart());
+          if (key < previousKey)
+            throw new IllegalArgumentException(
+                vcf + " is not coordinate sorted at " + vc.getContig() + ":" + vc.getStart());
+          previousKey = key;
+          while (!pending.isEmpty() && pending.peek().key < key) {
+            write(pending.poll(), keys, hashes, freqs);
+          }
+          String ref = vc.getReference().getBaseString();
+          List<Allele> alts = vc.getAlternateAlleles();
+          List<Double> afs = vc.getAttributeAsDoubleList(afField, Double.NaN);
+          for (int i = 0; i < alts.size() && i < afs.size(); i++) {
+            Allele alt = alts.get(i);
+            double af = afs.get(i);
+            if (Double.isNaN(af) || alt.isSymbolic() || alt.basesMatch(Allele.SPAN_DEL)) continue;
+            String altBases = alt.getBaseString();
+            pending.add(
+                new Entry(
+                    PopulationFrequencyIndex.alleleKey(contigIndex, vc.getStart(), ref, altBases),
+                    PopulationFrequencyIndex.alleleHash(ref, altBases),
+                    (float) af));
+            recordCount++;
+          }
+        }
+        while (!pending.isEmpty()) {
+          write(pending.poll(), keys, hashes, freqs);
+        }
+      }
+      try (CountingOutputStream counting =
+              new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+          DataOutputStream out = new DataOutputStream(counting)) {
+        out.writeInt(PopulationFrequencyIndex.MAGIC);
+        out.writeInt(PopulationFrequencyIndex.VERSION);
+        out.writeInt(contigIndices.size());
+        for (String contig : contigIndices.keySet()) {
+          out.writeUTF(contig);
+        }
+        out.writeLong(recordCount);
+        long padding = MappedFile.align(counting.getCount()) - counting.getCount();
+        for (long i = 0; i < padding; i++) out.writeByte(0);
+        Files.asByteSource(keysFile).copyTo(out);
+        Files.asByteSource(hashesFile).copyTo(out);
+        Files.asByteSource(freqsFile).copyTo(out);
+      }
+    } finally {
+      keysFile.delete();
+      hashesFile.delete();
+      freqsFile.delete();
+    }
+  }
+
+  private static void write(
+      Entry entry, DataOutputStream keys, DataOutputStream hashes, DataOutputStream freqs)
+      throws IOException {
+    keys.writeLong(entry.key);
+    hashes.writeInt(entry.hash);
+    freqs.writeFloat(entry.frequency);
+  }
+
+  private static DataOutputStream dataOutput(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+  }
+}
@@ -0,0 +1,159 @@
+package org.pankratzlab.supernovo.incremental;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.zip.GZIPInputStream;
+import org.pankratzlab.supernovo.PileAllele;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+
+/**
+ * Candidate sites of a previous run, as written by {@link CandidateSitesWriter}, held as sorted
+ * packed positions and allele hashes so membership tests do not depend on strings
+ */
+public class CandidateSites {
+
+  private static final String SITES_SUFFIX = ".sites.gz";
+  private static final String MISSING_ALT = ".";
+  private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+  private final Map<String, Integer> contigIndices;
+  private final long[] keys;
+  private final int[] alleleHashes;
+
+  private CandidateSites(Map<String, Integer> contigIndices, long[] keys, int[] alleleHashes) {
+    this.contigIndices = contigIndices;
+    this.keys = keys;
+    this.alleleHashes = alleleHashes;
+  }
+
+  public static CandidateSites load(File sitesFile) throws IOException {
+    Map<String, Integer> contigIndices = Maps.newHashMap();
+    long[] keys = new long[1024];
+    int[] alleleHashes = new int[keys.length];
+    int size = 0;
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(sitesFile)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        List<String> fields = TAB_SPLITTER.splitToList(line);
+        Integer contigIndex = contigIndices.get(fields.get(0));
+        if (contigIndex == null) {
+          contigIndex = contigIndices.size();
+          contigIndices.put(fields.get(0), contigIndex);
+        }
+        long key = PackedPosition.pack(contigIndex, Integer.parseInt(fields.get(1)));
+        if (size > 0 && key < keys[size - 1])
+          throw new IOException(sitesFile + " is not coordinate sorted at " + line);
+        if (size == keys.length) {
+          keys = Arrays.copyOf(keys, size * 2);
+          alleleHashes = Arrays.copyOf(alleleHashes, size * 2);
+        }
+        keys[size] = key;
+        alleleHashes[size] = alleleHash(fields.get(2), fields.get(3));
+        size++;
+      }
+    }
+    return new CandidateSites(
+        contigIndices, Arrays.copyOf(keys, size), Arrays.copyOf(alleleHashes, size));
+  }
+
+  /**
+   * @param output main output of a run
+   * @return the candidate sites file written for output
+   */
+  public static File sitesFile(File output) {
+    return new File(output.getPath() + SITES_SUFFIX);
+  }
+
+  /**
+   * @param pos candidate site
+   * @return the line written for pos, matching the first columns of its output row
+   */
+  static String siteKey(ReferencePosition pos) {
+    return pos.getContig()
+        + "\t"
+        + pos.getPosition()
+        + "\t"
+        + pos.getRefAllele()
+        + "\t"
+        + altString(pos);
+  }
+
+  private static String altString(ReferencePosition pos) {
+    return pos.getAltAllele().map(PileAllele::toString).orElse(MISSING_ALT);
+  }
+
+  private static int alleleHash(String ref, String alt) {
+    return 31 * ref.hashCode() + alt.hashCode();
+  }
+
+  /** @return the number of sites */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * @param index of site
+   * @return packed position of the site at index
+   */
+  long keyAt(int index) {
+    return keys[index];
+  }
+
+  /**
+   * @param contig of a position
+   * @param position 1-based position
+   * @return the position packed with the contig indices of these sites, absent if no site is on
+   *     contig
+   */
+  OptionalLong pack(String contig, int position) {
+    Integer contigIndex = contigIndices.get(contig);
+    if (contigIndex == null) return OptionalLong.empty();
+    return OptionalLong.of(PackedPosition.pack(contigIndex, position));
+  }
+
+  /**
+   * @param pos site to find
+   * @return index of pos in these sites, -1 if pos is not a site
+   */
+  public int indexOf(ReferencePosition pos) {
+    OptionalLong key = pack(pos.getContig(), pos.getPosition());
+    if (!key.isPresent()) return -1;
+    int hash = alleleHash(pos.getRefAllele().toString(), altString(pos));
+    for (int i = lowerBound(keys, key.getAsLong());
+        i < keys.length && keys[i] == key.getAsLong();
+        i++) {
+      if (alleleHashes[i] == hash) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * @param sorted keys to search
+   * @param key to find
+   * @return index of the first element of sorted not less than key
+   */
+  static int lowerBound(long[] sorted, long key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+}
@@ -0,0 +1,49 @@
+package org.pankratzlab.supernovo.incremental;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.pankratzlab.supernovo.ReferencePosition;
+
+/**
+ * Writes every candidate site of a run, whether or not it produced an output row, beside the
+ * output as gzipped contig, position, ref and alt lines for {@link CandidateSites}
+ */
+public class CandidateSitesWriter implements Closeable {
+
+  private final Writer writer;
+
+  /**
+   * @param output main output of the run, the sites are written to {@link
+   *     CandidateSites#sitesFile(File)}
+   * @throws IOException
+   */
+  public CandidateSitesWriter(File output) throws IOException {
+    super();
+    this.writer =
+        new BufferedWriter(
+            new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(CandidateSites.sitesFile(output))),
+                StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param pos candidate site to write
+   * @throws IOException
+   */
+  public void write(ReferencePosition pos) throws IOException {
+    writer.write(CandidateSites.siteKey(pos));
+    writer.write('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,169 @@
+package org.pankratzlab.supernovo.incremental;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.output.DeNovoResult;
+import org.pankratzlab.supernovo.output.DeNovoResultWriter;
+import org.pankratzlab.supernovo.output.OutputFields;
+import org.pankratzlab.supernovo.output.RunReport;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+/**
+ * Decides which candidate sites of a run can reuse their row from a previous run over the same
+ * BAMs and parameters: sites that were candidates of the previous run and have no new, changed or
+ * removed candidate within their haplotype window. Every other site is evaluated again.
+ */
+public class IncrementalPlan {
+
+  private final CandidateSites previousSites;
+  private final long[] changedKeys;
+  private final int window;
+  private final Map<String, String> previousRows = Maps.newHashMap();
+  private final int newSites;
+  private final int removedSites;
+  private long reusedSites = 0;
+  private long reevaluatedSites = 0;
+
+  private IncrementalPlan(
+      CandidateSites previousSites,
+      long[] changedKeys,
+      int window,
+      int newSites,
+      int removedSites) {
+    this.previousSites = previousSites;
+    this.changedKeys = changedKeys;
+    this.window = window;
+    this.newSites = newSites;
+    this.removedSites = removedSites;
+  }
+
+  /**
+   * @param previousOutput output of the previous run, with its candidate sites beside it
+   * @param candidates candidate sites of this run
+   * @param window distance either side of a site over which a changed site affects it
+   * @return {@link IncrementalPlan} reusing the rows of previousOutput where possible
+   * @throws IOException
+   */
+  public static IncrementalPlan build(
+      File previousOutput, Stream<ReferencePosition> candidates, int window) throws IOException {
+    CandidateSites previousSites = CandidateSites.load(CandidateSites.sitesFile(previousOutput));
+    boolean[] seen = new boolean[previousSites.size()];
+    long[] changed = new long[1024];
+    int changedCount = 0;
+    int newSites = 0;
+    for (ReferencePosition pos : (Iterable<ReferencePosition>) candidates::iterator) {
+      int index = previousSites.indexOf(pos);
+      if (index != -1) {
+        seen[index] = true;
+        continue;
+      }
+      newSites++;
+      OptionalLong key = previousSites.pack(pos.getContig(), pos.getPosition());
+      if (!key.isPresent()) continue;
+      if (changedCount == changed.length) changed = Arrays.copyOf(changed, changedCount * 2);
+      changed[changedCount++] = key.getAsLong();
+    }
+    int removedSites = 0;
+    for (int i = 0; i < seen.length; i++) {
+      if (seen[i]) continue;
+      removedSites++;
+      if (changedCount == changed.length) changed = Arrays.copyOf(changed, changedCount * 2);
+      changed[changedCount++] = previousSites.keyAt(i);
+    }
+    long[] changedKeys = Arrays.copyOf(changed, changedCount);
+    Arrays.sort(changedKeys);
+    IncrementalPlan plan =
+        new IncrementalPlan(previousSites, changedKeys, window, newSites, removedSites);
+    plan.loadPreviousRows(previousOutput);
+    return plan;
+  }
+
+  private void loadPreviousRows(File previousOutput) throws IOException {
+    try (BufferedReader reader = openOutput(previousOutput)) {
+      String header = reader.readLine();
+      if (!OutputFields.generateHeader(DeNovoResult.class).equals(header))
+        throw new IOException(previousOutput + " does not have the columns of this version");
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String siteKey = siteKey(line);
+        if (!changedNear(siteKey)) previousRows.put(siteKey, line);
+      }
+    }
+  }
+
+  private static BufferedReader openOutput(File output) throws IOException {
+    if (DeNovoResultWriter.isBlockCompressed(output))
+      return new BufferedReader(
+          new InputStreamReader(new BlockCompressedInputStream(output), StandardCharsets.UTF_8));
+    return Files.newReader(output, StandardCharsets.UTF_8);
+  }
+
+  /** @return the contig, position, ref and alt columns that start row */
+  private static String siteKey(String row) {
+    int end = -1;
+    for (int i = 0; i < 4; i++) {
+      end = row.indexOf('\t', end + 1);
+    }
+    return end == -1 ? row : row.substring(0, end);
+  }
+
+  private boolean changedNear(String siteKey) {
+    String[] fields = siteKey.split("\t");
+    return changedNear(fields[0], Integer.parseInt(fields[1]));
+  }
+
+  private boolean changedNear(String contig, int position) {
+    OptionalLong start = previousSites.pack(contig, Math.max(0, position - window));
+    if (!start.isPresent()) return true;
+    OptionalLong end = previousSites.pack(contig, position + window);
+    int i = CandidateSites.lowerBound(changedKeys, start.getAsLong());
+    return i < changedKeys.length && changedKeys[i] <= end.getAsLong();
+  }
+
+  /**
+   * @param pos candidate site of this run
+   * @return true if the previous result of pos, see {@link #previousRow(ReferencePosition)}, can
+   *     be reused instead of evaluating pos again
+   */
+  public boolean reusable(ReferencePosition pos) {
+    if (previousSites.indexOf(pos) == -1 || changedNear(pos.getContig(), pos.getPosition())) {
+      reevaluatedSites++;
+      return false;
+    }
+    reusedSites++;
+    return true;
+  }
+
+  /**
+   * @param pos {@link #reusable(ReferencePosition)} candidate site of this run
+   * @return the previous output row of pos, absent if pos did not produce a row
+   */
+  public Optional<String> previousRow(ReferencePosition pos) {
+    return Optional.ofNullable(previousRows.get(CandidateSites.siteKey(pos)));
+  }
+
+  /**
+   * Add the number of new, removed, reused and reevaluated sites to report
+   *
+   * @param report {@link RunReport} to add to
+   */
+  public void reportMetrics(RunReport report) {
+    report
+        .put("incremental.previousSites", previousSites.size())
+        .put("incremental.newSites", newSites)
+        .put("incremental.removedSites", removedSites)
+        .put("incremental.reusedSites", reusedSites)
+        .put("incremental.reevaluatedSites", reevaluatedSites);
+  }
+}
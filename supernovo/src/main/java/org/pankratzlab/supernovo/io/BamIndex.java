@@ -0,0 +1,485 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.LittleEndianDataInputStream;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SamFiles;
+import htsjdk.samtools.SamReader;
+
+/**
+ * A BAI index held as flat primitive arrays in a memory-mapped sidecar file. The BAI is parsed once
+ * into the sidecar, later jobs over the same BAM map the sidecar without parsing the BAI, and every
+ * reader of a BAM in a JVM shares one mapping.
+ *
+ * <p>Sidecar layout: header (magic, version, length and modification time of the BAI, reference,
+ * bin, chunk and linear index counts), the first bin and linear index entry of each reference as
+ * ints, the sorted bin numbers of each reference and the first chunk of each bin as ints, padded
+ * to 8 bytes, then the chunk begin and end virtual offsets and the linear index as longs.
+ */
+public class BamIndex {
+
+  /** Resolves queries of one reader against a {@link BamIndex}, not thread-safe */
+  public class Resolver {
+
+    private int windowReference = -1;
+    private int window = -1;
+    private BAMFileSpan windowSpan;
+
+    private Resolver() {}
+
+    /**
+     * Every position within a linear index window overlaps the same bins and has the same minimum
+     * offset, so the span of a window is resolved once for all of the sorted sites queried within
+     * it
+     *
+     * @param referenceIndex index of the reference in the sequence dictionary
+     * @param position 1-based position
+     * @return {@link BAMFileSpan} of the chunks that may hold records overlapping position
+     */
+    public BAMFileSpan spanOverlapping(int referenceIndex, int position) {
+      int positionWindow = linearWindow(position);
+      if (referenceIndex != windowReference || positionWindow != window) {
+        int windowStart = (positionWindow << LINEAR_WINDOW_SHIFT) + 1;
+        windowSpan =
+            resolve(
+                referenceIndex,
+                new int[] {windowStart},
+                new int[] {windowStart + (1 << LINEAR_WINDOW_SHIFT) - 1});
+        windowReference = referenceIndex;
+        window = positionWindow;
+      }
+      return windowSpan;
+    }
+
+    /**
+     * @param referenceIndex index of the reference in the sequence dictionary
+     * @param start 1-based start
+     * @param end 1-based inclusive end, 0 or less for the end of the reference
+     * @return {@link BAMFileSpan} of the chunks that may hold records overlapping start to end
+     */
+    public BAMFileSpan spanOverlapping(int referenceIndex, int start, int end) {
+      if (start == end) return spanOverlapping(referenceIndex, start);
+      return resolve(referenceIndex, new int[] {start}, new int[] {end});
+    }
+
+    /**
+     * Resolve a batch of intervals together, merging the chunks they share
+     *
+     * @param intervals optimized {@link QueryInterval}s, see {@link
+     *     QueryInterval#optimizeIntervals(QueryInterval[])}
+     * @return {@link BAMFileSpan} of the chunks that may hold records overlapping intervals
+     */
+    public BAMFileSpan spanOverlapping(QueryInterval[] intervals) {
+      ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+      int i = 0;
+      while (i < intervals.length) {
+        int referenceIndex = intervals[i].referenceIndex;
+        int j = i;
+        while (j < intervals.length && intervals[j].referenceIndex == referenceIndex) j++;
+        int[] starts = new int[j - i];
+        int[] ends = new int[j - i];
+        for (int k = i; k < j; k++) {
+          starts[k - i] = intervals[k].start;
+          ends[k - i] = intervals[k].end;
+        }
+        chunks.addAll(resolve(referenceIndex, starts, ends).getChunks());
+        i = j;
+      }
+      return new BAMFileSpan(merge(chunks.build()));
+    }
+  }
+
+  static final int MAGIC = 0x534e4249;
+  static final int VERSION = 1;
+
+  private static final String BAI_EXTENSION = ".bai";
+  private static final String SIDECAR_SUFFIX = ".snbai";
+  private static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+  private static final int LINEAR_WINDOW_SHIFT = 14;
+  private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES + 4 * Integer.BYTES;
+  private static final int MAX_POSITION = GenomicIndexUtil.BIN_GENOMIC_SPAN;
+
+  private static final ConcurrentMap<File, BamIndex> LOADED = new ConcurrentHashMap<>();
+
+  private final MappedFile mapped;
+  private final int referenceCount;
+  private final long refBinsOffset;
+  private final long refLinearOffset;
+  private final long binIdsOffset;
+  private final long binChunksOffset;
+  private final long chunkBeginsOffset;
+  private final long chunkEndsOffset;
+  private final long linearOffset;
+
+  private BamIndex(
+      MappedFile mapped, int referenceCount, int binCount, int chunkCount, int linearCount) {
+    this.mapped = mapped;
+    this.referenceCount = referenceCount;
+    this.refBinsOffset = HEADER_BYTES;
+    this.refLinearOffset = refBinsOffset + (referenceCount + 1L) * Integer.BYTES;
+    this.binIdsOffset = refLinearOffset + (referenceCount + 1L) * Integer.BYTES;
+    this.binChunksOffset = binIdsOffset + (long) binCount * Integer.BYTES;
+    this.chunkBeginsOffset =
+        MappedFile.align(binChunksOffset + (binCount + 1L) * Integer.BYTES);
+    this.chunkEndsOffset = chunkBeginsOffset + (long) chunkCount * Long.BYTES;
+    this.linearOffset = chunkEndsOffset + (long) chunkCount * Long.BYTES;
+  }
+
+  /**
+   * @param reader {@link SamReader} of bam
+   * @param bam file reader reads
+   * @param sidecarDir directory to keep the sidecar of the index in, absent to keep it beside the
+   *     index
+   * @return the {@link BamIndex} of bam if reader is a BAM with a BAI index
+   */
+  public static Optional<BamIndex> of(SamReader reader, File bam, Optional<File> sidecarDir) {
+    if (reader.type() != SamReader.Type.BAM_TYPE || !reader.hasIndex()) return Optional.empty();
+    File bai = SamFiles.findIndex(bam);
+    if (bai == null || !bai.getName().endsWith(BAI_EXTENSION)) return Optional.empty();
+    return Optional.of(forIndex(bai, sidecarDir));
+  }
+
+  /**
+   * @param bai BAI index of a BAM
+   * @param sidecarDir directory to keep the sidecar of bai in, absent to keep it beside bai
+   * @return the {@link BamIndex} of bai, shared by every caller in this JVM
+   */
+  public static BamIndex forIndex(File bai, Optional<File> sidecarDir) {
+    return LOADED.computeIfAbsent(
+        bai.getAbsoluteFile(),
+        file -> {
+          try {
+            return load(file, sidecarFile(file, sidecarDir));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * @param bai BAI index of a BAM
+   * @param sidecarDir directory to keep the sidecar of bai in, absent to keep it beside bai
+   * @return the sidecar file bai is mapped from
+   */
+  public static File sidecarFile(File bai, Optional<File> sidecarDir) {
+    File dir = sidecarDir.orElse(bai.getAbsoluteFile().getParentFile());
+    return new File(dir, bai.getName() + SIDECAR_SUFFIX);
+  }
+
+  /**
+   * Map the sidecar of bai, first writing it from bai if it is missing or out of date
+   *
+   * @param bai BAI index of a BAM
+   * @param sidecar file to map, see {@link #sidecarFile(File, Optional)}
+   * @return {@link BamIndex} of bai mapped from sidecar
+   * @throws IOException
+   */
+  public static BamIndex load(File bai, File sidecar) throws IOException {
+    File mappedSidecar = sidecar;
+    if (!matches(mappedSidecar, bai)) {
+      try {
+        writeSidecar(bai, mappedSidecar);
+      } catch (IOException e) {
+        // Index directory is not writable, keep the sidecar in the temporary directory instead
+        mappedSidecar =
+            new File(
+                System.getProperty("java.io.tmpdir"),
+                Integer.toHexString(bai.getAbsolutePath().hashCode()) + "." + sidecar.getName());
+        if (!matches(mappedSidecar, bai)) writeSidecar(bai, mappedSidecar);
+      }
+    }
+    MappedFile mapped = MappedFile.map(mappedSidecar);
+    int counts = 2 * Integer.BYTES + 2 * Long.BYTES;
+    return new BamIndex(
+        mapped,
+        mapped.getInt(counts),
+        mapped.getInt(counts + Integer.BYTES),
+        mapped.getInt(counts + 2 * Integer.BYTES),
+        mapped.getInt(counts + 3 * Integer.BYTES));
+  }
+
+  private static boolean matches(File sidecar, File bai) throws IOException {
+    if (!sidecar.isFile()) return false;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+      return in.readInt() == MAGIC
+          && in.readInt() == VERSION
+          && in.readLong() == bai.length()
+          && in.readLong() == bai.lastModified();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void writeSidecar(File bai, File sidecar) throws IOException {
+    int[] refBins;
+    int[] refLinear;
+    int[] binIds = new int[1024];
+    int[] binChunks = new int[binIds.length + 1];
+    long[] chunkBegins = new long[4096];
+    long[] chunkEnds = new long[chunkBegins.length];
+    long[] linear = new long[4096];
+    int binCount = 0;
+    int chunkCount = 0;
+    int linearCount = 0;
+    try (LittleEndianDataInputStream in =
+        new LittleEndianDataInputStream(new BufferedInputStream(new FileInputStream(bai)))) {
+      byte[] magic = new byte[BAI_MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, BAI_MAGIC)) throw new IOException(bai + " is not a BAI index");
+      int referenceCount = in.readInt();
+      refBins = new int[referenceCount + 1];
+      refLinear = new int[referenceCount + 1];
+      for (int r = 0; r < referenceCount; r++) {
+        refBins[r] = binCount;
+        refLinear[r] = linearCount;
+        int firstBin = binCount;
+        int bins = in.readInt();
+        for (int b = 0; b < bins; b++) {
+          int bin = in.readInt();
+          int chunks = in.readInt();
+          boolean pseudoBin = bin == GenomicIndexUtil.MAX_BINS;
+          if (!pseudoBin) {
+            if (binCount + 1 >= binIds.length) {
+              binIds = Arrays.copyOf(binIds, binIds.length * 2);
+              binChunks = Arrays.copyOf(binChunks, binIds.length + 1);
+            }
+            binIds[binCount] = bin;
+            binChunks[binCount] = chunkCount;
+            binCount++;
+          }
+          for (int c = 0; c < chunks; c++) {
+            long begin = in.readLong();
+            long end = in.readLong();
+            if (pseudoBin) continue;
+            if (chunkCount == chunkBegins.length) {
+              chunkBegins = Arrays.copyOf(chunkBegins, chunkCount * 2);
+              chunkEnds = Arrays.copyOf(chunkEnds, chunkCount * 2);
+            }
+            chunkBegins[chunkCount] = begin;
+            chunkEnds[chunkCount] = end;
+            chunkCount++;
+          }
+        }
+        binChunks[binCount] = chunkCount;
+        sortBins(binIds, binChunks, chunkBegins, chunkEnds, firstBin, binCount);
+        int intervals = in.readInt();
+        if (linearCount + intervals > linear.length)
+          linear = Arrays.copyOf(linear, Math.max(linear.length * 2, linearCount + intervals));
+        for (int i = 0; i < intervals; i++) {
+          linear[linearCount++] = in.readLong();
+        }
+      }
+      refBins[referenceCount] = binCount;
+      refLinear[referenceCount] = linearCount;
+    }
+    binChunks[binCount] = chunkCount;
+
+    File tmp = File.createTempFile(sidecar.getName(), ".tmp", sidecar.getParentFile());
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(bai.length());
+      out.writeLong(bai.lastModified());
+      out.writeInt(refBins.length - 1);
+      out.writeInt(binCount);
+      out.writeInt(chunkCount);
+      out.writeInt(linearCount);
+      writeInts(out, refBins, refBins.length);
+      writeInts(out, refLinear, refLinear.length);
+      writeInts(out, binIds, binCount);
+      writeInts(out, binChunks, binCount + 1);
+      long written = HEADER_BYTES + (2L * refBins.length + 2L * binCount + 1) * Integer.BYTES;
+      for (long i = written; i < MappedFile.align(written); i++) {
+        out.writeByte(0);
+      }
+      writeLongs(out, chunkBegins, chunkCount);
+      writeLongs(out, chunkEnds, chunkCount);
+      writeLongs(out, linear, linearCount);
+    } catch (IOException e) {
+      tmp.delete();
+      throw e;
+    }
+    try {
+      Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Sort bins from to until by bin number, moving their chunks with them */
+  private static void sortBins(
+      int[] binIds, int[] binChunks, long[] chunkBegins, long[] chunkEnds, int from, int until) {
+    boolean sorted = true;
+    for (int b = from + 1; b < until && sorted; b++) {
+      sorted = binIds[b - 1] < binIds[b];
+    }
+    if (sorted) return;
+    Integer[] order = new Integer[until - from];
+    for (int b = from; b < until; b++) {
+      order[b - from] = b;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(binIds[a], binIds[b]));
+    int firstChunk = binChunks[from];
+    int chunkCount = binChunks[until] - firstChunk;
+    int[] ids = new int[order.length];
+    int[] firstChunks = new int[order.length];
+    long[] begins = new long[chunkCount];
+    long[] ends = new long[chunkCount];
+    int c = 0;
+    for (int i = 0; i < order.length; i++) {
+      int b = order[i];
+      ids[i] = binIds[b];
+      firstChunks[i] = firstChunk + c;
+      for (int k = binChunks[b]; k < binChunks[b + 1]; k++, c++) {
+        begins[c] = chunkBegins[k];
+        ends[c] = chunkEnds[k];
+      }
+    }
+    System.arraycopy(ids, 0, binIds, from, ids.length);
+    System.arraycopy(firstChunks, 0, binChunks, from, firstChunks.length);
+    System.arraycopy(begins, 0, chunkBegins, firstChunk, chunkCount);
+    System.arraycopy(ends, 0, chunkEnds, firstChunk, chunkCount);
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values, int count)
+      throws IOException {
+    for (int i = 0; i < count; i++) {
+      out.writeInt(values[i]);
+    }
+  }
+
+  private static void writeLongs(DataOutputStream out, long[] values, int count)
+      throws IOException {
+    for (int i = 0; i < count; i++) {
+      out.writeLong(values[i]);
+    }
+  }
+
+  /** @return a new {@link Resolver} for a single reader of this index */
+  public Resolver resolver() {
+    return new Resolver();
+  }
+
+  private static int linearWindow(int position) {
+    return Math.max(0, position - 1) >> LINEAR_WINDOW_SHIFT;
+  }
+
+  private int refBins(int referenceIndex) {
+    return mapped.getInt(refBinsOffset + (long) referenceIndex * Integer.BYTES);
+  }
+
+  private int refLinear(int referenceIndex) {
+    return mapped.getInt(refLinearOffset + (long) referenceIndex * Integer.BYTES);
+  }
+
+  private int binId(int bin) {
+    return mapped.getInt(binIdsOffset + (long) bin * Integer.BYTES);
+  }
+
+  private int binChunks(int bin) {
+    return mapped.getInt(binChunksOffset + (long) bin * Integer.BYTES);
+  }
+
+  /**
+   * @param referenceIndex index of the reference
+   * @param starts 1-based starts of intervals on the reference
+   * @param ends 1-based inclusive ends of the intervals, 0 or less for the end of the reference
+   * @return {@link BAMFileSpan} of the merged chunks that may hold records overlapping any interval
+   */
+  private BAMFileSpan resolve(int referenceIndex, int[] starts, int[] ends) {
+    if (referenceIndex < 0 || referenceIndex >= referenceCount) return new BAMFileSpan();
+    int firstBin = refBins(referenceIndex);
+    int lastBin = refBins(referenceIndex + 1);
+    int firstLinear = refLinear(referenceIndex);
+    int linearCount = refLinear(referenceIndex + 1) - firstLinear;
+    ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+    for (int i = 0; i < starts.length; i++) {
+      int start = Math.max(1, starts[i]);
+      int end = ends[i] <= 0 ? MAX_POSITION : Math.min(ends[i], MAX_POSITION);
+      long minOffset =
+          linearCount == 0
+              ? 0
+              : mapped.getLong(
+                  linearOffset
+                      + (firstLinear + Math.min(linearWindow(start), linearCount - 1))
+                          * (long) Long.BYTES);
+      BitSet bins = GenomicIndexUtil.regionToBins(start, end);
+      for (int binNumber = bins.nextSetBit(0);
+          binNumber >= 0;
+          binNumber = bins.nextSetBit(binNumber + 1)) {
+        int bin = findBin(firstBin, lastBin, binNumber);
+        if (bin == -1) continue;
+        for (int c = binChunks(bin); c < binChunks(bin + 1); c++) {
+          long chunkEnd = mapped.getLong(chunkEndsOffset + (long) c * Long.BYTES);
+          if (chunkEnd <= minOffset) continue;
+          chunks.add(
+              new Chunk(mapped.getLong(chunkBeginsOffset + (long) c * Long.BYTES), chunkEnd));
+        }
+      }
+    }
+    return new BAMFileSpan(merge(chunks.build()));
+  }
+
+  private int findBin(int firstBin, int lastBin, int binNumber) {
+    int low = firstBin;
+    int high = lastBin - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int id = binId(mid);
+      if (id < binNumber) low = mid + 1;
+      else if (id > binNumber) high = mid - 1;
+      else return mid;
+    }
+    return -1;
+  }
+
+  /**
+   * @param chunks to merge
+   * @return chunks sorted, with chunks that overlap or end in the BGZF block the next begins in
+   *     merged so each block is read once
+   */
+  private static ImmutableList<Chunk> merge(ImmutableList<Chunk> chunks) {
+    if (chunks.size() <= 1) return chunks;
+    Chunk[] sorted = chunks.toArray(new Chunk[0]);
+    Arrays.sort(sorted);
+    ImmutableList.Builder<Chunk> merged = ImmutableList.builder();
+    long begin = sorted[0].getChunkStart();
+    long end = sorted[0].getChunkEnd();
+    for (int i = 1; i < sorted.length; i++) {
+      Chunk chunk = sorted[i];
+      if (ParallelBgzfInputStream.blockAddress(chunk.getChunkStart())
+          <= ParallelBgzfInputStream.blockAddress(end)) {
+        end = Math.max(end, chunk.getChunkEnd());
+      } else {
+        merged.add(new Chunk(begin, end));
+        begin = chunk.getChunkStart();
+        end = chunk.getChunkEnd();
+      }
+    }
+    merged.add(new Chunk(begin, end));
+    return merged.build();
+  }
+}
@@ -0,0 +1,234 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+
+/**
+ * Reading, inflating and deflating of individual BGZF blocks, kept separate from any stream so
+ * blocks can be processed on worker threads
+ */
+public final class Bgzf {
+
+  /** A compressed BGZF block, including its gzip header and footer */
+  public static class CompressedBlock {
+    private final long address;
+    private final byte[] bytes;
+    private final int extraLength;
+
+    private CompressedBlock(long address, byte[] bytes, int extraLength) {
+      this.address = address;
+      this.bytes = bytes;
+      this.extraLength = extraLength;
+    }
+
+    /** @return file offset of the start of this block */
+    public long getAddress() {
+      return address;
+    }
+
+    /** @return total compressed size of this block */
+    public int getCompressedSize() {
+      return bytes.length;
+    }
+
+    /** @return uncompressed size of this block */
+    public int getUncompressedSize() {
+      return readIntLE(bytes, bytes.length - Integer.BYTES);
+    }
+
+    /** @return file offset of the block following this block */
+    public long getNextAddress() {
+      return address + bytes.length;
+    }
+  }
+
+  private static final int ID1 = 31;
+  private static final int ID2 = 139;
+  private static final int CM_DEFLATE = 8;
+  private static final int FLG_EXTRA = 4;
+  private static final int FIXED_HEADER_LENGTH = 12;
+  private static final int FOOTER_LENGTH = 8;
+  private static final byte SUBFIELD_B = 66;
+  private static final byte SUBFIELD_C = 67;
+  private static final int SUBFIELD_LENGTH = 2;
+  private static final int OS_UNKNOWN = 255;
+
+  /** Maximum number of uncompressed bytes to deflate into a single block */
+  public static final int MAX_UNCOMPRESSED_BLOCK_SIZE =
+      BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE;
+
+  private static final ThreadLocal<Inflater> INFLATERS =
+      ThreadLocal.withInitial(() -> new Inflater(true));
+  private static final ThreadLocal<Deflater[]> DEFLATERS =
+      ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 1]);
+  private static final ThreadLocal<CRC32> CRCS = ThreadLocal.withInitial(CRC32::new);
+
+  private Bgzf() {}
+
+  /**
+   * @param file to test
+   * @return true if file starts with a BGZF block
+   */
+  public static boolean isBgzf(File file) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      return readBlock(in, 0L) != null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param in stream positioned at the start of a block
+   * @param address file offset of the start of the block
+   * @return the next {@link CompressedBlock} or null at end of stream
+   * @throws IOException if the stream does not hold a complete BGZF block
+   */
+  public static CompressedBlock readBlock(InputStream in, long address) throws IOException {
+    byte[] header = new byte[FIXED_HEADER_LENGTH];
+    int first = in.read();
+    if (first == -1) return null;
+    header[0] = (byte) first;
+    DataInputStream data = new DataInputStream(in);
+    data.readFully(header, 1, FIXED_HEADER_LENGTH - 1);
+    if ((header[0] & 0xff) != ID1
+        || (header[1] & 0xff) != ID2
+        || header[2] != CM_DEFLATE
+        || (header[3] & FLG_EXTRA) == 0) throw new IOException("Not a BGZF block at " + address);
+    int extraLength = readShortLE(header, FIXED_HEADER_LENGTH - Short.BYTES);
+    byte[] extra = new byte[extraLength];
+    data.readFully(extra);
+    int blockSize = -1;
+    for (int i = 0; i + 4 <= extraLength; i += 4 + readShortLE(extra, i + 2)) {
+      if (extra[i] == SUBFIELD_B && extra[i + 1] == SUBFIELD_C) {
+        blockSize = readShortLE(extra, i + 4) + 1;
+        break;
+      }
+    }
+    if (blockSize == -1) throw new IOException("Missing BGZF block size at " + address);
+    byte[] bytes = new byte[blockSize];
+    System.arraycopy(header, 0, bytes, 0, FIXED_HEADER_LENGTH);
+    System.arraycopy(extra, 0, bytes, FIXED_HEADER_LENGTH, extraLength);
+    int headerLength = FIXED_HEADER_LENGTH + extraLength;
+    try {
+      data.readFully(bytes, headerLength, blockSize - headerLength);
+    } catch (EOFException e) {
+      throw new IOException("Truncated BGZF block at " + address, e);
+    }
+    return new CompressedBlock(address, bytes, extraLength);
+  }
+
+  /**
+   * Inflate block using an {@link Inflater} owned by the calling thread and check its CRC
+   *
+   * @param block to inflate
+   * @return uncompressed contents of block
+   */
+  public static byte[] inflate(CompressedBlock block) {
+    byte[] uncompressed = new byte[block.getUncompressedSize()];
+    int dataOffset = FIXED_HEADER_LENGTH + block.extraLength;
+    int dataLength = block.bytes.length - dataOffset - FOOTER_LENGTH;
+    Inflater inflater = INFLATERS.get();
+    inflater.reset();
+    inflater.setInput(block.bytes, dataOffset, dataLength);
+    try {
+      int inflated = inflater.inflate(uncompressed);
+      if (inflated != uncompressed.length)
+        throw new IllegalStateException(
+            "Inflated " + inflated + " of " + uncompressed.length + " bytes at " + block.address);
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt BGZF block at " + block.address, e);
+    }
+    CRC32 crc = CRCS.get();
+    crc.reset();
+    crc.update(uncompressed, 0, uncompressed.length);
+    if ((int) crc.getValue() != readIntLE(block.bytes, block.bytes.length - FOOTER_LENGTH))
+      throw new IllegalStateException("CRC mismatch in BGZF block at " + block.address);
+    return uncompressed;
+  }
+
+  /**
+   * Deflate data into a complete BGZF block using a {@link Deflater} owned by the calling thread,
+   * storing it uncompressed if it does not compress into the maximum block size
+   *
+   * @param data to deflate
+   * @param length number of bytes of data to deflate, at most {@link
+   *     #MAX_UNCOMPRESSED_BLOCK_SIZE}
+   * @param level {@link Deflater} compression level
+   * @return the BGZF block, including header and footer
+   */
+  public static byte[] deflate(byte[] data, int length, int level) {
+    if (length > MAX_UNCOMPRESSED_BLOCK_SIZE)
+      throw new IllegalArgumentException("Block of " + length + " bytes is too large");
+    int headerLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+    byte[] block = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+    int maxDeflated = block.length - headerLength - FOOTER_LENGTH;
+    int deflated = deflate(data, length, level, block, headerLength, maxDeflated);
+    if (deflated == -1)
+      deflated = deflate(data, length, Deflater.NO_COMPRESSION, block, headerLength, maxDeflated);
+    if (deflated == -1) throw new IllegalStateException("Could not fit block of " + length);
+    int blockSize = headerLength + deflated + FOOTER_LENGTH;
+    block[0] = (byte) ID1;
+    block[1] = (byte) ID2;
+    block[2] = CM_DEFLATE;
+    block[3] = FLG_EXTRA;
+    block[9] = (byte) OS_UNKNOWN;
+    writeShortLE(block, 10, Integer.BYTES + SUBFIELD_LENGTH);
+    block[12] = SUBFIELD_B;
+    block[13] = SUBFIELD_C;
+    writeShortLE(block, 14, SUBFIELD_LENGTH);
+    writeShortLE(block, 16, blockSize - 1);
+    CRC32 crc = CRCS.get();
+    crc.reset();
+    crc.update(data, 0, length);
+    writeIntLE(block, headerLength + deflated, (int) crc.getValue());
+    writeIntLE(block, headerLength + deflated + Integer.BYTES, length);
+    byte[] trimmed = new byte[blockSize];
+    System.arraycopy(block, 0, trimmed, 0, blockSize);
+    return trimmed;
+  }
+
+  private static int deflate(
+      byte[] data, int length, int level, byte[] output, int offset, int maxLength) {
+    Deflater[] deflaters = DEFLATERS.get();
+    if (deflaters[level] == null) deflaters[level] = new Deflater(level, true);
+    Deflater deflater = deflaters[level];
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    int deflated = deflater.deflate(output, offset, maxLength);
+    return deflater.finished() ? deflated : -1;
+  }
+
+  /** @return the empty BGZF block that terminates a BGZF file */
+  public static byte[] terminator() {
+    return BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.clone();
+  }
+
+  private static void writeShortLE(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >>> 8);
+  }
+
+  private static void writeIntLE(byte[] bytes, int offset, int value) {
+    writeShortLE(bytes, offset, value);
+    writeShortLE(bytes, offset + 2, value >>> 16);
+  }
+
+  private static int readShortLE(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+  }
+
+  private static int readIntLE(byte[] bytes, int offset) {
+    return readShortLE(bytes, offset) | readShortLE(bytes, offset + 2) << 16;
+  }
+}
@@ -0,0 +1,126 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.pankratzlab.supernovo.output.RunReport;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded LRU cache of inflated BGZF blocks keyed by file and block address, shared by every
+ * reader and inflater thread so blocks read again by nearby queries, of the same or another
+ * reader of a file, are not inflated again
+ */
+public class BgzfBlockCache {
+
+  /** An inflated block and the address of the block following it */
+  public static class Block {
+    private final long nextAddress;
+    private final byte[] contents;
+
+    private Block(long nextAddress, byte[] contents) {
+      this.nextAddress = nextAddress;
+      this.contents = contents;
+    }
+
+    /** @return file offset of the block following this block */
+    public long getNextAddress() {
+      return nextAddress;
+    }
+
+    /** @return the uncompressed contents of this block */
+    public byte[] getContents() {
+      return contents;
+    }
+  }
+
+  /** Blocks of a single file in a {@link BgzfBlockCache} */
+  public class FileBlocks {
+    private final long fileKey;
+
+    private FileBlocks(int fileID) {
+      this.fileKey = (long) fileID << ADDRESS_BITS;
+    }
+
+    /**
+     * @param address file offset of a block
+     * @return the cached {@link Block} at address, absent if it is not cached
+     */
+    public Optional<Block> get(long address) {
+      return Optional.ofNullable(blocks.getIfPresent(fileKey | address));
+    }
+
+    /**
+     * Inflate block, on the calling thread, and cache it
+     *
+     * @param block to inflate
+     * @return uncompressed contents of block
+     */
+    public byte[] inflate(Bgzf.CompressedBlock block) {
+      long start = System.nanoTime();
+      byte[] contents = Bgzf.inflate(block);
+      inflateNanos.add(System.nanoTime() - start);
+      blocks.put(fileKey | block.getAddress(), new Block(block.getNextAddress(), contents));
+      return contents;
+    }
+  }
+
+  /** BGZF files are limited to 48 bit block addresses by their virtual offsets */
+  private static final int ADDRESS_BITS = 48;
+  /** Approximate heap used by a cached block beyond its contents */
+  private static final int BLOCK_OVERHEAD_BYTES = 96;
+
+  private final Cache<Long, Block> blocks;
+  private final ConcurrentMap<String, FileBlocks> files = new ConcurrentHashMap<>();
+  private final AtomicInteger nextFileID = new AtomicInteger();
+  private final LongAdder inflateNanos = new LongAdder();
+
+  /** @param maxBytes approximate heap budget of the cached blocks */
+  public BgzfBlockCache(long maxBytes) {
+    super();
+    this.blocks =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Long key, Block block) -> block.contents.length + BLOCK_OVERHEAD_BYTES)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * @param file BGZF file
+   * @return the {@link FileBlocks} of file in this cache
+   */
+  public FileBlocks forFile(File file) {
+    return files.computeIfAbsent(
+        file.getAbsolutePath(), path -> new FileBlocks(nextFileID.incrementAndGet()));
+  }
+
+  /**
+   * Add block cache statistics to report
+   *
+   * @param report {@link RunReport} to add to
+   * @param name prefix for the metrics of this cache
+   */
+  public void reportMetrics(RunReport report, String name) {
+    CacheStats stats = blocks.stats();
+    report
+        .put(name + ".hitCount", stats.hitCount())
+        .put(name + ".missCount", stats.missCount())
+        .put(name + ".hitRate", stats.hitRate())
+        .put(name + ".evictionCount", stats.evictionCount())
+        .put(name + ".inflateMillis", inflateNanos.sum() / 1_000_000.0)
+        .put(
+            name + ".retainedBytes",
+            blocks
+                .asMap()
+                .values()
+                .stream()
+                .mapToLong(block -> block.contents.length + BLOCK_OVERHEAD_BYTES)
+                .sum());
+  }
+}
@@ -0,0 +1,185 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.IOException;
+import com.google.common.collect.AbstractIterator;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+
+/**
+ * {@link SamReader} for an indexed BAM that answers interval queries by resolving the chunks to
+ * read from a {@link BamIndex} and reading only those chunks through the wrapped {@link
+ * SamReader}, so the wrapped reader never loads its own index. All other operations are delegated
+ * to the wrapped {@link SamReader}.
+ */
+public class IndexedBamReader implements SamReader {
+
+  /** Records of a span that overlap or are contained in sorted, optimized intervals */
+  private static class IntervalIterator extends AbstractIterator<SAMRecord>
+      implements SAMRecordIterator {
+    private final SAMRecordIterator records;
+    private final QueryInterval[] intervals;
+    private final boolean contained;
+    private int interval = 0;
+
+    private IntervalIterator(
+        SAMRecordIterator records, QueryInterval[] intervals, boolean contained) {
+      this.records = records;
+      this.intervals = intervals;
+      this.contained = contained;
+    }
+
+    @Override
+    protected SAMRecord computeNext() {
+      while (records.hasNext()) {
+        SAMRecord record = records.next();
+        int referenceIndex = record.getReferenceIndex();
+        while (interval < intervals.length && passed(intervals[interval], record, referenceIndex))
+          interval++;
+        if (interval == intervals.length) break;
+        for (int i = interval;
+            i < intervals.length
+                && intervals[i].referenceIndex == referenceIndex
+                && record.getAlignmentStart() <= end(intervals[i]);
+            i++) {
+          if (ParallelBamReader.matches(
+              record, intervals[i].start, end(intervals[i]), contained)) return record;
+        }
+      }
+      return endOfData();
+    }
+
+    private static boolean passed(QueryInterval interval, SAMRecord record, int referenceIndex) {
+      return referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+          || referenceIndex > interval.referenceIndex
+          || (referenceIndex == interval.referenceIndex
+              && record.getAlignmentStart() > end(interval));
+    }
+
+    private static int end(QueryInterval interval) {
+      return interval.end <= 0 ? Integer.MAX_VALUE : interval.end;
+    }
+
+    @Override
+    public void close() {
+      records.close();
+    }
+
+    @Override
+    public SAMRecordIterator assertSorted(SAMFileHeader.SortOrder sortOrder) {
+      return this;
+    }
+  }
+
+  private final SamReader delegate;
+  private final BamIndex.Resolver index;
+
+  /**
+   * @param delegate indexed BAM {@link SamReader}
+   * @param index {@link BamIndex} of the BAM delegate reads
+   */
+  public IndexedBamReader(SamReader delegate, BamIndex index) {
+    super();
+    if (delegate.type() != SamReader.Type.BAM_TYPE)
+      throw new IllegalArgumentException(delegate.getResourceDescription() + " is not a BAM");
+    this.delegate = delegate;
+    this.index = index.resolver();
+  }
+
+  private SAMRecordIterator read(BAMFileSpan span, QueryInterval[] intervals, boolean contained) {
+    return new IntervalIterator(delegate.indexing().iterator(span), intervals, contained);
+  }
+
+  @Override
+  public SAMRecordIterator query(String sequence, int start, int end, boolean contained) {
+    int referenceIndex = delegate.getFileHeader().getSequenceIndex(sequence);
+    QueryInterval[] intervals =
+        referenceIndex == -1
+            ? new QueryInterval[0]
+            : new QueryInterval[] {new QueryInterval(referenceIndex, start, end)};
+    BAMFileSpan span =
+        referenceIndex == -1
+            ? new BAMFileSpan()
+            : index.spanOverlapping(referenceIndex, start, end);
+    return read(span, intervals, contained);
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(String sequence, int start, int end) {
+    return query(sequence, start, end, false);
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(String sequence, int start, int end) {
+    return query(sequence, start, end, true);
+  }
+
+  @Override
+  public SAMRecordIterator query(QueryInterval[] intervals, boolean contained) {
+    QueryInterval[] optimized = QueryInterval.optimizeIntervals(intervals);
+    return read(index.spanOverlapping(optimized), optimized, contained);
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(QueryInterval[] intervals) {
+    return query(intervals, false);
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(QueryInterval[] intervals) {
+    return query(intervals, true);
+  }
+
+  @Override
+  public SAMFileHeader getFileHeader() {
+    return delegate.getFileHeader();
+  }
+
+  @Override
+  public Type type() {
+    return delegate.type();
+  }
+
+  @Override
+  public String getResourceDescription() {
+    return delegate.getResourceDescription();
+  }
+
+  @Override
+  public boolean hasIndex() {
+    return delegate.hasIndex();
+  }
+
+  @Override
+  public Indexing indexing() {
+    return delegate.indexing();
+  }
+
+  @Override
+  public SAMRecordIterator iterator() {
+    return delegate.iterator();
+  }
+
+  @Override
+  public SAMRecordIterator queryUnmapped() {
+    return delegate.queryUnmapped();
+  }
+
+  @Override
+  public SAMRecordIterator queryAlignmentStart(String sequence, int start) {
+    return delegate.queryAlignmentStart(sequence, start);
+  }
+
+  @Override
+  public SAMRecord queryMate(SAMRecord rec) {
+    return delegate.queryMate(rec);
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
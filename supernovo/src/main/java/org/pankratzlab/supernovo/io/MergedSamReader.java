@@ -0,0 +1,325 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closer;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BrowseableBAMIndex;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileSpan;
+import htsjdk.samtools.SAMFlag;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.SamReader;
+
+/**
+ * {@link SamReader} over several coordinate sorted BAMs or CRAMs of one sample, such as separate
+ * lanes or top-up runs, that merges every query of the readers through a k-way heap without
+ * writing a merged file. A record present in more than one of the readers, the same read group,
+ * read name, pair and alignment flags at the same position, is returned only once.
+ *
+ * <p>Queries are answered by each reader's own index, so there is no merged index: {@link
+ * #hasIndex()} is false and {@link #indexing()} behaves as for an unindexed htsjdk reader. Read
+ * groups of the same ID in different readers must be equivalent, as records are told apart by
+ * their read group.
+ */
+public class MergedSamReader implements SamReader {
+
+  /** Flags that distinguish different records of the same read */
+  private static final int RECORD_FLAGS =
+      SAMFlag.FIRST_OF_PAIR.intValue()
+          | SAMFlag.SECOND_OF_PAIR.intValue()
+          | SAMFlag.SECONDARY_ALIGNMENT.intValue()
+          | SAMFlag.SUPPLEMENTARY_ALIGNMENT.intValue();
+
+  private static final Indexing NO_INDEX =
+      new Indexing() {
+        @Override
+        public BAMIndex getIndex() {
+          throw noIndex();
+        }
+
+        @Override
+        public boolean hasBrowseableIndex() {
+          return false;
+        }
+
+        @Override
+        public BrowseableBAMIndex getBrowseableIndex() {
+          throw noIndex();
+        }
+
+        @Override
+        public SAMRecordIterator iterator(SAMFileSpan chunks) {
+          throw noIndex();
+        }
+
+        @Override
+        public SAMFileSpan getFilePointerSpanningReads() {
+          throw noIndex();
+        }
+
+        private SAMException noIndex() {
+          return new SAMException("No index is available for merged readers, query them instead");
+        }
+      };
+
+  private static class Head {
+    private final SAMRecordIterator iterator;
+    private final int source;
+    private SAMRecord record;
+
+    private Head(SAMRecordIterator iterator, int source) {
+      this.iterator = iterator;
+      this.source = source;
+    }
+
+    private int referenceIndex() {
+      int referenceIndex = record.getReferenceIndex();
+      return referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+          ? Integer.MAX_VALUE
+          : referenceIndex;
+    }
+  }
+
+  private static final Comparator<Head> HEAD_ORDER =
+      Comparator.comparingInt(Head::referenceIndex)
+          .thenComparingInt(head -> head.record.getAlignmentStart())
+          .thenComparingInt(head -> head.source);
+
+  private static class MergingIterator implements SAMRecordIterator {
+    private final PriorityQueue<Head> heads;
+    private final Closer closer = Closer.create();
+    private final Map<String, Integer> sourcesAtPosition = Maps.newHashMap();
+    private int referenceIndex = Integer.MIN_VALUE;
+    private int alignmentStart = Integer.MIN_VALUE;
+    private SAMRecord next;
+
+    private MergingIterator(List<SAMRecordIterator> iterators) {
+      heads = new PriorityQueue<>(Math.max(1, iterators.size()), HEAD_ORDER);
+      for (int i = 0; i < iterators.size(); i++) {
+        Head head = new Head(closer.register(iterators.get(i)), i);
+        if (advance(head)) heads.add(head);
+      }
+      next = poll();
+    }
+
+    private static boolean advance(Head head) {
+      if (!head.iterator.hasNext()) return false;
+      head.record = head.iterator.next();
+      return true;
+    }
+
+    private SAMRecord poll() {
+      while (!heads.isEmpty()) {
+        Head head = heads.poll();
+        SAMRecord record = head.record;
+        int source = head.source;
+        if (advance(head)) heads.add(head);
+        if (!sharedDuplicate(record, source)) return record;
+      }
+      return null;
+    }
+
+    private boolean sharedDuplicate(SAMRecord record, int source) {
+      if (record.getReferenceIndex() != referenceIndex
+          || record.getAlignmentStart() != alignmentStart) {
+        referenceIndex = record.getReferenceIndex();
+        alignmentStart = record.getAlignmentStart();
+        sourcesAtPosition.clear();
+      }
+      String readGroup = record.getStringAttribute(SAMTag.RG.name());
+      String key =
+          (readGroup == null ? "" : readGroup)
+              + '\t'
+              + record.getReadName()
+              + '\t'
+              + (record.getFlags() & RECORD_FLAGS);
+      Integer firstSource = sourcesAtPosition.putIfAbsent(key, source);
+      return firstSource != null && firstSource != source;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public SAMRecord next() {
+      if (next == null) throw new NoSuchElementException();
+      SAMRecord record = next;
+      next = poll();
+      return record;
+    }
+
+    @Override
+    public void close() {
+      try {
+        closer.close();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public SAMRecordIterator assertSorted(SAMFileHeader.SortOrder sortOrder) {
+      return this;
+    }
+  }
+
+  private final ImmutableList<SamReader> readers;
+  private final SAMFileHeader header;
+
+  /** @param readers coordinate sorted {@link SamReader}s of one sample, on the same reference */
+  public MergedSamReader(List<SamReader> readers) {
+    super();
+    if (readers.isEmpty()) throw new IllegalArgumentException("No readers to merge");
+    this.readers = ImmutableList.copyOf(readers);
+    this.header = mergeHeaders(this.readers);
+  }
+
+  /**
+   * @param readers {@link SamReader}s of one sample
+   * @return the only reader if there is one, otherwise a {@link MergedSamReader} of readers
+   */
+  public static SamReader of(List<SamReader> readers) {
+    if (readers.size() == 1) return readers.get(0);
+    return new MergedSamReader(readers);
+  }
+
+  private static SAMFileHeader mergeHeaders(List<SamReader> readers) {
+    SAMFileHeader merged = readers.get(0).getFileHeader().clone();
+    Map<String, SamReader> readGroupSources = Maps.newHashMap();
+    for (SamReader reader : readers) {
+      SAMFileHeader header = reader.getFileHeader();
+      if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
+        throw new IllegalArgumentException(
+            reader.getResourceDescription() + " is not coordinate sorted");
+      if (!header.getSequenceDictionary().isSameDictionary(merged.getSequenceDictionary()))
+        throw new IllegalArgumentException(
+            reader.getResourceDescription()
+                + " has a different sequence dictionary than "
+                + readers.get(0).getResourceDescription());
+      for (SAMReadGroupRecord readGroup : header.getReadGroups()) {
+        SAMReadGroupRecord mergedReadGroup = merged.getReadGroup(readGroup.getId());
+        SamReader source = readGroupSources.putIfAbsent(readGroup.getId(), reader);
+        if (mergedReadGroup == null) merged.addReadGroup(readGroup);
+        else if (!mergedReadGroup.equivalent(readGroup))
+          throw new IllegalArgumentException(
+              reader.getResourceDescription()
+                  + " has a different read group "
+                  + readGroup.getId()
+                  + " than "
+                  + source.getResourceDescription());
+      }
+    }
+    return merged;
+  }
+
+  private SAMRecordIterator merge(Function<SamReader, SAMRecordIterator> query) {
+    ImmutableList.Builder<SAMRecordIterator> iterators =
+        ImmutableList.builderWithExpectedSize(readers.size());
+    for (SamReader reader : readers) {
+      iterators.add(query.apply(reader));
+    }
+    return new MergingIterator(iterators.build());
+  }
+
+  @Override
+  public SAMRecordIterator query(String sequence, int start, int end, boolean contained) {
+    return merge(reader -> reader.query(sequence, start, end, contained));
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(String sequence, int start, int end) {
+    return merge(reader -> reader.queryOverlapping(sequence, start, end));
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(String sequence, int start, int end) {
+    return merge(reader -> reader.queryContained(sequence, start, end));
+  }
+
+  @Override
+  public SAMFileHeader getFileHeader() {
+    return header;
+  }
+
+  @Override
+  public Type type() {
+    return readers.get(0).type();
+  }
+
+  @Override
+  public String getResourceDescription() {
+    return Joiner.on(", ").join(readers.stream().map(SamReader::getResourceDescription).iterator());
+  }
+
+  @Override
+  public boolean hasIndex() {
+    return false;
+  }
+
+  @Override
+  public Indexing indexing() {
+    return NO_INDEX;
+  }
+
+  @Override
+  public SAMRecordIterator iterator() {
+    return merge(SamReader::iterator);
+  }
+
+  @Override
+  public SAMRecordIterator query(QueryInterval[] intervals, boolean contained) {
+    return merge(reader -> reader.query(intervals, contained));
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(QueryInterval[] intervals) {
+    return merge(reader -> reader.queryOverlapping(intervals));
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(QueryInterval[] intervals) {
+    return merge(reader -> reader.queryContained(intervals));
+  }
+
+  @Override
+  public SAMRecordIterator queryUnmapped() {
+    return merge(SamReader::queryUnmapped);
+  }
+
+  @Override
+  public SAMRecordIterator queryAlignmentStart(String sequence, int start) {
+    return merge(reader -> reader.queryAlignmentStart(sequence, start));
+  }
+
+  @Override
+  public SAMRecord queryMate(SAMRecord rec) {
+    for (SamReader reader : readers) {
+      SAMRecord mate = reader.queryMate(rec);
+      if (mate != null) return mate;
+    }
+    return null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Closer closer = Closer.create()) {
+      readers.forEach(closer::register);
+    }
+  }
+}
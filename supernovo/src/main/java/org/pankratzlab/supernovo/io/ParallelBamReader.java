@@ -0,0 +1,228 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+
+/**
+ * {@link SamReader} for an indexed BAM that answers single interval queries by resolving the
+ * chunks to read from a {@link BamIndex} and inflating their BGZF blocks ahead of the record codec
+ * on a shared {@link ExecutorService}, optionally through a shared {@link BgzfBlockCache}. All
+ * other operations are delegated to the wrapped {@link SamReader}.
+ */
+public class ParallelBamReader implements SamReader {
+
+  private static class ListIterator implements SAMRecordIterator {
+    private final Iterator<SAMRecord> records;
+
+    private ListIterator(ImmutableList<SAMRecord> records) {
+      this.records = records.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return records.hasNext();
+    }
+
+    @Override
+    public SAMRecord next() {
+      return records.next();
+    }
+
+    @Override
+    public void close() {
+      // Records are fully read before iteration
+    }
+
+    @Override
+    public SAMRecordIterator assertSorted(SAMFileHeader.SortOrder sortOrder) {
+      return this;
+    }
+  }
+
+  private final SamReader delegate;
+  private final File bam;
+  private final BamIndex.Resolver index;
+  private final ExecutorService inflaters;
+  private final int readAhead;
+  private final Optional<BgzfBlockCache.FileBlocks> blockCache;
+
+  /**
+   * @param delegate indexed BAM {@link SamReader} for bam
+   * @param bam file delegate reads
+   * @param index {@link BamIndex} of bam
+   * @param inflaters {@link ExecutorService} to inflate blocks on
+   * @param readAhead maximum number of blocks inflating or inflated ahead of the record codec
+   * @param blockCache {@link BgzfBlockCache} to share inflated blocks through
+   */
+  public ParallelBamReader(
+      SamReader delegate,
+      File bam,
+      BamIndex index,
+      ExecutorService inflaters,
+      int readAhead,
+      Optional<BgzfBlockCache> blockCache) {
+    super();
+    if (delegate.type() != SamReader.Type.BAM_TYPE)
+      throw new IllegalArgumentException(bam + " is not a BAM");
+    this.delegate = delegate;
+    this.bam = bam;
+    this.index = index.resolver();
+    this.inflaters = inflaters;
+    this.readAhead = readAhead;
+    this.blockCache = blockCache.map(cache -> cache.forFile(bam));
+  }
+
+  private ImmutableList<SAMRecord> queryRecords(
+      String sequence, int start, int end, boolean contained) {
+    SAMFileHeader header = delegate.getFileHeader();
+    int referenceIndex = header.getSequenceIndex(sequence);
+    if (referenceIndex == -1) return ImmutableList.of();
+    BAMFileSpan span = index.spanOverlapping(referenceIndex, start, end);
+    if (span.isEmpty()) return ImmutableList.of();
+    int queryEnd = end <= 0 ? Integer.MAX_VALUE : end;
+    ImmutableList.Builder<SAMRecord> records = ImmutableList.builder();
+    BAMRecordCodec codec = new BAMRecordCodec(header);
+    try {
+      for (Chunk chunk : span.getChunks()) {
+        try (ParallelBgzfInputStream in = openChunk(chunk)) {
+          in.skipFully(ParallelBgzfInputStream.blockOffset(chunk.getChunkStart()));
+          codec.setInputStream(in, bam.getPath());
+          while (in.getFilePointer() < chunk.getChunkEnd()) {
+            SAMRecord record = codec.decode();
+            if (record == null) break;
+            int recordIndex = record.getReferenceIndex();
+            if (recordIndex > referenceIndex
+                || (recordIndex == referenceIndex && record.getAlignmentStart() > queryEnd))
+              return records.build();
+            if (recordIndex == referenceIndex && matches(record, start, queryEnd, contained))
+              records.add(record);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return records.build();
+  }
+
+  private ParallelBgzfInputStream openChunk(Chunk chunk) throws IOException {
+    long address = ParallelBgzfInputStream.blockAddress(chunk.getChunkStart());
+    FileInputStream file = new FileInputStream(bam);
+    try {
+      file.getChannel().position(address);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    return new ParallelBgzfInputStream(
+        new BufferedInputStream(file),
+        address,
+        ParallelBgzfInputStream.blockAddress(chunk.getChunkEnd()),
+        inflaters,
+        readAhead,
+        blockCache);
+  }
+
+  static boolean matches(SAMRecord record, int start, int end, boolean contained) {
+    int alignmentStart = record.getAlignmentStart();
+    int alignmentEnd =
+        record.getReadUnmappedFlag() ? alignmentStart : record.getAlignmentEnd();
+    if (contained) return alignmentStart >= start && alignmentEnd <= end;
+    return alignmentEnd >= start;
+  }
+
+  @Override
+  public SAMRecordIterator query(String sequence, int start, int end, boolean contained) {
+    return new ListIterator(queryRecords(sequence, start, end, contained));
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(String sequence, int start, int end) {
+    return query(sequence, start, end, false);
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(String sequence, int start, int end) {
+    return query(sequence, start, end, true);
+  }
+
+  @Override
+  public SAMFileHeader getFileHeader() {
+    return delegate.getFileHeader();
+  }
+
+  @Override
+  public Type type() {
+    return delegate.type();
+  }
+
+  @Override
+  public String getResourceDescription() {
+    return delegate.getResourceDescription();
+  }
+
+  @Override
+  public boolean hasIndex() {
+    return delegate.hasIndex();
+  }
+
+  @Override
+  public Indexing indexing() {
+    return delegate.indexing();
+  }
+
+  @Override
+  public SAMRecordIterator iterator() {
+    return delegate.iterator();
+  }
+
+  @Override
+  public SAMRecordIterator query(QueryInterval[] intervals, boolean contained) {
+    return delegate.query(intervals, contained);
+  }
+
+  @Override
+  public SAMRecordIterator queryOverlapping(QueryInterval[] intervals) {
+    return delegate.queryOverlapping(intervals);
+  }
+
+  @Override
+  public SAMRecordIterator queryContained(QueryInterval[] intervals) {
+    return delegate.queryContained(intervals);
+  }
+
+  @Override
+  public SAMRecordIterator queryUnmapped() {
+    return delegate.queryUnmapped();
+  }
+
+  @Override
+  public SAMRecordIterator queryAlignmentStart(String sequence, int start) {
+    return delegate.queryAlignmentStart(sequence, start);
+  }
+
+  @Override
+  public SAMRecord queryMate(SAMRecord rec) {
+    return delegate.queryMate(rec);
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -0,0 +1,226 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Sequential {@link InputStream} over the uncompressed contents of a BGZF stream. Compressed
+ * blocks are read ahead on the calling thread and inflated on a shared {@link ExecutorService}, so
+ * decompression of upcoming blocks overlaps with consumption of the current one. Blocks found in
+ * a {@link BgzfBlockCache} are skipped over rather than read and inflated again.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+  private static class PendingBlock {
+    private final long address;
+    private final long nextAddress;
+    private final Future<byte[]> contents;
+
+    private PendingBlock(long address, long nextAddress, Future<byte[]> contents) {
+      this.address = address;
+      this.nextAddress = nextAddress;
+      this.contents = contents;
+    }
+  }
+
+  private static final byte[] EMPTY = new byte[0];
+  private static final int BLOCK_OFFSET_BITS = 16;
+  private static final long BLOCK_OFFSET_MASK = (1L << BLOCK_OFFSET_BITS) - 1;
+
+  private final InputStream compressed;
+  private final ExecutorService inflaters;
+  private final int readAhead;
+  private final long lastBlockAddress;
+  private final Deque<PendingBlock> pending;
+  private final Optional<BgzfBlockCache.FileBlocks> cache;
+
+  private long address;
+  private boolean endOfCompressed = false;
+  private long currentAddress;
+  private long nextAddress;
+  private byte[] current = EMPTY;
+  private int currentOffset = 0;
+
+  /**
+   * @param compressed BGZF stream, positioned at the start of a block
+   * @param inflaters {@link ExecutorService} to inflate blocks on
+   * @param readAhead maximum number of blocks inflating or inflated ahead of the current block
+   */
+  public ParallelBgzfInputStream(InputStream compressed, ExecutorService inflaters, int readAhead) {
+    this(compressed, 0L, Long.MAX_VALUE, inflaters, readAhead);
+  }
+
+  /**
+   * @param compressed BGZF stream, positioned at the start of the block at address
+   * @param address file offset of the first block of compressed
+   * @param lastBlockAddress file offset of the last block to read, blocks starting after it are
+   *     treated as the end of the stream
+   * @param inflaters {@link ExecutorService} to inflate blocks on
+   * @param readAhead maximum number of blocks inflating or inflated ahead of the current block
+   */
+  public ParallelBgzfInputStream(
+      InputStream compressed,
+      long address,
+      long lastBlockAddress,
+      ExecutorService inflaters,
+      int readAhead) {
+    this(compressed, address, lastBlockAddress, inflaters, readAhead, Optional.empty());
+  }
+
+  /**
+   * @param compressed BGZF stream, positioned at the start of the block at address
+   * @param address file offset of the first block of compressed
+   * @param lastBlockAddress file offset of the last block to read, blocks starting after it are
+   *     treated as the end of the stream
+   * @param inflaters {@link ExecutorService} to inflate blocks on
+   * @param readAhead maximum number of blocks inflating or inflated ahead of the current block
+   * @param cache {@link BgzfBlockCache.FileBlocks} of the file compressed reads, to take inflated
+   *     blocks from and add inflated blocks to
+   */
+  public ParallelBgzfInputStream(
+      InputStream compressed,
+      long address,
+      long lastBlockAddress,
+      ExecutorService inflaters,
+      int readAhead,
+      Optional<BgzfBlockCache.FileBlocks> cache) {
+    super();
+    this.compressed = compressed;
+    this.inflaters = inflaters;
+    this.readAhead = Math.max(1, readAhead);
+    this.lastBlockAddress = lastBlockAddress;
+    this.pending = new ArrayDeque<>(this.readAhead);
+    this.address = address;
+    this.currentAddress = address;
+    this.nextAddress = address;
+    this.cache = cache;
+  }
+
+  /**
+   * @param virtualOffset BGZF virtual file offset
+   * @return file offset of the block virtualOffset points into
+   */
+  public static long blockAddress(long virtualOffset) {
+    return virtualOffset >>> BLOCK_OFFSET_BITS;
+  }
+
+  /**
+   * @param virtualOffset BGZF virtual file offset
+   * @return offset into the uncompressed block virtualOffset points at
+   */
+  public static int blockOffset(long virtualOffset) {
+    return (int) (virtualOffset & BLOCK_OFFSET_MASK);
+  }
+
+  /**
+   * @return BGZF virtual file offset of the next byte to be read, pointing at the start of the
+   *     following block once the current block has been consumed
+   */
+  public long getFilePointer() {
+    if (currentOffset < current.length)
+      return currentAddress << BLOCK_OFFSET_BITS | currentOffset;
+    return nextAddress << BLOCK_OFFSET_BITS;
+  }
+
+  /**
+   * @param n number of uncompressed bytes to skip
+   * @throws EOFException if the stream ends first
+   * @throws IOException
+   */
+  public void skipFully(long n) throws IOException {
+    while (n > 0) {
+      if (!ensureAvailable()) throw new EOFException();
+      int skipped = (int) Math.min(n, current.length - currentOffset);
+      currentOffset += skipped;
+      n -= skipped;
+    }
+  }
+
+  private void fill() throws IOException {
+    while (!endOfCompressed && pending.size() < readAhead) {
+      Optional<BgzfBlockCache.Block> cached =
+          address > lastBlockAddress || !cache.isPresent()
+              ? Optional.empty()
+              : cache.get().get(address);
+      if (cached.isPresent()) {
+        long nextBlockAddress = cached.get().getNextAddress();
+        ByteStreams.skipFully(compressed, nextBlockAddress - address);
+        pending.add(
+            new PendingBlock(
+                address,
+                nextBlockAddress,
+                Futures.immediateFuture(cached.get().getContents())));
+        address = nextBlockAddress;
+        continue;
+      }
+      Bgzf.CompressedBlock block =
+          address > lastBlockAddress ? null : Bgzf.readBlock(compressed, address);
+      if (block == null) {
+        endOfCompressed = true;
+      } else {
+        address = block.getNextAddress();
+        pending.add(
+            new PendingBlock(
+                block.getAddress(),
+                block.getNextAddress(),
+                inflaters.submit(
+                    () -> cache.isPresent() ? cache.get().inflate(block) : Bgzf.inflate(block))));
+      }
+    }
+  }
+
+  private boolean ensureAvailable() throws IOException {
+    while (currentOffset >= current.length) {
+      fill();
+      PendingBlock next = pending.poll();
+      if (next == null) return false;
+      try {
+        current = Uninterruptibles.getUninterruptibly(next.contents);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+      currentAddress = next.address;
+      nextAddress = next.nextAddress;
+      currentOffset = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureAvailable()) return -1;
+    return current[currentOffset++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if (!ensureAvailable()) return -1;
+    int read = Math.min(len, current.length - currentOffset);
+    System.arraycopy(current, currentOffset, b, off, read);
+    currentOffset += read;
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return current.length - currentOffset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    pending.forEach(block -> block.contents.cancel(false));
+    pending.clear();
+    compressed.close();
+  }
+}
@@ -0,0 +1,157 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * {@link OutputStream} that writes a BGZF file, deflating full blocks on a shared {@link
+ * ExecutorService} while writing them in order. Since compressed block addresses are only known
+ * once preceding blocks are written, positions are taken as marks relative to the block sequence
+ * and resolved to BGZF virtual file offsets after their block has been written.
+ */
+public class ParallelBgzfOutputStream extends OutputStream {
+
+  private static final int BLOCK_OFFSET_BITS = 16;
+  private static final long BLOCK_OFFSET_MASK = (1L << BLOCK_OFFSET_BITS) - 1;
+  private static final int INITIAL_BLOCK_ADDRESSES = 1024;
+
+  private final OutputStream out;
+  private final ExecutorService deflaters;
+  private final int readAhead;
+  private final int level;
+  private final Deque<Future<byte[]>> pending;
+
+  private byte[] buffer = new byte[Bgzf.MAX_UNCOMPRESSED_BLOCK_SIZE];
+  private int count = 0;
+  private long blockNumber = 0L;
+  private long[] blockAddresses = new long[INITIAL_BLOCK_ADDRESSES];
+  private int writtenBlocks = 0;
+  private long address = 0L;
+  private boolean closed = false;
+
+  /**
+   * @param out stream to write compressed blocks to
+   * @param deflaters {@link ExecutorService} to deflate blocks on
+   * @param readAhead maximum number of blocks deflating or deflated ahead of the written blocks
+   * @param level {@link Deflater} compression level, 0 to 9
+   */
+  public ParallelBgzfOutputStream(
+      OutputStream out, ExecutorService deflaters, int readAhead, int level) {
+    super();
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    this.out = out;
+    this.deflaters = deflaters;
+    this.readAhead = Math.max(1, readAhead);
+    this.level = level;
+    this.pending = new ArrayDeque<>(this.readAhead + 1);
+  }
+
+  /**
+   * @return mark of the next byte to be written, to be passed to {@link #resolve(long)} once its
+   *     block has been written
+   */
+  public long mark() {
+    return blockNumber << BLOCK_OFFSET_BITS | count;
+  }
+
+  /** @return number of blocks written to the underlying stream */
+  public long getWrittenBlocks() {
+    return writtenBlocks;
+  }
+
+  /**
+   * @param mark from {@link #mark()}
+   * @return true if mark can be resolved
+   */
+  public boolean isResolvable(long mark) {
+    long block = mark >>> BLOCK_OFFSET_BITS;
+    return block < writtenBlocks || (block == writtenBlocks && (mark & BLOCK_OFFSET_MASK) == 0);
+  }
+
+  /**
+   * @param mark from {@link #mark()}
+   * @return BGZF virtual file offset of mark
+   */
+  public long resolve(long mark) {
+    if (!isResolvable(mark)) throw new IllegalStateException("Block of mark is not yet written");
+    long block = mark >>> BLOCK_OFFSET_BITS;
+    long blockAddress = block == writtenBlocks ? address : blockAddresses[(int) block];
+    return blockAddress << BLOCK_OFFSET_BITS | (mark & BLOCK_OFFSET_MASK);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    buffer[count++] = (byte) b;
+    if (count == buffer.length) submitBlock();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int copied = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, copied);
+      count += copied;
+      off += copied;
+      len -= copied;
+      if (count == buffer.length) submitBlock();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    byte[] data = buffer;
+    int length = count;
+    pending.add(deflaters.submit(() -> Bgzf.deflate(data, length, level)));
+    buffer = new byte[Bgzf.MAX_UNCOMPRESSED_BLOCK_SIZE];
+    count = 0;
+    blockNumber++;
+    while (pending.size() > readAhead) {
+      writeNextBlock();
+    }
+  }
+
+  private void writeNextBlock() throws IOException {
+    byte[] block;
+    try {
+      block = Uninterruptibles.getUninterruptibly(pending.poll());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    if (writtenBlocks == blockAddresses.length)
+      blockAddresses = Arrays.copyOf(blockAddresses, blockAddresses.length * 2);
+    blockAddresses[writtenBlocks++] = address;
+    out.write(block);
+    address += block.length;
+  }
+
+  /** Deflate and write any buffered bytes as a final partial block, then flush */
+  @Override
+  public void flush() throws IOException {
+    if (count > 0) submitBlock();
+    while (!pending.isEmpty()) {
+      writeNextBlock();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      flush();
+      out.write(Bgzf.terminator());
+    } finally {
+      pending.forEach(f -> f.cancel(false));
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package org.pankratzlab.supernovo.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * Iterates the records of a VCF in file order while inflating BGZF blocks and parsing batches of
+ * lines into {@link VariantContext}s, including their genotypes, on a shared {@link
+ * ExecutorService}. A producer thread splits the inflated text into line batches and queues their
+ * parse tasks, bounding the number of batches in flight.
+ */
+public class ParallelVcfReader implements CloseableIterator<VariantContext> {
+
+  private static final int BATCH_LINES = 512;
+  private static final Future<List<VariantContext>> END_OF_RECORDS =
+      Futures.immediateFuture(ImmutableList.of());
+
+  private final BufferedReader lines;
+  private final ImmutableList<String> headerLines;
+  private final VCFHeader header;
+  private final ExecutorService workers;
+  private final ThreadLocal<VCFCodec> codecs;
+  private final BlockingQueue<Future<List<VariantContext>>> batches;
+  private final Thread producer;
+
+  private Iterator<VariantContext> currentBatch = ImmutableList.<VariantContext>of().iterator();
+  private boolean exhausted = false;
+
+  /**
+   * @param vcf plain, gzip or BGZF compressed VCF
+   * @param workers {@link ExecutorService} to inflate and parse on
+   * @param readAhead maximum number of BGZF blocks and of line batches in flight
+   * @throws IOException
+   */
+  public ParallelVcfReader(File vcf, ExecutorService workers, int readAhead) throws IOException {
+    super();
+    this.workers = workers;
+    this.lines =
+        new BufferedReader(
+            new InputStreamReader(open(vcf, workers, readAhead), StandardCharsets.UTF_8));
+    ImmutableList.Builder<String> headerBuilder = ImmutableList.builder();
+    lines.mark(1);
+    while (lines.read() == '#') {
+      lines.reset();
+      headerBuilder.add(lines.readLine());
+      lines.mark(1);
+    }
+    lines.reset();
+    this.headerLines = headerBuilder.build();
+    this.codecs = ThreadLocal.withInitial(this::createCodec);
+    this.header = codecs.get().getHeader();
+    this.batches = new ArrayBlockingQueue<>(Math.max(1, readAhead));
+    this.producer = new Thread(this::produce, "supernovo-vcf-lines");
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  private static InputStream open(File vcf, ExecutorService workers, int readAhead)
+      throws IOException {
+    if (Bgzf.isBgzf(vcf))
+      return new ParallelBgzfInputStream(
+          new BufferedInputStream(new FileInputStream(vcf)), workers, readAhead);
+    InputStream in = new BufferedInputStream(new FileInputStream(vcf));
+    if (vcf.getName().endsWith(".gz")) return new GZIPInputStream(in);
+    return in;
+  }
+
+  private VCFCodec createCodec() {
+    VCFCodec codec = new VCFCodec();
+    codec.readActualHeader(lineIterator(headerLines));
+    return codec;
+  }
+
+  private static LineIterator lineIterator(List<String> lines) {
+    PeekingIterator<String> iterator = Iterators.peekingIterator(lines.iterator());
+    return new LineIterator() {
+
+      @Override
+      public String peek() {
+        return iterator.peek();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public String next() {
+        return iterator.next();
+      }
+    };
+  }
+
+  /** @return the header */
+  public VCFHeader getHeader() {
+    return header;
+  }
+
+  private void produce() {
+    Future<List<VariantContext>> last;
+    try {
+      List<String> batch = Lists.newArrayListWithCapacity(BATCH_LINES);
+      String line;
+      while ((line = lines.readLine()) != null) {
+        batch.add(line);
+        if (batch.size() == BATCH_LINES) {
+          queue(batch);
+          batch = Lists.newArrayListWithCapacity(BATCH_LINES);
+        }
+      }
+      if (!batch.isEmpty()) queue(batch);
+      last = END_OF_RECORDS;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      endClosed();
+      return;
+    } catch (Throwable t) {
+      last = Futures.immediateFailedFuture(t);
+    }
+    try {
+      batches.put(last);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      endClosed();
+    }
+  }
+
+  /** Drop the batches in flight and end the records, so a consumer blocked on them wakes */
+  private void endClosed() {
+    batches.forEach(f -> f.cancel(false));
+    batches.clear();
+    batches.offer(END_OF_RECORDS);
+  }
+
+  private void queue(List<String> batch) throws InterruptedException {
+    batches.put(workers.submit(() -> parse(batch)));
+  }
+
+  private List<VariantContext> parse(List<String> batch) {
+    VCFCodec codec = codecs.get();
+    ImmutableList.Builder<VariantContext> parsed =
+        ImmutableList.builderWithExpectedSize(batch.size());
+    for (String line : batch) {
+      VariantContext vc = codec.decode(line);
+      if (vc == null) continue;
+      GenotypesContext genotypes = vc.getGenotypes();
+      if (genotypes instanceof LazyGenotypesContext) ((LazyGenotypesContext) genotypes).decode();
+      parsed.add(vc);
+    }
+    return parsed.build();
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!currentBatch.hasNext() && !exhausted) {
+      Future<List<VariantContext>> next = Uninterruptibles.takeUninterruptibly(batches);
+      if (next == END_OF_RECORDS) {
+        exhausted = true;
+      } else {
+        try {
+          currentBatch = Uninterruptibles.getUninterruptibly(next).iterator();
+        } catch (ExecutionException e) {
+          exhausted = true;
+          if (e.getCause() instanceof IOException)
+            throw new UncheckedIOException((IOException) e.getCause());
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    return currentBatch.hasNext();
+  }
+
+  @Override
+  public VariantContext next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    return currentBatch.next();
+  }
+
+  @Override
+  public void close() {
+    producer.interrupt();
+    endClosed();
+    currentBatch = ImmutableList.<VariantContext>of().iterator();
+    exhausted = true;
+    try {
+      lines.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -2,36 +2,116 @@ package org.pankratzlab.supernovo.output;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.CallingThresholds;
 import org.pankratzlab.supernovo.HaplotypeEvaluator;
 import org.pankratzlab.supernovo.PileAllele;
 import org.pankratzlab.supernovo.ReferencePosition;
 import org.pankratzlab.supernovo.SNPAllele;
-import org.pankratzlab.supernovo.TrioEvaluator;
+import org.pankratzlab.supernovo.SiteBudget;
+import org.pankratzlab.supernovo.TrioLikelihoodModel;
 import org.pankratzlab.supernovo.pileup.Depth;
-import org.pankratzlab.supernovo.pileup.Pileup;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import org.pankratzlab.supernovo.pileup.ReadStatistic;
 import com.google.common.collect.ImmutableList;
 
+/**
+ * Output fields of a site, computed once from the {@link PileupSummary}s of the trio. Only the
+ * output fields are retained, as primitives and Strings with missing values marked {@link
+ * OutputFields.Missable}, so results hold no reference to reads, pileups, summaries or alleles.
+ */
 public class DeNovoResult implements OutputFields {
 
+  /** a1 and a2 columns of every {@link ReadStatistic} of a sample */
+  public static class ReadStatistics implements OutputFields.Computed {
+
+    private static final ImmutableList<Column> COLUMNS =
+        ReadStatistic.ALL
+            .stream()
+            .flatMap(
+                statistic ->
+                    Stream.of("a1", "a2")
+                        .map(allele -> column(allele + statistic.getColumnName(), statistic)))
+            .collect(ImmutableList.toImmutableList());
+
+    private final double[] values;
+
+    /**
+     * @param pileup {@link PileupSummary} of the sample
+     * @param a1 allele 1 of the child
+     * @param a2 allele 2 of the child
+     */
+    public ReadStatistics(
+        PileupSummary pileup, Optional<PileAllele> a1, Optional<PileAllele> a2) {
+      super();
+      values = new double[COLUMNS.size()];
+      int i = 0;
+      for (ReadStatistic statistic : ReadStatistic.ALL) {
+        values[i++] = value(pileup, a1, statistic);
+        values[i++] = value(pileup, a2, statistic);
+      }
+    }
+
+    private static Column column(String name, ReadStatistic statistic) {
+      return statistic.getReduction() == ReadStatistic.Reduction.COUNT
+          ? new Column(name, int.class, false)
+          : new Column(name, Double.class, true);
+    }
+
+    private static double value(
+        PileupSummary pileup, Optional<PileAllele> allele, ReadStatistic statistic) {
+      if (statistic.getReduction() == ReadStatistic.Reduction.COUNT)
+        return allele.map(a -> pileup.getReadStatisticSum(a, statistic)).orElse(0L);
+      return allele
+          .flatMap(a -> pileup.getReadStatisticMean(a, statistic))
+          .orElse(Double.NaN);
+    }
+
+    private static String format(ReadStatistic statistic, double value) {
+      if (statistic.getReduction() == ReadStatistic.Reduction.COUNT)
+        return Long.toString((long) value);
+      return Double.isNaN(value) ? Constants.MISSING : Double.toString(value);
+    }
+
+    /** @return the {@link Column}s, as required of a {@link OutputFields.Computed} */
+    public static List<Column> columns() {
+      return COLUMNS;
+    }
+
+    @Override
+    public Stream<String> fieldValues() {
+      return IntStream.range(0, values.length)
+          .mapToObj(i -> format(ReadStatistic.ALL.get(i / 2), values[i]));
+    }
+
+    @Override
+    public void putValues(ColumnSink sink) {
+      for (int i = 0; i < values.length; i++) {
+        if (ReadStatistic.ALL.get(i / 2).getReduction() == ReadStatistic.Reduction.COUNT)
+          sink.putInt((int) values[i]);
+        else sink.putDouble(values[i]);
+      }
+    }
+  }
+
   public static class Sample implements OutputFields {
 
     public final String id;
     public final int rawDepth;
     public final int refRawDepth;
-    public final Optional<Integer> altRawDepth;
+    @Missable public final int altRawDepth;
     public final int a1RawDepth;
     public final int a2RawDepth;
     public final int a_rawDepth;
     public final int t_rawDepth;
     public final int c_rawDepth;
     public final int g_rawDepth;
-    public final int a1ClippedReads;
-    public final int a2ClippedReads;
-    public final int a1UnmappedMateReads;
-    public final int a2UnmappedMateReads;
+    public final ReadStatistics readStatistics;
     public final double weightedDepth;
     public final double refWeightedDepth;
-    public final Optional<Double> altWeightedDepth;
+    @Missable public final double altWeightedDepth;
     public final double a1WeightedDepth;
     public final double a2WeightedDepth;
     public final double a_weightedDepth;
@@ -39,8 +119,6 @@ public class DeNovoResult implements OutputFields {
     public final double c_weightedDepth;
     public final double g_weightedDepth;
 
-    private final Pileup pileup;
-
     /**
      * @param id
      * @param pileup
@@ -48,12 +126,11 @@ public class DeNovoResult implements OutputFields {
      */
     public Sample(
         String id,
-        Pileup pileup,
+        PileupSummary pileup,
         ReferencePosition pos,
         Optional<PileAllele> a1,
         Optional<PileAllele> a2) {
       super();
-      this.pileup = pileup;
       Depth depth = pileup.getDepth();
       PileAllele ref = pos.getRefAllele();
       Optional<PileAllele> alt = pos.getAltAllele();
@@ -61,20 +138,17 @@ public class DeNovoResult implements OutputFields {
       this.id = id;
       rawDepth = depth.rawTotalDepth();
       refRawDepth = depth.allelicRawDepth(ref);
-      altRawDepth = alt.map(depth::allelicRawDepth);
+      altRawDepth = alt.map(depth::allelicRawDepth).orElse(Constants.MISSING_INT);
       a1RawDepth = a1.map(depth::allelicRawDepth).orElse(0);
       a2RawDepth = a2.map(depth::allelicRawDepth).orElse(0);
       a_rawDepth = depth.allelicRawDepth(SNPAllele.A);
       t_rawDepth = depth.allelicRawDepth(SNPAllele.T);
       c_rawDepth = depth.allelicRawDepth(SNPAllele.C);
       g_rawDepth = depth.allelicRawDepth(SNPAllele.G);
-      a1ClippedReads = a1.map(pileup.getClippedReadCounts()::count).orElse(0);
-      a2ClippedReads = a2.map(pileup.getClippedReadCounts()::count).orElse(0);
-      a1UnmappedMateReads = a1.map(pileup.getUnmappedMateCounts()::count).orElse(0);
-      a2UnmappedMateReads = a2.map(pileup.getUnmappedMateCounts()::count).orElse(0);
+      readStatistics = new ReadStatistics(pileup, a1, a2);
       weightedDepth = depth.weightedTotalDepth();
       refWeightedDepth = depth.allelicWeightedDepth(ref);
-      altWeightedDepth = alt.map(depth::allelicWeightedDepth);
+      altWeightedDepth = alt.map(depth::allelicWeightedDepth).orElse(Double.NaN);
       a1WeightedDepth = a1.map(depth::allelicWeightedDepth).orElse(0.0);
       a2WeightedDepth = a2.map(depth::allelicWeightedDepth).orElse(0.0);
       a_weightedDepth = depth.allelicWeightedDepth(SNPAllele.A);
@@ -87,62 +161,78 @@ public class DeNovoResult implements OutputFields {
     public String getId() {
       return id;
     }
-
-    /** @return the depth */
-    public Depth getDepth() {
-      return pileup.getDepth();
-    }
-
-    /** @return the pileup */
-    public Pileup getPileup() {
-      return pileup;
-    }
   }
 
   public final String chr;
   public final int position;
-  public final PileAllele refAllele;
-  public final Optional<PileAllele> altAllele;
-  public final Optional<PileAllele> allele1;
-  public final Optional<PileAllele> allele2;
+  public final String refAllele;
+  @Missable public final String altAllele;
+  @Missable public final double populationAF;
+  @Missable public final String allele1;
+  @Missable public final String allele2;
   public final boolean biallelicHeterozygote;
   public final boolean deNovo;
   public final boolean superNovo;
+  public final double deNovoPosterior;
   public final double meanHaplotypeConcordance;
   public final int overlappingReadsHetCount;
-  public static final double MIN_HAPLOTYPE_CONCORDANCE = 0.95;
+  @Header("MIN_HAPLOTYPE_CONCORDANCE")
+  public final double minHaplotypeConcordance;
   public final int overlappingReadsDiscordantHetCount;
   public final int overlappingReadsDeNovoCount;
   public final int overlapingReadsThirdAlleleCount;
+  public final String evaluationStatus;
   public final Sample child;
   public final Sample p1;
   public final Sample p2;
 
-  private final ReferencePosition pos;
-  private final HaplotypeEvaluator.Result hapResults;
-  private final List<Sample> parents;
-
+  /**
+   * @param pos site evaluated
+   * @param populationAF population frequency of the alt allele at pos, if known
+   * @param hapResults {@link HaplotypeEvaluator.Result} around pos
+   * @param degradations {@link SiteBudget.Degradation}s applied while evaluating pos
+   * @param thresholds {@link CallingThresholds} to call the site against
+   * @param childID id of the child
+   * @param childSummary {@link PileupSummary} of the child at pos
+   * @param p1ID id of parent 1
+   * @param p1Summary {@link PileupSummary} of parent 1 at pos
+   * @param p2ID id of parent 2
+   * @param p2Summary {@link PileupSummary} of parent 2 at pos
+   */
   public DeNovoResult(
       ReferencePosition pos,
+      Optional<Double> populationAF,
       HaplotypeEvaluator.Result hapResults,
-      Sample child,
-      Sample p1,
-      Sample p2) {
-    this.pos = pos;
-    this.hapResults = hapResults;
-    this.child = child;
-    this.p1 = p1;
-    this.p2 = p2;
-    this.parents = ImmutableList.of(p1, p2);
-
+      Set<SiteBudget.Degradation> degradations,
+      CallingThresholds thresholds,
+      String childID,
+      PileupSummary childSummary,
+      String p1ID,
+      PileupSummary p1Summary,
+      String p2ID,
+      PileupSummary p2Summary) {
     position = pos.getPosition();
     chr = pos.getContig();
-    refAllele = pos.getRefAllele();
-    altAllele = pos.getAltAllele();
-    allele1 = child.getDepth().getA1();
-    allele2 = child.getDepth().getA2();
-    biallelicHeterozygote = TrioEvaluator.looksBiallelic(child.getPileup());
-    deNovo = TrioEvaluator.looksDenovo(child.getPileup(), p1.getPileup(), p2.getPileup());
+    refAllele = pos.getRefAllele().toString();
+    altAllele = pos.getAltAllele().map(Object::toString).orElse(null);
+    this.populationAF = populationAF.orElse(Double.NaN);
+    Optional<PileAllele> a1 = childSummary.getDepth().getA1();
+    Optional<PileAllele> a2 = childSummary.getDepth().getA2();
+    allele1 = a1.map(Object::toString).orElse(null);
+    allele2 = a2.map(Object::toString).orElse(null);
+    this.child = new Sample(childID, childSummary, pos, a1, a2);
+    this.p1 = new Sample(p1ID, p1Summary, pos, a1, a2);
+    this.p2 = new Sample(p2ID, p2Summary, pos, a1, a2);
+    biallelicHeterozygote = thresholds.looksBiallelic(childSummary);
+    deNovo = thresholds.looksDenovo(childSummary, p1Summary, p2Summary);
+    deNovoPosterior =
+        TrioLikelihoodModel.deNovoPosterior(
+            childSummary,
+            p1Summary,
+            p2Summary,
+            pos,
+            populationAF.orElse(TrioLikelihoodModel.DEFAULT_ALLELE_FREQUENCY));
+    minHaplotypeConcordance = thresholds.getMinHaplotypeConcordance();
     if (hapResults.getConcordances().isEmpty()) meanHaplotypeConcordance = 1.0;
     else
       meanHaplotypeConcordance =
@@ -159,15 +249,17 @@ public class DeNovoResult implements OutputFields {
                 .getConcordances()
                 .stream()
                 .mapToDouble(Double::valueOf)
-                .filter(d -> d < MIN_HAPLOTYPE_CONCORDANCE)
+                .filter(d -> d < minHaplotypeConcordance)
                 .count();
     superNovo =
         biallelicHeterozygote
             && deNovo
+            && !degradations.contains(SiteBudget.Degradation.HAPLOTYPE_SKIPPED)
             && hapResults.getOtherDeNovos() == 0
-            && meanHaplotypeConcordance >= MIN_HAPLOTYPE_CONCORDANCE
+            && meanHaplotypeConcordance >= minHaplotypeConcordance
             && hapResults.getOtherTriallelics() == 0;
     overlappingReadsDeNovoCount = hapResults.getOtherDeNovos();
     overlapingReadsThirdAlleleCount = hapResults.getOtherTriallelics();
+    evaluationStatus = SiteBudget.status(degradations);
   }
 }
@@ -0,0 +1,185 @@
+package org.pankratzlab.supernovo.output;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import org.pankratzlab.supernovo.columnar.ColumnarResultWriter;
+import org.pankratzlab.supernovo.io.ParallelBgzfOutputStream;
+import com.google.common.util.concurrent.MoreExecutors;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.util.TabixUtils;
+
+/**
+ * Writes {@link DeNovoResult}s as tab separated lines, either as plain text or, for outputs ending
+ * in .gz or .bgz, as BGZF with a tabix index built as the lines are written, and optionally also
+ * as a {@link ColumnarResultWriter} store
+ */
+public class DeNovoResultWriter implements Closeable {
+
+  private static class PendingFeature {
+    private final SimpleFeature feature;
+    private final long mark;
+
+    private PendingFeature(SimpleFeature feature, long mark) {
+      this.feature = feature;
+      this.mark = mark;
+    }
+  }
+
+  /** Sequence in column 1, position in column 2, single header line */
+  private static final TabixFormat TABIX_FORMAT =
+      new TabixFormat(TabixFormat.GENERIC_FLAGS, 1, 2, 0, '#', 1);
+
+  private static final char NEWLINE = '\n';
+
+  private final Optional<PrintWriter> plain;
+  private final Optional<ParallelBgzfOutputStream> bgzf;
+  private final TabixIndexCreator indexer = new TabixIndexCreator(TABIX_FORMAT);
+  private final Deque<PendingFeature> pendingFeatures = new ArrayDeque<>();
+  private final File indexFile;
+  private final Optional<ColumnarResultWriter> columnar;
+
+  private DeNovoResultWriter(
+      Optional<PrintWriter> plain,
+      Optional<ParallelBgzfOutputStream> bgzf,
+      File output,
+      Optional<ColumnarResultWriter> columnar)
+      throws IOException {
+    super();
+    this.plain = plain;
+    this.bgzf = bgzf;
+    this.columnar = columnar;
+    this.indexFile = new File(output.getPath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+    writeLine(OutputFields.generateHeader(DeNovoResult.class));
+  }
+
+  /**
+   * @param output file to write
+   * @return true if output will be written as BGZF
+   */
+  public static boolean isBlockCompressed(File output) {
+    String name = output.getName();
+    return name.endsWith(".gz") || name.endsWith(".bgz");
+  }
+
+  /**
+   * @param output file to write, as BGZF when {@link #isBlockCompressed(File)}
+   * @param deflaters {@link ExecutorService} to deflate blocks on, blocks are deflated on the
+   *     writing thread when absent
+   * @param readAhead maximum number of blocks deflating ahead of the written output
+   * @param level compression level, 0 to 9
+   * @param columnarOutput file to also write the rows to as a {@link ColumnarResultWriter} store
+   * @return a {@link DeNovoResultWriter} for output, with the header written
+   * @throws IOException
+   */
+  public static DeNovoResultWriter open(
+      File output,
+      Optional<ExecutorService> deflaters,
+      int readAhead,
+      int level,
+      Optional<File> columnarOutput)
+      throws IOException {
+    Optional<ColumnarResultWriter> columnar =
+        columnarOutput.isPresent()
+            ? Optional.of(new ColumnarResultWriter(columnarOutput.get()))
+            : Optional.empty();
+    if (isBlockCompressed(output)) {
+      ParallelBgzfOutputStream out =
+          new ParallelBgzfOutputStream(
+              new BufferedOutputStream(new FileOutputStream(output)),
+              deflaters.orElseGet(MoreExecutors::newDirectExecutorService),
+              readAhead,
+              level);
+      return new DeNovoResultWriter(Optional.empty(), Optional.of(out), output, columnar);
+    }
+    return new DeNovoResultWriter(
+        Optional.of(new PrintWriter(new BufferedWriter(new FileWriter(output)))),
+        Optional.empty(),
+        output,
+        columnar);
+  }
+
+  private void writeLine(String line) throws IOException {
+    if (plain.isPresent()) {
+      plain.get().println(line);
+    } else {
+      ParallelBgzfOutputStream out = bgzf.get();
+      out.write(line.getBytes(StandardCharsets.UTF_8));
+      out.write(NEWLINE);
+    }
+  }
+
+  /**
+   * @param result to write
+   * @throws IOException
+   */
+  public void write(DeNovoResult result) throws IOException {
+    writeText(result.chr, result.position, result.generateLine());
+    if (columnar.isPresent()) columnar.get().write(result);
+  }
+
+  /**
+   * @param contig of the row's site
+   * @param position of the row's site
+   * @param row previously generated line of a {@link DeNovoResult} to write
+   * @throws IOException
+   */
+  public void writeRow(String contig, int position, String row) throws IOException {
+    writeText(contig, position, row);
+    if (columnar.isPresent()) columnar.get().writeRow(row);
+  }
+
+  private void writeText(String contig, int position, String row) throws IOException {
+    if (bgzf.isPresent()) {
+      SimpleFeature feature = new SimpleFeature(contig, position, position);
+      pendingFeatures.add(new PendingFeature(feature, bgzf.get().mark()));
+    }
+    writeLine(row);
+    indexWrittenFeatures();
+  }
+
+  private void indexWrittenFeatures() {
+    if (!bgzf.isPresent()) return;
+    ParallelBgzfOutputStream out = bgzf.get();
+    while (!pendingFeatures.isEmpty() && out.isResolvable(pendingFeatures.peek().mark)) {
+      PendingFeature pending = pendingFeatures.poll();
+      indexer.addFeature(pending.feature, out.resolve(pending.mark));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (columnar.isPresent()) columnar.get().close();
+    } finally {
+      closeText();
+    }
+  }
+
+  private void closeText() throws IOException {
+    if (plain.isPresent()) {
+      plain.get().close();
+    } else {
+      ParallelBgzfOutputStream out = bgzf.get();
+      try {
+        out.flush();
+        indexWrittenFeatures();
+        indexer.finalizeIndex(out.resolve(out.mark())).write(indexFile);
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
@@ -1,6 +1,12 @@
 package org.pankratzlab.supernovo.output;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -18,7 +24,92 @@ public interface OutputFields {
 
     static final String DELIM = "\t";
     static final String MISSING = ".";
+    static final int MISSING_INT = Integer.MIN_VALUE;
     static final Collector<CharSequence, ?, String> JOIN_COLLECTOR = Collectors.joining(DELIM);
+    static final String COLUMNS_METHOD = "columns";
+  }
+
+  /** Names the output column of a field, for columns not named as Java fields are */
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.FIELD)
+  @interface Header {
+    /** @return the name of the output column */
+    String value();
+  }
+
+  /**
+   * Marks a field that can be missing without boxing it in an Optional: a double field is missing
+   * when NaN, an int field when {@link Integer#MIN_VALUE} and any other field when null
+   */
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.FIELD)
+  @interface Missable {}
+
+  /**
+   * {@link OutputFields} whose columns are not its public fields but are listed, in the order of
+   * {@link #fieldValues()}, by a public static {@code columns()} method returning a List of {@link
+   * Column}s. The columns are named without the prefix of the field holding them.
+   */
+  interface Computed extends OutputFields {
+    @Override
+    Stream<String> fieldValues();
+
+    @Override
+    void putValues(ColumnSink sink);
+  }
+
+  /**
+   * Receives the typed value of each output column, in output order, for outputs that store values
+   * rather than text
+   */
+  interface ColumnSink {
+    /** @param value of an int column, {@link Integer#MIN_VALUE} if missing */
+    void putInt(int value);
+
+    /** @param value of a double column, NaN if missing */
+    void putDouble(double value);
+
+    /** @param value of a boolean column */
+    void putBoolean(boolean value);
+
+    /** @param value of any other column, output as text */
+    void putString(String value);
+
+    /** Put a missing value, for a column of any type */
+    void putMissing();
+  }
+
+  /** Name and value type of a column of a {@link Computed} */
+  final class Column {
+    private final String name;
+    private final Class<?> type;
+    private final boolean optional;
+
+    /**
+     * @param name of the column
+     * @param type of the column's values, as a field holding them would be declared
+     * @param optional true if the column can be missing
+     */
+    public Column(String name, Class<?> type, boolean optional) {
+      this.name = name;
+      this.type = type;
+      this.optional = optional;
+    }
+
+    /** @return the name */
+    public String getName() {
+      return name;
+    }
+
+    /** @return the type */
+    public Class<?> getType() {
+      return type;
+    }
+
+    /** @return true if the column can be missing */
+    public boolean isOptional() {
+      return optional;
+    }
   }
 
   default String generateLine() {
@@ -26,9 +117,47 @@ public interface OutputFields {
   }
 
   default Stream<String> fieldValues() {
-    return Stream.of(this.getClass().getFields())
-        .map(this::getOwnField)
-        .flatMap(this::recurseValues);
+    return Stream.of(this.getClass().getFields()).flatMap(this::fieldValues);
+  }
+
+  default Stream<String> fieldValues(Field field) {
+    Object value = getOwnField(field);
+    if (field.isAnnotationPresent(Missable.class) && isMissing(value))
+      return Stream.of(Constants.MISSING);
+    return recurseValues(value);
+  }
+
+  /**
+   * Put the value of every output column, as {@link #fieldValues()} would output them, without
+   * formatting them as text
+   *
+   * @param sink {@link ColumnSink} to put the values to
+   */
+  default void putValues(ColumnSink sink) {
+    try {
+      for (Field field : this.getClass().getFields()) {
+        Class<?> type = field.getType();
+        if (int.class.equals(type)) sink.putInt(field.getInt(this));
+        else if (double.class.equals(type)) sink.putDouble(field.getDouble(this));
+        else if (boolean.class.equals(type)) sink.putBoolean(field.getBoolean(this));
+        else putValue(sink, field.get(this));
+      }
+    } catch (IllegalArgumentException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static void putValue(ColumnSink sink, Object value) {
+    if (value instanceof OutputFields) ((OutputFields) value).putValues(sink);
+    else if (value instanceof Optional<?>) {
+      Optional<?> optional = (Optional<?>) value;
+      if (optional.isPresent()) putValue(sink, optional.get());
+      else sink.putMissing();
+    } else if (value == null) sink.putMissing();
+    else if (value instanceof Integer) sink.putInt((Integer) value);
+    else if (value instanceof Double) sink.putDouble((Double) value);
+    else if (value instanceof Boolean) sink.putBoolean((Boolean) value);
+    else sink.putString(value.toString());
   }
 
   default Object getOwnField(Field field) {
@@ -49,6 +178,16 @@ public interface OutputFields {
     return Stream.of(value.toString());
   }
 
+  /**
+   * @param value of a {@link Missable} field
+   * @return true if value is missing
+   */
+  static boolean isMissing(Object value) {
+    if (value instanceof Double) return ((Double) value).isNaN();
+    if (value instanceof Integer) return (Integer) value == Constants.MISSING_INT;
+    return value == null;
+  }
+
   static String generateHeader(Class<? extends OutputFields> outputClass) {
     return fieldHeaders(outputClass).collect(Constants.JOIN_COLLECTOR);
   }
@@ -60,10 +199,35 @@ public interface OutputFields {
   @SuppressWarnings("unchecked")
   static Stream<String> recurseHeaders(Field field) {
     Class<?> fieldType = field.getType();
+    if (Computed.class.isAssignableFrom(fieldType)) {
+      return computedColumns((Class<? extends Computed>) fieldType).stream().map(Column::getName);
+    }
     if (OutputFields.class.isAssignableFrom(fieldType)) {
       final String prefix = field.getName() + "_";
       return fieldHeaders((Class<? extends OutputFields>) fieldType).map(h -> prefix + h);
     }
-    return Stream.of(field.getName());
+    return Stream.of(headerName(field));
+  }
+
+  /**
+   * @param field public field of an {@link OutputFields} class
+   * @return the name of the output column of field, see {@link Header}
+   */
+  static String headerName(Field field) {
+    Header header = field.getAnnotation(Header.class);
+    return header == null ? field.getName() : header.value();
+  }
+
+  /**
+   * @param computedClass {@link Computed} class
+   * @return the {@link Column}s of computedClass
+   */
+  @SuppressWarnings("unchecked")
+  static List<Column> computedColumns(Class<? extends Computed> computedClass) {
+    try {
+      return (List<Column>) computedClass.getMethod(Constants.COLUMNS_METHOD).invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
   }
 }
@@ -0,0 +1,126 @@
+package org.pankratzlab.supernovo.output;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Fingerprints of the inputs and the parameters of a run, written as a two column manifest beside
+ * the output so a later run can tell whether the output can be reused
+ */
+public class RunManifest {
+
+  private static final String MANIFEST_SUFFIX = ".manifest";
+  private static final String INPUT_PREFIX = "input.";
+  private static final String PARAMETER_PREFIX = "param.";
+  /** Bytes hashed from each end of an input to fingerprint it */
+  private static final int FINGERPRINT_BYTES = 1 << 20;
+
+  private final ImmutableMap<String, String> inputs;
+  private final ImmutableMap<String, String> parameters;
+
+  /**
+   * @param inputs map from input name to {@link #fingerprint(File)} of the input
+   * @param parameters map from parameter name to value
+   */
+  public RunManifest(Map<String, String> inputs, Map<String, String> parameters) {
+    super();
+    this.inputs = ImmutableMap.copyOf(inputs);
+    this.parameters = ImmutableMap.copyOf(parameters);
+  }
+
+  /**
+   * @param file to fingerprint
+   * @return length of file and checksum of its first and last MiB, cheap enough to take of BAMs
+   * @throws IOException
+   */
+  public static String fingerprint(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long length = raf.length();
+      Hasher hasher = Hashing.crc32c().newHasher();
+      byte[] buffer = new byte[(int) Math.min(FINGERPRINT_BYTES, length)];
+      raf.readFully(buffer);
+      hasher.putBytes(buffer);
+      raf.seek(length - buffer.length);
+      raf.readFully(buffer);
+      hasher.putBytes(buffer);
+      return length + ":" + hasher.hash();
+    }
+  }
+
+  /** @return the inputs */
+  public ImmutableMap<String, String> getInputs() {
+    return inputs;
+  }
+
+  /** @return the parameters */
+  public ImmutableMap<String, String> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * @param previous {@link RunManifest} of a previous run
+   * @param changeableInputs names of inputs that may differ from previous
+   * @return names of the inputs and parameters that differ from previous
+   */
+  public ImmutableList<String> differences(RunManifest previous, Set<String> changeableInputs) {
+    ImmutableList.Builder<String> differences = ImmutableList.builder();
+    for (String input : Sets.union(inputs.keySet(), previous.inputs.keySet())) {
+      if (!changeableInputs.contains(input)
+          && !Objects.equals(inputs.get(input), previous.inputs.get(input)))
+        differences.add(INPUT_PREFIX + input);
+    }
+    for (String parameter : Sets.union(parameters.keySet(), previous.parameters.keySet())) {
+      if (!Objects.equals(parameters.get(parameter), previous.parameters.get(parameter)))
+        differences.add(PARAMETER_PREFIX + parameter);
+    }
+    return differences.build();
+  }
+
+  public void write(File file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+      inputs.forEach((name, value) -> writer.println(INPUT_PREFIX + name + "\t" + value));
+      parameters.forEach((name, value) -> writer.println(PARAMETER_PREFIX + name + "\t" + value));
+    }
+  }
+
+  public static RunManifest load(File file) throws IOException {
+    ImmutableMap.Builder<String, String> inputs = ImmutableMap.builder();
+    ImmutableMap.Builder<String, String> parameters = ImmutableMap.builder();
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab == -1) throw new IOException("Malformed manifest line in " + file + ": " + line);
+        String name = line.substring(0, tab);
+        String value = line.substring(tab + 1);
+        if (name.startsWith(INPUT_PREFIX)) inputs.put(name.substring(INPUT_PREFIX.length()), value);
+        else if (name.startsWith(PARAMETER_PREFIX))
+          parameters.put(name.substring(PARAMETER_PREFIX.length()), value);
+        else throw new IOException("Unknown manifest entry in " + file + ": " + name);
+      }
+    }
+    return new RunManifest(inputs.build(), parameters.build());
+  }
+
+  /**
+   * @param output main output of a run
+   * @return the manifest file to write for output
+   */
+  public static File manifestFile(File output) {
+    return new File(output.getPath() + MANIFEST_SUFFIX);
+  }
+}
@@ -0,0 +1,50 @@
+package org.pankratzlab.supernovo.output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Map;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/** Named metrics collected over a run and written as a two column report beside the output */
+public class RunReport {
+
+  private static final String REPORT_SUFFIX = ".report";
+
+  private final Map<String, Object> metrics = Collections.synchronizedMap(Maps.newLinkedHashMap());
+
+  /**
+   * @param name of metric, metrics are reported in the order they are first put
+   * @param value of metric
+   * @return this {@link RunReport}
+   */
+  public RunReport put(String name, Object value) {
+    metrics.put(name, value);
+    return this;
+  }
+
+  /** @return the metrics reported so far */
+  public ImmutableMap<String, Object> getMetrics() {
+    synchronized (metrics) {
+      return ImmutableMap.copyOf(metrics);
+    }
+  }
+
+  public void write(File file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+      getMetrics().forEach((name, value) -> writer.println(name + "\t" + value));
+    }
+  }
+
+  /**
+   * @param output main output of a run
+   * @return the report file to write for output
+   */
+  public static File reportFile(File output) {
+    return new File(output.getPath() + REPORT_SUFFIX);
+  }
+}
@@ -0,0 +1,112 @@
+package org.pankratzlab.supernovo.pileup;
+
+import java.util.List;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Walks the alignment blocks of a set of records once, in ascending reference order, so successive
+ * positions can be piled up without resolving every record's CIGAR from its start at every
+ * position. Cost is proportional to the records times their blocks plus the positions piled, not
+ * their product, which keeps wide searches over long reads affordable.
+ */
+public class AlignedColumns {
+
+  private final ImmutableList<SAMRecord> records;
+  private final boolean countFragments;
+  private final int[] blockCursors;
+  private int lastPosition = Integer.MIN_VALUE;
+
+  /**
+   * @param records records of a single contig
+   * @param countFragments true to count overlapping mates once in each {@link Pileup}
+   */
+  public AlignedColumns(ImmutableList<SAMRecord> records, boolean countFragments) {
+    super();
+    this.records = records;
+    this.countFragments = countFragments;
+    this.blockCursors = new int[records.size()];
+  }
+
+  /**
+   * @param start first position to search
+   * @param stop position to stop searching before
+   * @return positions from start to stop, in ascending order, where the records align more than
+   *     one base, the only positions at which they can look variant
+   */
+  public int[] polymorphicPositions(int start, int stop) {
+    int spanStart = Integer.MAX_VALUE;
+    int spanStop = Integer.MIN_VALUE;
+    for (SAMRecord record : records) {
+      spanStart = Integer.min(spanStart, record.getAlignmentStart());
+      spanStop = Integer.max(spanStop, record.getAlignmentEnd() + 1);
+    }
+    spanStart = Integer.max(spanStart, start);
+    spanStop = Integer.min(spanStop, stop);
+    if (spanStart >= spanStop) return new int[0];
+    int span = spanStop - spanStart;
+    byte[] firstBases = new byte[span];
+    boolean[] covered = new boolean[span];
+    boolean[] polymorphic = new boolean[span];
+    int polymorphicCount = 0;
+    for (SAMRecord record : records) {
+      byte[] bases = record.getReadBases();
+      for (AlignmentBlock block : record.getAlignmentBlocks()) {
+        int blockStart = block.getReferenceStart();
+        int from = Integer.max(blockStart, spanStart);
+        int readOffset = block.getReadStart() - 1 - blockStart;
+        int to =
+            Integer.min(
+                Integer.min(blockStart + block.getLength(), spanStop), bases.length - readOffset);
+        for (int position = from; position < to; position++) {
+          int i = position - spanStart;
+          byte base = bases[position + readOffset];
+          if (!covered[i]) {
+            covered[i] = true;
+            firstBases[i] = base;
+          } else if (!polymorphic[i] && firstBases[i] != base) {
+            polymorphic[i] = true;
+            polymorphicCount++;
+          }
+        }
+      }
+    }
+    int[] positions = new int[polymorphicCount];
+    for (int i = 0, p = 0; p < polymorphicCount; i++) {
+      if (polymorphic[i]) positions[p++] = spanStart + i;
+    }
+    return positions;
+  }
+
+  /**
+   * @param position to pile up, not before any position previously piled up by this
+   * @return {@link Pileup} of the records at position, with only SNP alleles
+   */
+  public Pileup pileup(int position) {
+    if (position < lastPosition)
+      throw new IllegalArgumentException(
+          "Position " + position + " is before previously piled position " + lastPosition);
+    lastPosition = position;
+    int[] readPositions = new int[records.size()];
+    for (int i = 0; i < readPositions.length; i++) {
+      List<AlignmentBlock> blocks = records.get(i).getAlignmentBlocks();
+      int cursor = blockCursors[i];
+      while (cursor < blocks.size() && blockEnd(blocks.get(cursor)) <= position) {
+        cursor++;
+      }
+      blockCursors[i] = cursor;
+      readPositions[i] = -1;
+      if (cursor < blocks.size()) {
+        AlignmentBlock block = blocks.get(cursor);
+        int offset = position - block.getReferenceStart();
+        if (offset >= 0) readPositions[i] = block.getReadStart() - 1 + offset;
+      }
+    }
+    return new Pileup(records, readPositions, countFragments);
+  }
+
+  private static int blockEnd(AlignmentBlock block) {
+    return block.getReferenceStart() + block.getLength();
+  }
+}
@@ -0,0 +1,49 @@
+package org.pankratzlab.supernovo.pileup;
+
+/**
+ * Sums of {@link ReadLikelihoods} over the reads supporting one allele of a {@link Pileup}, from
+ * which any biallelic genotype likelihood of the {@link Pileup} can be assembled
+ */
+public class AlleleLikelihoods {
+
+  private double homMatch;
+  private double hetMatch;
+  private double mismatch;
+
+  AlleleLikelihoods() {
+    super();
+  }
+
+  /**
+   * @param homMatch log10 likelihood of the supporting reads under a homozygous genotype
+   * @param hetMatch log10 likelihood of the supporting reads under a heterozygous genotype
+   * @param mismatch log10 likelihood of the supporting reads under a genotype without the allele
+   */
+  public AlleleLikelihoods(double homMatch, double hetMatch, double mismatch) {
+    super();
+    this.homMatch = homMatch;
+    this.hetMatch = hetMatch;
+    this.mismatch = mismatch;
+  }
+
+  void add(int qualityIndex) {
+    homMatch += ReadLikelihoods.homMatch(qualityIndex);
+    hetMatch += ReadLikelihoods.hetMatch(qualityIndex);
+    mismatch += ReadLikelihoods.mismatch(qualityIndex);
+  }
+
+  /** @return log10 likelihood of the supporting reads under a genotype homozygous for it */
+  public double getHomMatch() {
+    return homMatch;
+  }
+
+  /** @return log10 likelihood of the supporting reads under a genotype heterozygous for it */
+  public double getHetMatch() {
+    return hetMatch;
+  }
+
+  /** @return log10 likelihood of the supporting reads under a genotype without the allele */
+  public double getMismatch() {
+    return mismatch;
+  }
+}
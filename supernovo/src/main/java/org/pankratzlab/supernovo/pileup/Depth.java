@@ -20,18 +20,18 @@ public class Depth {
       this.getterFunc = getterFunc;
     }
 
-    private Optional<PileAllele> getAllele(Depth depth) {
+    Optional<PileAllele> getAllele(Depth depth) {
       return getterFunc.apply(depth);
     }
   }
 
-  private final Pileup pileup;
+  private final PileupSummary pileup;
   private final Optional<PileAllele> a1;
   private final Optional<PileAllele> a2;
   private final Set<PileAllele> biAlleles;
 
   /** @param pileup */
-  public Depth(Pileup pileup) {
+  public Depth(PileupSummary pileup) {
     super();
     this.pileup = pileup;
     Iterator<PileAllele> alleleIter = pileup.getWeightedBaseCounts().keySet().iterator();
@@ -44,15 +44,15 @@ public class Depth {
   }
 
   public double weightedBiallelicDepth() {
-    return biAlleles.stream().mapToDouble(pileup.getWeightedBaseCounts()::get).sum();
+    return allelicWeightedDepth(Allele.A1) + allelicWeightedDepth(Allele.A2);
   }
 
   public double weightedTotalDepth() {
-    return pileup.getWeightedBaseCounts().values().stream().mapToDouble(Double::doubleValue).sum();
+    return pileup.getWeightedTotalDepth();
   }
 
   public int rawBiallelicDepth() {
-    return biAlleles.stream().mapToInt(pileup.getBaseCounts()::count).sum();
+    return allelicRawDepth(Allele.A1) + allelicRawDepth(Allele.A2);
   }
 
   public int rawTotalDepth() {
@@ -79,11 +79,8 @@ public class Depth {
   }
 
   public double allelicWeightedDepth(Allele allele) {
-    return allele
-        .getAllele(this)
-        .map(this::allelicWeightedDepth)
-        .orElse(Double.valueOf(0))
-        .doubleValue();
+    Optional<PileAllele> pileAllele = allele.getAllele(this);
+    return pileAllele.isPresent() ? allelicWeightedDepth(pileAllele.get()) : 0.0;
   }
 
   public int allelicRawDepth(PileAllele allele) {
@@ -91,10 +88,7 @@ public class Depth {
   }
 
   public int allelicRawDepth(Allele allele) {
-    return allele.getAllele(this).map(this::allelicRawDepth).orElse(Integer.valueOf(0)).intValue();
-  }
-
-  public ImmutableSet<Integer> allelicRecords(Allele allele) {
-    return allele.getAllele(this).map(pileup.getRecordsByBase()::get).orElse(ImmutableSet.of());
+    Optional<PileAllele> pileAllele = allele.getAllele(this);
+    return pileAllele.isPresent() ? allelicRawDepth(pileAllele.get()) : 0;
   }
 }
@@ -3,7 +3,6 @@ package org.pankratzlab.supernovo.pileup;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import org.pankratzlab.supernovo.GenomePosition;
 import org.pankratzlab.supernovo.PileAllele;
 import org.pankratzlab.supernovo.ReferencePosition;
@@ -11,60 +10,229 @@ import org.pankratzlab.supernovo.SNPAllele;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import htsjdk.samtools.SAMRecord;
 
 public class Pileup {
 
+  /** Approximate heap retained by a {@link SAMRecord} apart from its bases, qualities and name */
+  private static final int RECORD_OVERHEAD_BYTES = 320;
+  /** Approximate heap retained per piled read by the allele maps of a {@link Pileup} */
+  private static final int PILED_READ_BYTES = 64;
+  /** Fraction of its confidence kept by the more confident of two mates that disagree */
+  private static final double DISCORDANT_MATE_CONFIDENCE = 0.8;
+
   private final ImmutableSetMultimap<PileAllele, Integer> basePiles;
-  private final ImmutableMap<PileAllele, Double> weightedBaseCounts;
   private final ImmutableList<SAMRecord> queriedRecords;
-  private final ImmutableMultiset<PileAllele> clippedReadCounts;
-  private final ImmutableMultiset<PileAllele> unmappedMateCounts;
-
-  private Optional<Depth> depth = Optional.empty();
+  private final PileupSummary summary;
+  private final boolean countFragments;
+  private final long estimatedRetainedBytes;
 
   public Pileup(ImmutableList<SAMRecord> queriedRecords, GenomePosition position) {
+    this(queriedRecords, position, false);
+  }
+
+  /**
+   * @param queriedRecords records overlapping position
+   * @param position to pile up
+   * @param downsampled true if queriedRecords are a sample of the records overlapping position
+   */
+  public Pileup(
+      ImmutableList<SAMRecord> queriedRecords, GenomePosition position, boolean downsampled) {
+    this(queriedRecords, position, downsampled, false);
+  }
+
+  /**
+   * @param queriedRecords records overlapping position
+   * @param position to pile up
+   * @param downsampled true if queriedRecords are a sample of the records overlapping position
+   * @param countFragments true to count overlapping mates once, as a single fragment
+   */
+  public Pileup(
+      ImmutableList<SAMRecord> queriedRecords,
+      GenomePosition position,
+      boolean downsampled,
+      boolean countFragments) {
+    this(
+        queriedRecords,
+        readPositions(queriedRecords, position.getPosition()),
+        generateQueriedAlleles(position),
+        downsampled,
+        countFragments);
+  }
+
+  /**
+   * Pile up a position of the contig queriedRecords were queried from, with only {@link
+   * SNPAllele}s
+   *
+   * @param queriedRecords records of a single contig
+   * @param position to pile up on the contig of queriedRecords
+   */
+  public Pileup(ImmutableList<SAMRecord> queriedRecords, int position) {
+    this(queriedRecords, readPositions(queriedRecords, position), false);
+  }
+
+  /**
+   * Pile up a position already resolved to its offset in each record, with only {@link
+   * SNPAllele}s
+   *
+   * @param queriedRecords records of a single contig
+   * @param readPositions 0-based offset of the position in each of queriedRecords, -1 where a
+   *     record does not align a base to it
+   * @param countFragments true to count overlapping mates once, as a single fragment
+   */
+  Pileup(ImmutableList<SAMRecord> queriedRecords, int[] readPositions, boolean countFragments) {
+    this(queriedRecords, readPositions, ImmutableList.of(), false, countFragments);
+  }
+
+  private Pileup(
+      ImmutableList<SAMRecord> queriedRecords,
+      int[] readPositions,
+      List<PileAllele> queriedAlleles,
+      boolean downsampled,
+      boolean countFragments) {
     super();
-    List<PileAllele> queriedAlleles = generateQueriedAlleles(position);
-    ImmutableSetMultimap.Builder<PileAllele, Integer> basePilesBuilder =
-        ImmutableSetMultimap.builder();
-    Map<PileAllele, Double> weightedDepth = Maps.newHashMap();
-    ImmutableMultiset.Builder<PileAllele> clippedReadCountsBuilder = ImmutableMultiset.builder();
-    ImmutableMultiset.Builder<PileAllele> unmappedMateCountsBuilder = ImmutableMultiset.builder();
-    for (int i = 0; i < queriedRecords.size(); i++) {
+    int reads = queriedRecords.size();
+    PileAllele[] readAlleles = new PileAllele[reads];
+    double[] readWeights = new double[reads];
+    int[] baseQualities = new int[reads];
+    int[] mappingQualities = new int[reads];
+    long retainedBytes = 0L;
+    for (int i = 0; i < reads; i++) {
       SAMRecord samRecord = queriedRecords.get(i);
-      int readPos = samRecord.getReadPositionAtReferencePosition(position.getPosition()) - 1;
+      retainedBytes += estimateRetainedBytes(samRecord);
+      int readPos = readPositions[i];
       if (readPos != -1) {
-        PileAllele allele =
-            queriedAlleles
-                .stream()
-                .filter(a -> a.supported(samRecord, readPos))
-                .findFirst()
-                .orElseGet(() -> getAppropriateAllele(samRecord, readPos));
+        readAlleles[i] = getAppropriateAllele(queriedAlleles, samRecord, readPos);
+        readWeights[i] = readAlleles[i].weightedDepth(samRecord, readPos);
+        baseQualities[i] = samRecord.getBaseQualities()[readPos];
+        mappingQualities[i] = samRecord.getMappingQuality();
+      }
+    }
+    if (countFragments)
+      reconcileMates(queriedRecords, readAlleles, readWeights, baseQualities, mappingQualities);
+    List<PileAllele> alleles = Lists.newArrayListWithCapacity(4);
+    int[] alleleCodes = new int[reads];
+    double[] weights = new double[reads];
+    int[] qualityIndices = new int[reads];
+    List<long[]> statisticSums = Lists.newArrayListWithCapacity(4);
+    ImmutableSetMultimap.Builder<PileAllele, Integer> basePilesBuilder =
+        ImmutableSetMultimap.builder();
+    int piled = 0;
+    for (int i = 0; i < reads; i++) {
+      PileAllele allele = readAlleles[i];
+      if (allele != null) {
+        SAMRecord samRecord = queriedRecords.get(i);
+        int code = alleles.indexOf(allele);
+        if (code == -1) {
+          code = alleles.size();
+          alleles.add(allele);
+          statisticSums.add(new long[ReadStatistic.ALL.size()]);
+        }
         basePilesBuilder.put(allele, i);
-        weightedDepth.put(
-            allele,
-            weightedDepth.getOrDefault(allele, 0.0) + allele.weightedDepth(samRecord, readPos));
-        if (samRecord.getCigar().isClipped()) clippedReadCountsBuilder.add(allele);
-        if (samRecord.getMateUnmappedFlag()) unmappedMateCountsBuilder.add(allele);
+        alleleCodes[piled] = code;
+        weights[piled] = readWeights[i];
+        qualityIndices[piled] = ReadLikelihoods.index(baseQualities[i], mappingQualities[i]);
+        ReadStatistic.accumulate(samRecord, readPositions[i], statisticSums.get(code));
+        piled++;
       }
     }
+    int alleleCount = alleles.size();
+    double[] alleleWeights = AlleleColumns.weightedDepths(alleleCodes, weights, piled, alleleCount);
+    AlleleLikelihoods[] alleleLikelihoods = new AlleleLikelihoods[alleleCount];
+    for (int code = 0; code < alleleCount; code++) {
+      alleleLikelihoods[code] = new AlleleLikelihoods();
+    }
+    for (int i = 0; i < piled; i++) {
+      alleleLikelihoods[alleleCodes[i]].add(qualityIndices[i]);
+    }
+    Map<PileAllele, Double> weightedDepth = Maps.newHashMapWithExpectedSize(alleleCount);
+    Map<PileAllele, AlleleLikelihoods> likelihoods = Maps.newHashMapWithExpectedSize(alleleCount);
+    ImmutableMap.Builder<PileAllele, long[]> statisticSumsBuilder =
+        ImmutableMap.builderWithExpectedSize(alleleCount);
+    for (int code = 0; code < alleleCount; code++) {
+      PileAllele allele = alleles.get(code);
+      weightedDepth.put(allele, alleleWeights[code]);
+      likelihoods.put(allele, alleleLikelihoods[code]);
+      statisticSumsBuilder.put(allele, statisticSums.get(code));
+    }
     basePiles = basePilesBuilder.build();
-    weightedBaseCounts =
-        ImmutableMap.<PileAllele, Double>builderWithExpectedSize(weightedDepth.size())
-            .putAll(weightedDepth)
-            .orderEntriesByValue(Comparator.reverseOrder())
-            .build();
-    clippedReadCounts = clippedReadCountsBuilder.build();
-    unmappedMateCounts = unmappedMateCountsBuilder.build();
+    summary =
+        new PileupSummary(
+            basePiles.keys(),
+            ImmutableMap.<PileAllele, Double>builderWithExpectedSize(weightedDepth.size())
+                .putAll(weightedDepth)
+                .orderEntriesByValue(Comparator.reverseOrder())
+                .build(),
+            statisticSumsBuilder.build(),
+            ImmutableMap.copyOf(likelihoods),
+            downsampled);
     this.queriedRecords = queriedRecords;
+    this.countFragments = countFragments;
+    this.estimatedRetainedBytes = retainedBytes + (long) basePiles.size() * PILED_READ_BYTES;
+  }
+
+  /**
+   * Count each pair of overlapping mates once. Mates supporting the same allele are kept as the
+   * first of them, with their base errors treated as independent; mates that disagree are kept as
+   * the more confident of them, with its confidence reduced. The other mate is dropped by clearing
+   * its allele.
+   */
+  private static void reconcileMates(
+      ImmutableList<SAMRecord> queriedRecords,
+      PileAllele[] readAlleles,
+      double[] readWeights,
+      int[] baseQualities,
+      int[] mappingQualities) {
+    ReadNameTable mates = new ReadNameTable(readAlleles.length);
+    for (int i = 0; i < readAlleles.length; i++) {
+      if (readAlleles[i] == null) continue;
+      SAMRecord samRecord = queriedRecords.get(i);
+      if (!samRecord.getReadPairedFlag() || samRecord.isSecondaryOrSupplementary()) continue;
+      int m = mates.putIfAbsent(samRecord.getReadName(), i);
+      if (m == -1) continue;
+      SAMRecord mate = queriedRecords.get(m);
+      if (readAlleles[m] == null
+          || mate.getFirstOfPairFlag() == samRecord.getFirstOfPairFlag()
+          || !mate.getReadName().equals(samRecord.getReadName())) continue;
+      if (readAlleles[m].equals(readAlleles[i])) {
+        readWeights[m] = 1.0 - (1.0 - readWeights[m]) * (1.0 - readWeights[i]);
+        baseQualities[m] += baseQualities[i];
+        mappingQualities[m] = Math.max(mappingQualities[m], mappingQualities[i]);
+        readAlleles[i] = null;
+      } else {
+        int kept = readWeights[i] > readWeights[m] ? i : m;
+        readWeights[kept] *= DISCORDANT_MATE_CONFIDENCE;
+        baseQualities[kept] = (int) (baseQualities[kept] * DISCORDANT_MATE_CONFIDENCE);
+        readAlleles[kept == i ? m : i] = null;
+      }
+    }
   }
 
-  private static PileAllele getAppropriateAllele(SAMRecord samRecord, int readPos) {
-    byte base = samRecord.getReadBases()[readPos];
-    return SNPAllele.of(base);
+  private static int[] readPositions(ImmutableList<SAMRecord> queriedRecords, int position) {
+    int[] readPositions = new int[queriedRecords.size()];
+    for (int i = 0; i < readPositions.length; i++) {
+      readPositions[i] = queriedRecords.get(i).getReadPositionAtReferencePosition(position) - 1;
+    }
+    return readPositions;
+  }
+
+  private static long estimateRetainedBytes(SAMRecord samRecord) {
+    return RECORD_OVERHEAD_BYTES
+        + 2L * samRecord.getReadLength()
+        + 2L * samRecord.getReadName().length()
+        + 32L * samRecord.getCigarLength();
+  }
+
+  private static PileAllele getAppropriateAllele(
+      List<PileAllele> queriedAlleles, SAMRecord samRecord, int readPos) {
+    for (int i = 0; i < queriedAlleles.size(); i++) {
+      if (queriedAlleles.get(i).supported(samRecord, readPos)) return queriedAlleles.get(i);
+    }
+    return SNPAllele.of(samRecord.getReadBases()[readPos]);
   }
 
   private static ImmutableList<PileAllele> generateQueriedAlleles(GenomePosition pos) {
@@ -77,9 +245,14 @@ public class Pileup {
     return queriedAllelesBuilder.build();
   }
 
+  /** @return the {@link PileupSummary} of this {@link Pileup} */
+  public PileupSummary getSummary() {
+    return summary;
+  }
+
   /** @return Multiset of {@link PileAllele} counts */
   public ImmutableMultiset<PileAllele> getBaseCounts() {
-    return basePiles.keys();
+    return summary.getBaseCounts();
   }
 
   /**
@@ -87,7 +260,7 @@ public class Pileup {
    *     in descending order of weighted base counts
    */
   public ImmutableMap<PileAllele, Double> getWeightedBaseCounts() {
-    return weightedBaseCounts;
+    return summary.getWeightedBaseCounts();
   }
 
   /** @return Multimap from {@link PileAllele} to index for the piled read */
@@ -95,19 +268,49 @@ public class Pileup {
     return basePiles;
   }
 
+  /**
+   * @param allele of this {@link Pileup}'s {@link Depth}
+   * @return indices of the piled records supporting allele
+   */
+  public ImmutableSet<Integer> allelicRecords(Depth.Allele allele) {
+    return allele.getAllele(getDepth()).map(basePiles::get).orElse(ImmutableSet.of());
+  }
+
   /** @return List of {@link SAMRecord}s piled up */
   public ImmutableList<SAMRecord> getRecords() {
     return queriedRecords;
   }
 
-  /** @return the clippedReadCounts */
-  public ImmutableMultiset<PileAllele> getClippedReadCounts() {
-    return clippedReadCounts;
+  /**
+   * @return Map from {@link PileAllele} to the {@link AlleleLikelihoods} summed over the reads
+   *     supporting it
+   */
+  public ImmutableMap<PileAllele, AlleleLikelihoods> getAlleleLikelihoods() {
+    return summary.getAlleleLikelihoods();
+  }
+
+  /** @return approximate heap retained by this {@link Pileup} and its records, in bytes */
+  public long getEstimatedRetainedBytes() {
+    return estimatedRetainedBytes;
   }
 
-  /** @return the unmappedMateCounts */
-  public ImmutableMultiset<PileAllele> getUnmappedMateCounts() {
-    return unmappedMateCounts;
+  /** @return true if overlapping mates are counted once, as a single fragment */
+  public boolean countsFragments() {
+    return countFragments;
+  }
+
+  /** @return true if the piled records are a sample of the records overlapping the position */
+  public boolean isDownsampled() {
+    return summary.isDownsampled();
+  }
+
+  /**
+   * @param allele {@link PileAllele} of this {@link Pileup}
+   * @param statistic {@link ReadStatistic} to get
+   * @return statistic summed over the piled reads supporting allele, 0 if allele was not piled
+   */
+  public long getReadStatisticSum(PileAllele allele, ReadStatistic statistic) {
+    return summary.getReadStatisticSum(allele, statistic);
   }
 
   /**
@@ -115,17 +318,10 @@ public class Pileup {
    *     {@link PileAllele}, iteration order is in descending order of weighted base fraction
    */
   public ImmutableMap<PileAllele, Double> getWeightedBaseFractions() {
-    final double weightedDepth =
-        weightedBaseCounts.values().stream().mapToDouble(Double::valueOf).sum();
-    return ImmutableMap.copyOf(Maps.transformValues(weightedBaseCounts, c -> c / weightedDepth));
-  }
-
-  private Depth setDepth() {
-    depth = Optional.of(new Depth(this));
-    return depth.get();
+    return summary.getWeightedBaseFractions();
   }
 
   public Depth getDepth() {
-    return depth.orElseGet(this::setDepth);
+    return summary.getDepth();
   }
 }
@@ -0,0 +1,129 @@
+package org.pankratzlab.supernovo.pileup;
+
+import java.util.Optional;
+import org.pankratzlab.supernovo.PileAllele;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Maps;
+
+/**
+ * Per-allele statistics of a {@link Pileup}, everything site level evaluation needs without the
+ * piled records themselves
+ */
+public class PileupSummary {
+
+  private final ImmutableMultiset<PileAllele> baseCounts;
+  private final ImmutableMap<PileAllele, Double> weightedBaseCounts;
+  private final ImmutableMap<PileAllele, long[]> readStatisticSums;
+  private final ImmutableMap<PileAllele, AlleleLikelihoods> alleleLikelihoods;
+  private final boolean downsampled;
+
+  private Optional<Depth> depth = Optional.empty();
+  private double weightedTotalDepth = Double.NaN;
+  private ImmutableMap<PileAllele, Double> weightedBaseFractions;
+
+  /**
+   * @param baseCounts count of piled reads supporting each {@link PileAllele}
+   * @param weightedBaseCounts weighted depth of each {@link PileAllele}, in descending order
+   * @param readStatisticSums sum of each {@link ReadStatistic}, indexed by ordinal, over the piled
+   *     reads supporting each {@link PileAllele}
+   * @param alleleLikelihoods {@link AlleleLikelihoods} of the reads supporting each {@link
+   *     PileAllele}
+   * @param downsampled true if the piled reads are a sample of the overlapping reads
+   */
+  public PileupSummary(
+      ImmutableMultiset<PileAllele> baseCounts,
+      ImmutableMap<PileAllele, Double> weightedBaseCounts,
+      ImmutableMap<PileAllele, long[]> readStatisticSums,
+      ImmutableMap<PileAllele, AlleleLikelihoods> alleleLikelihoods,
+      boolean downsampled) {
+    super();
+    this.baseCounts = baseCounts;
+    this.weightedBaseCounts = weightedBaseCounts;
+    this.readStatisticSums = readStatisticSums;
+    this.alleleLikelihoods = alleleLikelihoods;
+    this.downsampled = downsampled;
+  }
+
+  /** @return Multiset of {@link PileAllele} counts */
+  public ImmutableMultiset<PileAllele> getBaseCounts() {
+    return baseCounts;
+  }
+
+  /**
+   * @return Map from {@link PileAllele} to weighted depth for that PileAllele, iteration order is
+   *     in descending order of weighted base counts
+   */
+  public ImmutableMap<PileAllele, Double> getWeightedBaseCounts() {
+    return weightedBaseCounts;
+  }
+
+  /**
+   * @param allele {@link PileAllele} of this summary
+   * @param statistic {@link ReadStatistic} to get
+   * @return statistic summed over the piled reads supporting allele, 0 if allele was not piled
+   */
+  public long getReadStatisticSum(PileAllele allele, ReadStatistic statistic) {
+    long[] sums = readStatisticSums.get(allele);
+    return sums == null ? 0L : sums[statistic.ordinal()];
+  }
+
+  /**
+   * @param allele {@link PileAllele} of this summary
+   * @param statistic {@link ReadStatistic} to get
+   * @return mean of statistic over the piled reads supporting allele, absent if there are none
+   */
+  public Optional<Double> getReadStatisticMean(PileAllele allele, ReadStatistic statistic) {
+    int reads = baseCounts.count(allele);
+    if (reads == 0) return Optional.empty();
+    return Optional.of((double) getReadStatisticSum(allele, statistic) / reads);
+  }
+
+  /**
+   * @return Map from {@link PileAllele} to the {@link AlleleLikelihoods} summed over the reads
+   *     supporting it
+   */
+  public ImmutableMap<PileAllele, AlleleLikelihoods> getAlleleLikelihoods() {
+    return alleleLikelihoods;
+  }
+
+  /** @return true if the piled records are a sample of the records overlapping the position */
+  public boolean isDownsampled() {
+    return downsampled;
+  }
+
+  /**
+   * @return Map from {@link PileAllele} to weighted fraction of total weighted depth for that
+   *     {@link PileAllele}, iteration order is in descending order of weighted base fraction
+   */
+  public ImmutableMap<PileAllele, Double> getWeightedBaseFractions() {
+    if (weightedBaseFractions == null) {
+      final double weightedDepth = getWeightedTotalDepth();
+      weightedBaseFractions =
+          ImmutableMap.copyOf(Maps.transformValues(weightedBaseCounts, c -> c / weightedDepth));
+    }
+    return weightedBaseFractions;
+  }
+
+  /** @return the weighted depth summed over every {@link PileAllele} */
+  public double getWeightedTotalDepth() {
+    if (Double.isNaN(weightedTotalDepth)) {
+      double[] weightedDepths = new double[weightedBaseCounts.size()];
+      int i = 0;
+      for (double weightedDepth : weightedBaseCounts.values()) {
+        weightedDepths[i++] = weightedDepth;
+      }
+      weightedTotalDepth = AlleleColumns.sum(weightedDepths);
+    }
+    return weightedTotalDepth;
+  }
+
+  private Depth setDepth() {
+    depth = Optional.of(new Depth(this));
+    return depth.get();
+  }
+
+  public Depth getDepth() {
+    return depth.orElseGet(this::setDepth);
+  }
+}
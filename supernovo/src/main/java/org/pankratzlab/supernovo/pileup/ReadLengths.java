@@ -0,0 +1,32 @@
+package org.pankratzlab.supernovo.pileup;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+
+/** Read length of a BAM, derived from its records rather than assumed */
+public final class ReadLengths {
+
+  private ReadLengths() {}
+
+  /**
+   * @param reader {@link SamReader} to sample
+   * @param sampleSize number of primary mapped records to sample from the start of reader
+   * @return length of the longest sampled read, 0 if there are no primary mapped records
+   */
+  public static int longest(SamReader reader, int sampleSize) {
+    int longest = 0;
+    int sampled = 0;
+    try (SAMRecordIterator iterator = reader.iterator()) {
+      while (sampled < sampleSize && iterator.hasNext()) {
+        SAMRecord record = iterator.next();
+        if (record.getReadUnmappedFlag()
+            || record.isSecondaryOrSupplementary()
+            || record.getReadLength() == 0) continue;
+        longest = Integer.max(longest, record.getReadLength());
+        sampled++;
+      }
+    }
+    return longest;
+  }
+}
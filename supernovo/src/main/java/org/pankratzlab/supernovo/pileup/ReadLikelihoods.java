@@ -0,0 +1,62 @@
+package org.pankratzlab.supernovo.pileup;
+
+import org.pankratzlab.supernovo.utilities.Phred;
+
+/**
+ * Precomputed log10 likelihoods of observing a read's allele given the number of copies of that
+ * allele in the sampled genotype, indexed by base and mapping quality. The error rate of a read is
+ * the complement of the same base and mapping quality accuracy product used for weighted depth.
+ */
+public final class ReadLikelihoods {
+
+  private static final int QUALITY_BITS = 6;
+  private static final int MAX_QUALITY = (1 << QUALITY_BITS) - 1;
+  /** At this error rate a read is equally likely under every genotype */
+  private static final double MAX_ERROR = 0.75;
+
+  private static final double[] HOM_MATCH = new double[1 << (QUALITY_BITS * 2)];
+  private static final double[] HET_MATCH = new double[HOM_MATCH.length];
+  private static final double[] MISMATCH = new double[HOM_MATCH.length];
+
+  static {
+    for (int baseQuality = 0; baseQuality <= MAX_QUALITY; baseQuality++) {
+      for (int mappingQuality = 0; mappingQuality <= MAX_QUALITY; mappingQuality++) {
+        double error =
+            Math.min(
+                MAX_ERROR,
+                1.0 - Phred.getAccuracy(baseQuality) * Phred.getAccuracy(mappingQuality));
+        int i = index(baseQuality, mappingQuality);
+        HOM_MATCH[i] = Math.log10(1.0 - error);
+        HET_MATCH[i] = Math.log10((1.0 - error) / 2.0 + error / 6.0);
+        MISMATCH[i] = Math.log10(error / 3.0);
+      }
+    }
+  }
+
+  private ReadLikelihoods() {}
+
+  /**
+   * @param baseQuality phred scaled base quality
+   * @param mappingQuality phred scaled mapping quality
+   * @return index into the likelihood tables
+   */
+  public static int index(int baseQuality, int mappingQuality) {
+    return (Math.min(Math.max(baseQuality, 0), MAX_QUALITY) << QUALITY_BITS)
+        | Math.min(Math.max(mappingQuality, 0), MAX_QUALITY);
+  }
+
+  /** @return log10 likelihood of a read allele under a genotype homozygous for it */
+  public static double homMatch(int index) {
+    return HOM_MATCH[index];
+  }
+
+  /** @return log10 likelihood of a read allele under a genotype heterozygous for it */
+  public static double hetMatch(int index) {
+    return HET_MATCH[index];
+  }
+
+  /** @return log10 likelihood of a read allele under a genotype without it */
+  public static double mismatch(int index) {
+    return MISMATCH[index];
+  }
+}
@@ -0,0 +1,60 @@
+package org.pankratzlab.supernovo.pileup;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing table from 64-bit read name hashes to read indices, held in primitive arrays so
+ * the reads of a pileup can be matched to their mates without building a String keyed map. Callers
+ * compare the names of the reads matched, so a hash collision can only hide a mate, never pair two
+ * unrelated reads.
+ */
+final class ReadNameTable {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final int EMPTY = -1;
+
+  private final long[] hashes;
+  private final int[] indices;
+  private final int mask;
+
+  /** @param reads maximum number of reads that will be added */
+  ReadNameTable(int reads) {
+    int capacity = Integer.highestOneBit(Math.max(2, reads) * 2 - 1) << 1;
+    this.hashes = new long[capacity];
+    this.indices = new int[capacity];
+    Arrays.fill(indices, EMPTY);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @param readName name of read
+   * @param index of read
+   * @return index of the read already added with the hash of readName, -1 if there is none and
+   *     index was added
+   */
+  int putIfAbsent(String readName, int index) {
+    long hash = hash(readName);
+    int slot = (int) hash & mask;
+    while (indices[slot] != EMPTY) {
+      if (hashes[slot] == hash) return indices[slot];
+      slot = (slot + 1) & mask;
+    }
+    hashes[slot] = hash;
+    indices[slot] = index;
+    return EMPTY;
+  }
+
+  /** @return FNV-1a hash of the characters of name, finished with the MurmurHash3 mixer */
+  static long hash(String name) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ hash >>> 33;
+  }
+}
@@ -0,0 +1,92 @@
+package org.pankratzlab.supernovo.pileup;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Per-read statistics accumulated for each allele of a {@link Pileup} in the single pass over its
+ * reads, each summed into a primitive per-allele accumulator and output as a pair of a1/a2
+ * columns. A statistic is added by adding a constant here, which changes the layout of site
+ * summary stores.
+ */
+public enum ReadStatistic {
+  CLIPPED_READS("ClippedReads", Reduction.COUNT) {
+    @Override
+    long value(SAMRecord record, int readPos) {
+      return record.getCigar().isClipped() ? 1 : 0;
+    }
+  },
+  UNMAPPED_MATE_READS("UnmappedMateReads", Reduction.COUNT) {
+    @Override
+    long value(SAMRecord record, int readPos) {
+      return record.getMateUnmappedFlag() ? 1 : 0;
+    }
+  },
+  REVERSE_STRAND_READS("ReverseStrandReads", Reduction.COUNT) {
+    @Override
+    long value(SAMRecord record, int readPos) {
+      return record.getReadNegativeStrandFlag() ? 1 : 0;
+    }
+  },
+  MAPPING_QUALITY("MeanMappingQuality", Reduction.MEAN) {
+    @Override
+    long value(SAMRecord record, int readPos) {
+      return record.getMappingQuality();
+    }
+  },
+  READ_END_DISTANCE("MeanReadEndDistance", Reduction.MEAN) {
+    @Override
+    long value(SAMRecord record, int readPos) {
+      return Math.min(readPos, record.getReadLength() - 1 - readPos);
+    }
+  };
+
+  /** How the accumulated sum of a {@link ReadStatistic} is reported */
+  public enum Reduction {
+    /** The sum itself, for statistics that flag reads */
+    COUNT,
+    /** The sum divided by the number of reads supporting the allele */
+    MEAN;
+  }
+
+  /** Every {@link ReadStatistic}, in accumulator order */
+  public static final ImmutableList<ReadStatistic> ALL = ImmutableList.copyOf(values());
+
+  private final String columnName;
+  private final Reduction reduction;
+
+  private ReadStatistic(String columnName, Reduction reduction) {
+    this.columnName = columnName;
+    this.reduction = reduction;
+  }
+
+  /**
+   * @param record piled read
+   * @param readPos 0-based offset of the piled position in record
+   * @return value of this statistic for record, added to the accumulator of the allele it supports
+   */
+  abstract long value(SAMRecord record, int readPos);
+
+  /**
+   * Add every {@link ReadStatistic} of a read to an allele's accumulators
+   *
+   * @param record piled read
+   * @param readPos 0-based offset of the piled position in record
+   * @param sums accumulators of the allele record supports, indexed by ordinal
+   */
+  static void accumulate(SAMRecord record, int readPos, long[] sums) {
+    for (int i = 0; i < sums.length; i++) {
+      sums[i] += ALL.get(i).value(record, readPos);
+    }
+  }
+
+  /** @return the suffix of the a1/a2 output columns of this statistic */
+  public String getColumnName() {
+    return columnName;
+  }
+
+  /** @return the {@link Reduction} of this statistic */
+  public Reduction getReduction() {
+    return reduction;
+  }
+}
@@ -1,5 +1,7 @@
 package org.pankratzlab.supernovo.pileup;
 
+import java.util.Arrays;
+import java.util.Random;
 import org.pankratzlab.supernovo.ReferencePosition;
 import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMRecord;
@@ -9,17 +11,71 @@ import htsjdk.samtools.SamReader;
 public class SAMPositionOverlap {
 
   private final ImmutableList<SAMRecord> records;
+  private final int overlappingRecordCount;
 
   public SAMPositionOverlap(SamReader samReader, ReferencePosition position) {
+    this(samReader, position, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param samReader to query
+   * @param position to query overlapping records of
+   * @param maxRecords overlapping records beyond this are downsampled to a uniform sample of this
+   *     many, in their original order and seeded by position so repeated queries agree. Every
+   *     overlapping record is read so the sample does not depend on where records start; only
+   *     the sample is retained and evaluated.
+   */
+  public SAMPositionOverlap(SamReader samReader, ReferencePosition position, int maxRecords) {
+    SAMRecord[] sample = new SAMRecord[Math.min(maxRecords, 1024)];
+    int[] sampleIndices = new int[sample.length];
+    Random random = new Random(31L * position.getContig().hashCode() + position.getPosition());
+    int seen = 0;
     try (SAMRecordIterator iterator =
         samReader.queryOverlapping(
             position.getContig(), position.getPosition(), position.getPosition())) {
-      records = iterator.stream().collect(ImmutableList.toImmutableList());
+      while (iterator.hasNext()) {
+        SAMRecord record = iterator.next();
+        int slot = seen < maxRecords ? seen : random.nextInt(seen + 1);
+        if (slot < maxRecords) {
+          if (slot >= sample.length) {
+            int grown = (int) Math.min(maxRecords, sample.length * 2L);
+            sample = Arrays.copyOf(sample, grown);
+            sampleIndices = Arrays.copyOf(sampleIndices, grown);
+          }
+          sample[slot] = record;
+          sampleIndices[slot] = seen;
+        }
+        seen++;
+      }
+    }
+    overlappingRecordCount = seen;
+    records =
+        seen > maxRecords
+            ? inOriginalOrder(sample, sampleIndices, maxRecords)
+            : ImmutableList.copyOf(Arrays.asList(sample).subList(0, seen));
+  }
+
+  private static ImmutableList<SAMRecord> inOriginalOrder(
+      SAMRecord[] sample, int[] sampleIndices, int size) {
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(sampleIndices[a], sampleIndices[b]));
+    ImmutableList.Builder<SAMRecord> ordered = ImmutableList.builderWithExpectedSize(size);
+    for (Integer i : order) {
+      ordered.add(sample[i]);
     }
+    return ordered.build();
   }
 
   /** @return the records */
   public ImmutableList<SAMRecord> getRecords() {
     return records;
   }
+
+  /** @return true if the overlapping records were downsampled */
+  public boolean isDownsampled() {
+    return overlappingRecordCount > records.size();
+  }
 }
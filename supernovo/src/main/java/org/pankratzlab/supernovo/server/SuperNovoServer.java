@@ -0,0 +1,270 @@
+package org.pankratzlab.supernovo.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.TrioEvaluator;
+import org.pankratzlab.supernovo.output.DeNovoResult;
+import org.pankratzlab.supernovo.output.OutputFields;
+import org.pankratzlab.supernovo.utilities.LatencyHistogram;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Long-lived query server that keeps a pool of {@link TrioEvaluator}s, each with its own open
+ * readers and warm pileup caches, and answers requests over a loopback TCP socket.
+ *
+ * <p>The protocol is line based. On connect the server sends the output header prefixed with
+ * {@code #}. Each request is one of:
+ *
+ * <ul>
+ *   <li>{@code SITE <chr> <pos> <ref> <alt>} evaluate a single site of the VCF, if it is a
+ *       candidate as in batch mode
+ *   <li>{@code REGION <chr> <start> <stop>} evaluate every candidate in the VCF within a region
+ *   <li>{@code STATS} report per-request latency metrics
+ *   <li>{@code SHUTDOWN <token>} stop the server, only when it was created with that token
+ * </ul>
+ *
+ * Each response is zero or more {@link DeNovoResult} rows followed by {@code #OK <rows>
+ * <microseconds>} or {@code #ERROR <message>}.
+ */
+public class SuperNovoServer {
+
+  /** A {@link TrioEvaluator} and the VCF reader used to resolve region queries for it */
+  public static class Worker {
+    private final TrioEvaluator evaluator;
+    private final VCFFileReader vcfReader;
+
+    /**
+     * @param evaluator {@link TrioEvaluator} with readers owned by this worker
+     * @param vcfReader indexed {@link VCFFileReader} owned by this worker
+     */
+    public Worker(TrioEvaluator evaluator, VCFFileReader vcfReader) {
+      super();
+      this.evaluator = evaluator;
+      this.vcfReader = vcfReader;
+    }
+  }
+
+  private static final Splitter REQUEST_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+
+  private final BlockingQueue<Worker> workers;
+  private final int port;
+  private final Optional<String> shutdownToken;
+  private final Map<String, LatencyHistogram> latencies = Maps.newConcurrentMap();
+  private final ExecutorService connections =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("supernovo-connection-%d")
+              .setDaemon(true)
+              .build());
+
+  private volatile ServerSocket serverSocket;
+
+  /**
+   * @param workers {@link Worker}s to serve requests with, one request is served per worker at a
+   *     time
+   * @param port loopback port to listen on, 0 to pick a free port
+   * @param shutdownToken token a {@code SHUTDOWN} request must give to stop the server, absent to
+   *     refuse every {@code SHUTDOWN} request
+   */
+  public SuperNovoServer(List<Worker> workers, int port, Optional<String> shutdownToken) {
+    super();
+    this.workers = new ArrayBlockingQueue<>(workers.size(), false, workers);
+    this.port = port;
+    this.shutdownToken = shutdownToken;
+  }
+
+  /**
+   * Accept and serve connections until a {@code SHUTDOWN} request is received
+   *
+   * @throws IOException
+   */
+  public void serve() throws IOException {
+    try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      serverSocket = socket;
+      System.err.println("SuperNovo server listening on port " + socket.getLocalPort());
+      while (!socket.isClosed()) {
+        try {
+          Socket connection = socket.accept();
+          connections.execute(() -> handle(connection));
+        } catch (SocketException e) {
+          if (!socket.isClosed()) throw e;
+        }
+      }
+    } finally {
+      connections.shutdownNow();
+    }
+  }
+
+  private void handle(Socket connection) {
+    try (Socket socket = connection;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out =
+            new PrintWriter(
+                new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))) {
+      out.println("#" + OutputFields.generateHeader(DeNovoResult.class));
+      out.flush();
+      String request;
+      while ((request = in.readLine()) != null) {
+        if (!respond(request, out)) break;
+        out.flush();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private boolean respond(String request, PrintWriter out) {
+    long start = System.nanoTime();
+    List<String> args = REQUEST_SPLITTER.splitToList(request.trim());
+    if (args.isEmpty()) return true;
+    String command = args.get(0).toUpperCase();
+    try {
+      final List<DeNovoResult> results;
+      switch (command) {
+        case "SITE":
+          results = querySite(args);
+          break;
+        case "REGION":
+          results = queryRegion(args);
+          break;
+        case "STATS":
+          latencies.forEach((type, hist) -> out.println("#" + type + " " + hist.summary()));
+          out.println("#OK 0 " + elapsedMicros(start));
+          return true;
+        case "SHUTDOWN":
+          checkShutdownToken(args);
+          out.println("#OK 0 " + elapsedMicros(start));
+          out.flush();
+          shutdown();
+          return false;
+        default:
+          throw new IllegalArgumentException("Unknown request " + command);
+      }
+      results.stream().map(DeNovoResult::generateLine).forEachOrdered(out::println);
+      long nanos = System.nanoTime() - start;
+      latencies.computeIfAbsent(command, c -> new LatencyHistogram()).record(nanos);
+      out.println("#OK " + results.size() + " " + nanos / 1000);
+    } catch (RuntimeException e) {
+      out.println("#ERROR " + e.getMessage());
+    }
+    return true;
+  }
+
+  private void checkShutdownToken(List<String> args) {
+    if (!shutdownToken.isPresent())
+      throw new IllegalArgumentException("SHUTDOWN is not enabled on this server");
+    if (args.size() != 2) throw new IllegalArgumentException("Usage: SHUTDOWN <token>");
+    if (!MessageDigest.isEqual(
+        shutdownToken.get().getBytes(StandardCharsets.UTF_8),
+        args.get(1).getBytes(StandardCharsets.UTF_8)))
+      throw new IllegalArgumentException("Invalid shutdown token");
+  }
+
+  private List<DeNovoResult> querySite(List<String> args) {
+    if (args.size() != 5)
+      throw new IllegalArgumentException("Usage: SITE <chr> <pos> <ref> <alt>");
+    String contig = args.get(1);
+    int position = Integer.parseInt(args.get(2));
+    Allele ref = Allele.create(args.get(3), true);
+    Allele alt = Allele.create(args.get(4), false);
+    return withWorker(
+        worker -> {
+          ImmutableList.Builder<DeNovoResult> results = ImmutableList.builder();
+          try (CloseableIterator<VariantContext> variants =
+              worker.vcfReader.query(contig, position, position)) {
+            while (variants.hasNext()) {
+              VariantContext vc = variants.next();
+              if (vc.getStart() != position || !vc.getReference().equals(ref)) continue;
+              worker
+                  .evaluator
+                  .candidatePosition(vc)
+                  .filter(pos -> pos.equals(queriedPosition(pos, vc, alt)))
+                  .flatMap(worker.evaluator::evaluate)
+                  .ifPresent(results::add);
+            }
+          }
+          return results.build();
+        });
+  }
+
+  private static ReferencePosition queriedPosition(
+      ReferencePosition candidate, VariantContext vc, Allele alt) {
+    return ReferencePosition.fromAlleles(
+        vc.getContig(), candidate.getContigIndex(), vc.getStart(), vc.getReference(), alt);
+  }
+
+  private List<DeNovoResult> queryRegion(List<String> args) {
+    if (args.size() != 4)
+      throw new IllegalArgumentException("Usage: REGION <chr> <start> <stop>");
+    String contig = args.get(1);
+    int start = Integer.parseInt(args.get(2));
+    int stop = Integer.parseInt(args.get(3));
+    return withWorker(
+        worker -> {
+          ImmutableList.Builder<DeNovoResult> results = ImmutableList.builder();
+          try (CloseableIterator<VariantContext> variants =
+              worker.vcfReader.query(contig, start, stop)) {
+            while (variants.hasNext()) {
+              worker.evaluator.evaluate(variants.next()).ifPresent(results::add);
+            }
+          }
+          return results.build();
+        });
+  }
+
+  private <T> T withWorker(Function<Worker, T> query) {
+    final Worker worker;
+    try {
+      worker = workers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    try {
+      return query.apply(worker);
+    } finally {
+      workers.add(worker);
+    }
+  }
+
+  private void shutdown() {
+    try {
+      if (serverSocket != null) serverSocket.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static long elapsedMicros(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1000;
+  }
+}
@@ -0,0 +1,146 @@
+package org.pankratzlab.supernovo.sites;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.Contigs;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import htsjdk.variant.variantcontext.Allele;
+
+/**
+ * Memory-mapped manifest of the candidate sites of a child, in VCF order, as compiled by {@link
+ * SiteManifestBuilder}. Sites are fixed width records, so any range of sites can be read by index
+ * without reading the VCF or the sites before it.
+ *
+ * <p>Layout: header (magic, version, child id, contig names, site count, allele count) padded to 8
+ * bytes, followed by the packed position of each site as longs, the offset of each allele of the
+ * allele table and the end of the last as longs, the allele table indices of the ref and alt of
+ * each site as ints and the bases of the allele table.
+ */
+public class SiteManifest {
+
+  static final int MAGIC = 0x534e534d;
+  static final int VERSION = 1;
+
+  private final String childID;
+  private final ImmutableList<String> contigs;
+  private final MappedFile mapped;
+  private final long siteCount;
+  private final long keysOffset;
+  private final long alleleOffsetsOffset;
+  private final long siteAllelesOffset;
+  private final long basesOffset;
+
+  private SiteManifest(
+      String childID,
+      ImmutableList<String> contigs,
+      MappedFile mapped,
+      long siteCount,
+      int alleleCount,
+      long dataOffset) {
+    this.childID = childID;
+    this.contigs = contigs;
+    this.mapped = mapped;
+    this.siteCount = siteCount;
+    this.keysOffset = dataOffset;
+    this.alleleOffsetsOffset = keysOffset + siteCount * Long.BYTES;
+    this.siteAllelesOffset = alleleOffsetsOffset + (alleleCount + 1L) * Long.BYTES;
+    this.basesOffset = siteAllelesOffset + siteCount * 2L * Integer.BYTES;
+  }
+
+  public static SiteManifest load(File manifestFile) throws IOException {
+    final String childID;
+    final long siteCount;
+    final int alleleCount;
+    final long headerLength;
+    ImmutableList.Builder<String> contigs = ImmutableList.builder();
+    try (CountingInputStream counting =
+            new CountingInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+        DataInputStream in = new DataInputStream(counting)) {
+      if (in.readInt() != MAGIC) throw new IOException(manifestFile + " is not a site manifest");
+      int version = in.readInt();
+      if (version != VERSION) throw new IOException("Unsupported site manifest version " + version);
+      childID = in.readUTF();
+      int contigCount = in.readInt();
+      for (int i = 0; i < contigCount; i++) {
+        contigs.add(in.readUTF());
+      }
+      siteCount = in.readLong();
+      alleleCount = in.readInt();
+      headerLength = counting.getCount();
+    }
+    return new SiteManifest(
+        childID,
+        contigs.build(),
+        MappedFile.map(manifestFile),
+        siteCount,
+        alleleCount,
+        MappedFile.align(headerLength));
+  }
+
+  /** @return the id of the child the sites are candidates of */
+  public String getChildID() {
+    return childID;
+  }
+
+  /** @return the number of sites */
+  public long size() {
+    return siteCount;
+  }
+
+  /**
+   * @param index of a site
+   * @param resolveContigs {@link Contigs} to resolve the site against
+   * @return the site at index, absent if its contig is not one of resolveContigs
+   */
+  public Optional<ReferencePosition> site(long index, Contigs resolveContigs) {
+    if (index < 0 || index >= siteCount)
+      throw new IndexOutOfBoundsException("Site " + index + " of " + siteCount);
+    long key = mapped.getLong(keysOffset + index * Long.BYTES);
+    String contig = contigs.get(PackedPosition.contigIndex(key));
+    int contigIndex = resolveContigs.indexOf(contig);
+    if (contigIndex == Contigs.UNKNOWN) return Optional.empty();
+    long alleles = siteAllelesOffset + index * 2L * Integer.BYTES;
+    return Optional.of(
+        ReferencePosition.fromAlleles(
+            contig,
+            contigIndex,
+            PackedPosition.position(key),
+            Allele.create(alleleBases(mapped.getInt(alleles)), true),
+            Allele.create(alleleBases(mapped.getInt(alleles + Integer.BYTES)), false)));
+  }
+
+  /**
+   * @param first index of the first site
+   * @param end index after the last site
+   * @param resolveContigs {@link Contigs} to resolve the sites against
+   * @return Stream of the sites from first to end, in order, without those whose contig is not
+   *     one of resolveContigs
+   */
+  public Stream<ReferencePosition> sites(long first, long end, Contigs resolveContigs) {
+    if (first < 0 || first > end || end > siteCount)
+      throw new IndexOutOfBoundsException(
+          "Sites " + first + " to " + end + " of " + siteCount + " sites");
+    return LongStream.range(first, end)
+        .mapToObj(i -> site(i, resolveContigs))
+        .filter(Optional::isPresent)
+        .map(Optional::get);
+  }
+
+  private byte[] alleleBases(int allele) {
+    long offset = alleleOffsetsOffset + (long) allele * Long.BYTES;
+    long start = mapped.getLong(offset);
+    byte[] bases = new byte[(int) (mapped.getLong(offset + Long.BYTES) - start)];
+    mapped.get(basesOffset + start, bases);
+    return bases;
+  }
+}
@@ -0,0 +1,144 @@
+package org.pankratzlab.supernovo.sites;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import org.pankratzlab.supernovo.TrioEvaluator;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import org.pankratzlab.supernovo.utilities.PackedPosition;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Compiles the candidate sites of a child in a VCF, those {@link TrioEvaluator} would evaluate,
+ * into a {@link SiteManifest}. Sites are written as they are read so memory use depends only on
+ * the number of distinct alleles. The manifest is written beside output and moved into place, so a
+ * failed build never leaves a partial manifest at output.
+ */
+@Command(name = "prepare", description = "Compile the candidate sites of a VCF into a manifest")
+public class SiteManifestBuilder implements Runnable {
+
+  @Option(
+    names = {"--vcf", "-v"},
+    paramLabel = "VCF",
+    description = "VCF with genotypes for the child",
+    required = true
+  )
+  private File vcf;
+
+  @Option(
+    names = {"--childID", "--cID"},
+    paramLabel = "ID",
+    description = "ID of the child in the VCF",
+    required = true
+  )
+  private String childID;
+
+  @Option(
+    names = {"--output", "-o"},
+    paramLabel = "FILE",
+    description = "Output site manifest",
+    required = true
+  )
+  private File output;
+
+  @Override
+  public void run() {
+    try {
+      build(vcf, childID, output);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public static void build(File vcf, String childID, File output) throws IOException {
+    Map<String, Integer> contigIndices = Maps.newLinkedHashMap();
+    Map<ByteBuffer, Integer> alleleIndices = Maps.newLinkedHashMap();
+    File tmpDir = output.getAbsoluteFile().getParentFile();
+    File keysFile = File.createTempFile(output.getName(), ".keys", tmpDir);
+    File allelesFile = File.createTempFile(output.getName(), ".alleles", tmpDir);
+    long siteCount = 0;
+    try {
+      try (VCFFileReader reader = new VCFFileReader(vcf, false);
+          CloseableIterator<VariantContext> iterator = reader.iterator();
+          DataOutputStream keys = dataOutput(keysFile);
+          DataOutputStream alleles = dataOutput(allelesFile)) {
+        while (iterator.hasNext()) {
+          VariantContext vc = iterator.next();
+          Optional<Allele> alt = TrioEvaluator.candidateAltAllele(vc, childID);
+          if (!alt.isPresent()) continue;
+          Integer contigIndex = contigIndices.get(vc.getContig());
+          if (contigIndex == null) {
+            contigIndex = contigIndices.size();
+            contigIndices.put(vc.getContig(), contigIndex);
+          }
+          keys.writeLong(PackedPosition.pack(contigIndex, vc.getStart()));
+          alleles.writeInt(alleleIndex(alleleIndices, vc.getReference()));
+          alleles.writeInt(alleleIndex(alleleIndices, alt.get()));
+          siteCount++;
+        }
+      }
+      File tmp = File.createTempFile(output.getName(), ".tmp", tmpDir);
+      try (CountingOutputStream counting =
+              new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+          DataOutputStream out = new DataOutputStream(counting)) {
+        out.writeInt(SiteManifest.MAGIC);
+        out.writeInt(SiteManifest.VERSION);
+        out.writeUTF(childID);
+        out.writeInt(contigIndices.size());
+        for (String contig : contigIndices.keySet()) {
+          out.writeUTF(contig);
+        }
+        out.writeLong(siteCount);
+        out.writeInt(alleleIndices.size());
+        long padding = MappedFile.align(counting.getCount()) - counting.getCount();
+        for (long i = 0; i < padding; i++) out.writeByte(0);
+        Files.copy(keysFile.toPath(), out);
+        long alleleOffset = 0;
+        out.writeLong(alleleOffset);
+        for (ByteBuffer bases : alleleIndices.keySet()) {
+          alleleOffset += bases.remaining();
+          out.writeLong(alleleOffset);
+        }
+        Files.copy(allelesFile.toPath(), out);
+        for (ByteBuffer bases : alleleIndices.keySet()) {
+          out.write(bases.array());
+        }
+      } catch (IOException e) {
+        tmp.delete();
+        throw e;
+      }
+      try {
+        Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      keysFile.delete();
+      allelesFile.delete();
+    }
+  }
+
+  private static int alleleIndex(Map<ByteBuffer, Integer> alleleIndices, Allele allele) {
+    return alleleIndices.computeIfAbsent(
+        ByteBuffer.wrap(allele.getBases()), bases -> alleleIndices.size());
+  }
+
+  private static DataOutputStream dataOutput(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+  }
+}
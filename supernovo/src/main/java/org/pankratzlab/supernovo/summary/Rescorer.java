@@ -0,0 +1,108 @@
+package org.pankratzlab.supernovo.summary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import org.pankratzlab.supernovo.CallingThresholds;
+import org.pankratzlab.supernovo.ThresholdOptions;
+import org.pankratzlab.supernovo.output.DeNovoResult;
+import org.pankratzlab.supernovo.output.DeNovoResultWriter;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+/**
+ * Regenerates {@link DeNovoResult} output from a {@link SiteSummaryReader} store under new {@link
+ * CallingThresholds}, without reading the BAMs
+ */
+@Command(
+  name = "rescore",
+  description = "Rescore a site summary store under new thresholds without reading the BAMs"
+)
+public class Rescorer implements Runnable {
+
+  @Option(
+    names = {"--summaries", "-s"},
+    paramLabel = "FILE",
+    description = "Site summary store written with --summaryStore",
+    required = true
+  )
+  private File summaries;
+
+  @Option(
+    names = {"--output", "-o"},
+    paramLabel = "FILE",
+    description = "Output file, BGZF with a tabix index when ending in .gz or .bgz",
+    required = true
+  )
+  private File output;
+
+  @Option(
+    names = {"--minDeNovoPosterior"},
+    paramLabel = "P",
+    description =
+        "Only report sites with at least this trio likelihood de novo posterior "
+            + "(default: ${DEFAULT-VALUE})"
+  )
+  private double minDeNovoPosterior = 0.0;
+
+  @Mixin private ThresholdOptions thresholdOptions = new ThresholdOptions();
+
+  @Override
+  public void run() {
+    try {
+      rescore(
+          SiteSummaryReader.load(summaries),
+          thresholdOptions.toThresholds(),
+          minDeNovoPosterior,
+          output);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @param store {@link SiteSummaryReader} of sites to rescore
+   * @param thresholds {@link CallingThresholds} to score sites against
+   * @param minDeNovoPosterior sites with a lower de novo posterior are not reported
+   * @param output file to write {@link DeNovoResult}s to
+   * @throws IOException
+   */
+  public static void rescore(
+      SiteSummaryReader store,
+      CallingThresholds thresholds,
+      double minDeNovoPosterior,
+      File output)
+      throws IOException {
+    try (DeNovoResultWriter writer =
+        DeNovoResultWriter.open(
+            output,
+            Optional.empty(),
+            1,
+            BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL,
+            Optional.empty())) {
+      store
+          .stream()
+          .map(
+              evidence ->
+                  evidence.score(
+                      thresholds,
+                      store.getChildID(),
+                      store.getParent1ID(),
+                      store.getParent2ID()))
+          .filter(Optional::isPresent)
+          .map(Optional::get)
+          .filter(result -> !(result.deNovoPosterior < minDeNovoPosterior))
+          .forEachOrdered(
+              result -> {
+                try {
+                  writer.write(result);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package org.pankratzlab.supernovo.summary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.pankratzlab.supernovo.HaplotypeEvaluator;
+import org.pankratzlab.supernovo.PileAllele;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.SNPAllele;
+import org.pankratzlab.supernovo.SiteBudget;
+import org.pankratzlab.supernovo.SiteEvidence;
+import org.pankratzlab.supernovo.pileup.AlleleLikelihoods;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import org.pankratzlab.supernovo.pileup.ReadStatistic;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.io.CountingInputStream;
+import htsjdk.variant.variantcontext.Allele;
+
+/**
+ * Memory-mapped store of {@link SiteEvidence} written by {@link SiteSummaryWriter}. Records are
+ * located through the mapped offsets and decoded on demand.
+ */
+public class SiteSummaryReader {
+
+  private final String childID;
+  private final String parent1ID;
+  private final String parent2ID;
+  private final ImmutableList<String> contigs;
+  private final MappedFile mapped;
+  private final long recordCount;
+  private final long offsetsOffset;
+  private final long recordsOffset;
+
+  private SiteSummaryReader(
+      String childID,
+      String parent1ID,
+      String parent2ID,
+      ImmutableList<String> contigs,
+      MappedFile mapped,
+      long recordCount,
+      long dataOffset) {
+    this.childID = childID;
+    this.parent1ID = parent1ID;
+    this.parent2ID = parent2ID;
+    this.contigs = contigs;
+    this.mapped = mapped;
+    this.recordCount = recordCount;
+    this.offsetsOffset = dataOffset;
+    this.recordsOffset = offsetsOffset + recordCount * Long.BYTES;
+  }
+
+  public static SiteSummaryReader load(File storeFile) throws IOException {
+    try (CountingInputStream counting =
+            new CountingInputStream(new BufferedInputStream(new FileInputStream(storeFile)));
+        DataInputStream in = new DataInputStream(counting)) {
+      if (in.readInt() != SiteSummaryWriter.MAGIC)
+        throw new IOException(storeFile + " is not a site summary store");
+      int version = in.readInt();
+      if (version != SiteSummaryWriter.VERSION)
+        throw new IOException("Unsupported site summary store version " + version);
+      String childID = in.readUTF();
+      String parent1ID = in.readUTF();
+      String parent2ID = in.readUTF();
+      int contigCount = in.readInt();
+      ImmutableList.Builder<String> contigs = ImmutableList.builderWithExpectedSize(contigCount);
+      for (int i = 0; i < contigCount; i++) {
+        contigs.add(in.readUTF());
+      }
+      long recordCount = in.readLong();
+      return new SiteSummaryReader(
+          childID,
+          parent1ID,
+          parent2ID,
+          contigs.build(),
+          MappedFile.map(storeFile),
+          recordCount,
+          MappedFile.align(counting.getCount()));
+    }
+  }
+
+  /** @return the number of stored sites */
+  public long size() {
+    return recordCount;
+  }
+
+  /** @return the childID */
+  public String getChildID() {
+    return childID;
+  }
+
+  /** @return the parent1ID */
+  public String getParent1ID() {
+    return parent1ID;
+  }
+
+  /** @return the parent2ID */
+  public String getParent2ID() {
+    return parent2ID;
+  }
+
+  /** @return Stream of every stored {@link SiteEvidence}, in the order written */
+  public Stream<SiteEvidence> stream() {
+    return LongStream.range(0, recordCount).mapToObj(this::get);
+  }
+
+  /**
+   * @param index of record to get
+   * @return the {@link SiteEvidence} stored at index
+   */
+  public SiteEvidence get(long index) {
+    long start = recordOffset(index);
+    long end = index + 1 < recordCount ? recordOffset(index + 1) : mapped.size();
+    byte[] record = new byte[(int) (end - start)];
+    mapped.get(start, record);
+    try {
+      return decode(new DataInputStream(new ByteArrayInputStream(record)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private long recordOffset(long index) {
+    return recordsOffset + mapped.getLong(offsetsOffset + index * Long.BYTES);
+  }
+
+  private SiteEvidence decode(DataInputStream in) throws IOException {
+    int contigIndex = in.readInt();
+    String contig = contigs.get(contigIndex);
+    int position = in.readInt();
+    String ref = in.readUTF();
+    String alt = in.readUTF();
+    ReferencePosition pos =
+        alt.isEmpty()
+            ? new ReferencePosition(
+                contig, contigIndex, position, SNPAllele.of((byte) ref.charAt(0)))
+            : ReferencePosition.fromAlleles(
+                contig, contigIndex, position, Allele.create(ref, true), Allele.create(alt, false));
+    double populationAF = in.readDouble();
+    Set<SiteBudget.Degradation> degradations = SiteBudget.noDegradations();
+    int degradationBits = in.readByte();
+    for (SiteBudget.Degradation degradation : SiteBudget.Degradation.values()) {
+      if ((degradationBits & 1 << degradation.ordinal()) != 0) degradations.add(degradation);
+    }
+    Optional<HaplotypeEvaluator.Result> haplotypes = readHaplotypes(in);
+    return new SiteEvidence(
+        pos,
+        Double.isNaN(populationAF) ? Optional.empty() : Optional.of(populationAF),
+        readSummary(in, pos),
+        readSummary(in, pos),
+        readSummary(in, pos),
+        haplotypes,
+        degradations);
+  }
+
+  private static Optional<HaplotypeEvaluator.Result> readHaplotypes(DataInputStream in)
+      throws IOException {
+    if (!in.readBoolean()) return Optional.empty();
+    int otherVariants = in.readInt();
+    int otherTriallelics = in.readInt();
+    int otherBiallelics = in.readInt();
+    int otherDeNovos = in.readInt();
+    int concordanceCount = in.readInt();
+    ImmutableList.Builder<Double> concordances =
+        ImmutableList.builderWithExpectedSize(concordanceCount);
+    for (int i = 0; i < concordanceCount; i++) {
+      concordances.add(in.readDouble());
+    }
+    return Optional.of(
+        new HaplotypeEvaluator.Result(
+            otherVariants, otherTriallelics, otherBiallelics, otherDeNovos, concordances.build()));
+  }
+
+  private static PileupSummary readSummary(DataInputStream in, ReferencePosition pos)
+      throws IOException {
+    boolean downsampled = in.readBoolean();
+    int alleleCount = in.readInt();
+    ImmutableMultiset.Builder<PileAllele> baseCounts = ImmutableMultiset.builder();
+    ImmutableMap.Builder<PileAllele, Double> weightedBaseCounts =
+        ImmutableMap.builderWithExpectedSize(alleleCount);
+    ImmutableMap.Builder<PileAllele, long[]> readStatisticSums =
+        ImmutableMap.builderWithExpectedSize(alleleCount);
+    ImmutableMap.Builder<PileAllele, AlleleLikelihoods> alleleLikelihoods =
+        ImmutableMap.builderWithExpectedSize(alleleCount);
+    for (int i = 0; i < alleleCount; i++) {
+      PileAllele allele = readAllele(in, pos);
+      baseCounts.addCopies(allele, in.readInt());
+      weightedBaseCounts.put(allele, in.readDouble());
+      long[] sums = new long[ReadStatistic.ALL.size()];
+      for (int s = 0; s < sums.length; s++) {
+        sums[s] = in.readLong();
+      }
+      readStatisticSums.put(allele, sums);
+      alleleLikelihoods.put(
+          allele, new AlleleLikelihoods(in.readDouble(), in.readDouble(), in.readDouble()));
+    }
+    return new PileupSummary(
+        baseCounts.build(),
+        weightedBaseCounts.build(),
+        readStatisticSums.build(),
+        alleleLikelihoods.build(),
+        downsampled);
+  }
+
+  private static PileAllele readAllele(DataInputStream in, ReferencePosition pos)
+      throws IOException {
+    byte kind = in.readByte();
+    switch (kind) {
+      case SiteSummaryWriter.REF_ALLELE:
+        return pos.getRefAllele();
+      case SiteSummaryWriter.ALT_ALLELE:
+        return pos.getAltAllele().get();
+      case SiteSummaryWriter.SNP_ALLELE:
+        return SNPAllele.of(in.readByte());
+      default:
+        throw new IOException("Unknown allele kind " + kind + " at " + pos);
+    }
+  }
+}
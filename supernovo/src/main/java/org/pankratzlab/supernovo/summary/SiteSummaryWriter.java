@@ -0,0 +1,182 @@
+package org.pankratzlab.supernovo.summary;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.pankratzlab.supernovo.HaplotypeEvaluator;
+import org.pankratzlab.supernovo.PileAllele;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.SNPAllele;
+import org.pankratzlab.supernovo.SiteBudget;
+import org.pankratzlab.supernovo.SiteEvidence;
+import org.pankratzlab.supernovo.pileup.AlleleLikelihoods;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import org.pankratzlab.supernovo.pileup.ReadStatistic;
+import org.pankratzlab.supernovo.utilities.MappedFile;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+
+/**
+ * Writes the {@link SiteEvidence} of evaluated sites to a store read by {@link SiteSummaryReader}.
+ * Records are spooled to temporary files as they are written and assembled behind the header on
+ * {@link #close()}, so memory use does not depend on the number of sites.
+ *
+ * <p>Layout: header (magic, version, sample ids, contig names, record count) padded to 8 bytes,
+ * followed by the offset of each record from the end of the offsets as longs and the records.
+ */
+public class SiteSummaryWriter implements Closeable {
+
+  static final int MAGIC = 0x534e5353;
+  static final int VERSION = 2;
+
+  static final byte REF_ALLELE = 0;
+  static final byte ALT_ALLELE = 1;
+  static final byte SNP_ALLELE = 2;
+
+  private final File output;
+  private final String childID;
+  private final String parent1ID;
+  private final String parent2ID;
+  private final Map<String, Integer> contigIndices = Maps.newLinkedHashMap();
+  private final File offsetsFile;
+  private final File recordsFile;
+  private final DataOutputStream offsets;
+  private final CountingOutputStream countingRecords;
+  private final DataOutputStream records;
+  private long recordCount = 0;
+
+  /**
+   * @param output file to write the store to
+   * @param childID id of the child
+   * @param parent1ID id of parent 1
+   * @param parent2ID id of parent 2
+   * @throws IOException
+   */
+  public SiteSummaryWriter(File output, String childID, String parent1ID, String parent2ID)
+      throws IOException {
+    super();
+    this.output = output;
+    this.childID = childID;
+    this.parent1ID = parent1ID;
+    this.parent2ID = parent2ID;
+    File tmpDir = output.getAbsoluteFile().getParentFile();
+    offsetsFile = File.createTempFile(output.getName(), ".offsets", tmpDir);
+    recordsFile = File.createTempFile(output.getName(), ".records", tmpDir);
+    offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile)));
+    countingRecords =
+        new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile)));
+    records = new DataOutputStream(countingRecords);
+  }
+
+  /**
+   * @param evidence to write
+   * @throws IOException
+   */
+  public void write(SiteEvidence evidence) throws IOException {
+    offsets.writeLong(countingRecords.getCount());
+    ReferencePosition pos = evidence.getPos();
+    Integer contigIndex = contigIndices.get(pos.getContig());
+    if (contigIndex == null) {
+      contigIndex = contigIndices.size();
+      contigIndices.put(pos.getContig(), contigIndex);
+    }
+    records.writeInt(contigIndex);
+    records.writeInt(pos.getPosition());
+    records.writeUTF(pos.getRefAllele().toString());
+    records.writeUTF(pos.getAltAllele().map(PileAllele::toString).orElse(""));
+    records.writeDouble(evidence.getPopulationAF().orElse(Double.NaN));
+    int degradations = 0;
+    for (SiteBudget.Degradation degradation : evidence.getDegradations()) {
+      degradations |= 1 << degradation.ordinal();
+    }
+    records.writeByte(degradations);
+    writeHaplotypes(evidence.getHaplotypes());
+    writeSummary(pos, evidence.getChild());
+    writeSummary(pos, evidence.getP1());
+    writeSummary(pos, evidence.getP2());
+    recordCount++;
+  }
+
+  private void writeHaplotypes(Optional<HaplotypeEvaluator.Result> haplotypes)
+      throws IOException {
+    records.writeBoolean(haplotypes.isPresent());
+    if (!haplotypes.isPresent()) return;
+    HaplotypeEvaluator.Result result = haplotypes.get();
+    records.writeInt(result.getOtherVariants());
+    records.writeInt(result.getOtherTriallelics());
+    records.writeInt(result.getOtherBiallelics());
+    records.writeInt(result.getOtherDeNovos());
+    List<Double> concordances = result.getConcordances();
+    records.writeInt(concordances.size());
+    for (double concordance : concordances) {
+      records.writeDouble(concordance);
+    }
+  }
+
+  private void writeSummary(ReferencePosition pos, PileupSummary summary) throws IOException {
+    records.writeBoolean(summary.isDownsampled());
+    records.writeInt(summary.getWeightedBaseCounts().size());
+    for (Map.Entry<PileAllele, Double> weighted : summary.getWeightedBaseCounts().entrySet()) {
+      PileAllele allele = weighted.getKey();
+      writeAllele(pos, allele);
+      records.writeInt(summary.getBaseCounts().count(allele));
+      records.writeDouble(weighted.getValue());
+      for (ReadStatistic statistic : ReadStatistic.ALL) {
+        records.writeLong(summary.getReadStatisticSum(allele, statistic));
+      }
+      AlleleLikelihoods likelihoods = summary.getAlleleLikelihoods().get(allele);
+      records.writeDouble(likelihoods.getHomMatch());
+      records.writeDouble(likelihoods.getHetMatch());
+      records.writeDouble(likelihoods.getMismatch());
+    }
+  }
+
+  private void writeAllele(ReferencePosition pos, PileAllele allele) throws IOException {
+    if (allele.equals(pos.getRefAllele())) {
+      records.writeByte(REF_ALLELE);
+    } else if (pos.getAltAllele().filter(allele::equals).isPresent()) {
+      records.writeByte(ALT_ALLELE);
+    } else if (allele instanceof SNPAllele) {
+      records.writeByte(SNP_ALLELE);
+      records.writeByte(allele.toString().charAt(0));
+    } else {
+      throw new IllegalStateException("Cannot summarize allele " + allele + " at " + pos);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      offsets.close();
+      records.close();
+      try (CountingOutputStream counting =
+              new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+          DataOutputStream out = new DataOutputStream(counting)) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(childID);
+        out.writeUTF(parent1ID);
+        out.writeUTF(parent2ID);
+        out.writeInt(contigIndices.size());
+        for (String contig : contigIndices.keySet()) {
+          out.writeUTF(contig);
+        }
+        out.writeLong(recordCount);
+        long padding = MappedFile.align(counting.getCount()) - counting.getCount();
+        for (long i = 0; i < padding; i++) out.writeByte(0);
+        Files.asByteSource(offsetsFile).copyTo(out);
+        Files.asByteSource(recordsFile).copyTo(out);
+      }
+    } finally {
+      offsetsFile.delete();
+      recordsFile.delete();
+    }
+  }
+}
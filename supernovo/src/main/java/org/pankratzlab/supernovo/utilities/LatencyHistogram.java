@@ -0,0 +1,99 @@
+package org.pankratzlab.supernovo.utilities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe, fixed-size histogram of nanosecond latencies using log-linear buckets (8 sub-buckets
+ * per power of two), so recording is a couple of bit operations and an atomic increment and
+ * reported percentiles are within 12.5% of the true value
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+  /** @param nanos latency to record */
+  public void record(long nanos) {
+    long value = Math.max(0L, nanos);
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    total.add(value);
+    max.accumulate(value);
+  }
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) return (int) value;
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS * (shift + 1) + subBucket;
+  }
+
+  private static long bucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) return bucket;
+    int shift = bucket / SUB_BUCKETS - 1;
+    long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+
+  /** @return number of recorded latencies */
+  public long count() {
+    return count.sum();
+  }
+
+  /** @return sum of recorded latencies in nanoseconds */
+  public long totalNanos() {
+    return total.sum();
+  }
+
+  /** @return largest recorded latency in nanoseconds */
+  public long maxNanos() {
+    return max.get();
+  }
+
+  /** @return mean recorded latency in nanoseconds */
+  public double meanNanos() {
+    long n = count();
+    return n == 0 ? 0.0 : (double) totalNanos() / n;
+  }
+
+  /**
+   * @param quantile between 0 and 1
+   * @return upper bound of the bucket holding the quantile, in nanoseconds
+   */
+  public long percentileNanos(double quantile) {
+    long n = count();
+    if (n == 0) return 0L;
+    long rank = (long) Math.ceil(quantile * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank && seen > 0) return Math.min(bucketUpperBound(i), maxNanos());
+    }
+    return maxNanos();
+  }
+
+  /** @return single line summary of the histogram in milliseconds */
+  public String summary() {
+    return String.format(
+        "n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+        count(),
+        meanNanos() / TimeUnit.MILLISECONDS.toNanos(1),
+        millis(percentileNanos(0.5)),
+        millis(percentileNanos(0.9)),
+        millis(percentileNanos(0.99)),
+        millis(maxNanos()));
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,100 @@
+package org.pankratzlab.supernovo.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only, memory-mapped view of a file addressed by long offsets. Files larger than a single
+ * {@link MappedByteBuffer} are mapped as overlapping segments so that any primitive read is served
+ * by one segment without copying.
+ */
+public final class MappedFile {
+
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+  private static final int SEGMENT_OVERLAP = Long.BYTES;
+
+  private final MappedByteBuffer[] segments;
+  private final long size;
+
+  private MappedFile(MappedByteBuffer[] segments, long size) {
+    this.segments = segments;
+    this.size = size;
+  }
+
+  public static MappedFile map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      long size = channel.size();
+      int segmentCount = (int) Math.max(1, (size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+      MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long start = (long) i << SEGMENT_SHIFT;
+        long length = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start);
+        segments[i] = channel.map(MapMode.READ_ONLY, start, Math.max(0, length));
+      }
+      return new MappedFile(segments, size);
+    }
+  }
+
+  /** @return the size of the file in bytes */
+  public long size() {
+    return size;
+  }
+
+  private MappedByteBuffer segment(long offset) {
+    return segments[(int) (offset >>> SEGMENT_SHIFT)];
+  }
+
+  private static int segmentOffset(long offset) {
+    return (int) (offset & (SEGMENT_SIZE - 1));
+  }
+
+  public byte getByte(long offset) {
+    return segment(offset).get(segmentOffset(offset));
+  }
+
+  public short getShort(long offset) {
+    return segment(offset).getShort(segmentOffset(offset));
+  }
+
+  public int getInt(long offset) {
+    return segment(offset).getInt(segmentOffset(offset));
+  }
+
+  public long getLong(long offset) {
+    return segment(offset).getLong(segmentOffset(offset));
+  }
+
+  public float getFloat(long offset) {
+    return segment(offset).getFloat(segmentOffset(offset));
+  }
+
+  public double getDouble(long offset) {
+    return segment(offset).getDouble(segmentOffset(offset));
+  }
+
+  /**
+   * Copies {@code dst.length} bytes starting at {@code offset} into {@code dst}
+   *
+   * @param offset to read from
+   * @param dst destination array
+   */
+  public void get(long offset, byte[] dst) {
+    for (int i = 0; i < dst.length; i++) {
+      dst[i] = getByte(offset + i);
+    }
+  }
+
+  /**
+   * @param offset to align
+   * @return the smallest 8-byte aligned offset at or after {@code offset}
+   */
+  public static long align(long offset) {
+    return (offset + Long.BYTES - 1) & -Long.BYTES;
+  }
+}
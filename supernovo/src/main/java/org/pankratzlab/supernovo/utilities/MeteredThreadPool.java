@@ -0,0 +1,69 @@
+package org.pankratzlab.supernovo.utilities;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.pankratzlab.supernovo.output.RunReport;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/** Fixed size pool of daemon threads that tracks how much of its capacity tasks have used */
+public class MeteredThreadPool extends ThreadPoolExecutor {
+
+  private final long startNanos = System.nanoTime();
+  private final LongAdder busyNanos = new LongAdder();
+  private final LongAdder completedTasks = new LongAdder();
+  private final ThreadLocal<Long> taskStartNanos = new ThreadLocal<>();
+
+  /**
+   * @param threads number of threads in the pool
+   * @param nameFormat {@link String#format} pattern for thread names, given the thread number
+   */
+  public MeteredThreadPool(int threads, String nameFormat) {
+    super(
+        threads,
+        threads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    super.beforeExecute(t, r);
+    taskStartNanos.set(System.nanoTime());
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+    busyNanos.add(System.nanoTime() - taskStartNanos.get());
+    completedTasks.increment();
+    super.afterExecute(r, t);
+  }
+
+  /** @return total time threads of this pool have spent running tasks, in nanoseconds */
+  public long getBusyNanos() {
+    return busyNanos.sum();
+  }
+
+  /** @return fraction of the pool's thread time since creation spent running tasks */
+  public double getUtilization() {
+    long elapsed = System.nanoTime() - startNanos;
+    return elapsed == 0L ? 0.0 : getBusyNanos() / ((double) elapsed * getMaximumPoolSize());
+  }
+
+  /**
+   * Add pool usage statistics to report
+   *
+   * @param report {@link RunReport} to add to
+   * @param name prefix for the metrics of this pool
+   */
+  public void reportMetrics(RunReport report, String name) {
+    report
+        .put(name + ".threads", getMaximumPoolSize())
+        .put(name + ".tasks", completedTasks.sum())
+        .put(name + ".busyMillis", getBusyNanos() / 1_000_000.0)
+        .put(name + ".utilization", getUtilization());
+  }
+}
@@ -0,0 +1,25 @@
+package org.pankratzlab.supernovo.utilities;
+
+/**
+ * Packs a contig index and a 1-based coordinate into a single long, ordered first by contig index
+ * and then by coordinate
+ */
+public final class PackedPosition {
+
+  private static final int POSITION_BITS = 32;
+  private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+  private PackedPosition() {}
+
+  public static long pack(int contigIndex, int position) {
+    return ((long) contigIndex << POSITION_BITS) | (position & POSITION_MASK);
+  }
+
+  public static int contigIndex(long packed) {
+    return (int) (packed >>> POSITION_BITS);
+  }
+
+  public static int position(long packed) {
+    return (int) (packed & POSITION_MASK);
+  }
+}
@@ -2,6 +2,15 @@ package org.pankratzlab.supernovo.utilities;
 
 public final class Phred {
 
+  /** Accuracies of every phred score a base or mapping quality can take */
+  private static final double[] ACCURACIES = new double[256];
+
+  static {
+    for (int phred = 0; phred < ACCURACIES.length; phred++) {
+      ACCURACIES[phred] = 1.0 - getErrorProbability(phred);
+    }
+  }
+
   private Phred() {}
 
   public static double getErrorProbability(int phred) {
@@ -9,6 +18,7 @@ public final class Phred {
   }
 
   public static double getAccuracy(int phred) {
+    if (phred >= 0 && phred < ACCURACIES.length) return ACCURACIES[phred];
     return 1.0 - getErrorProbability(phred);
   }
 }
@@ -0,0 +1,63 @@
+package org.pankratzlab.supernovo.pileup;
+
+import java.util.Arrays;
+
+/**
+ * JDK 17 and later version of the pileup column reductions. When the incubating Vector API is
+ * resolved, with {@code --add-modules jdk.incubator.vector}, and the hardware has vectors of at
+ * least {@value #STRIPES} / 2 doubles, weighted depths are summed by {@link AlleleColumnsVector};
+ * otherwise by the same scalar loop as the JDK 8 version. Both sum each allele's weights into
+ * {@value #STRIPES} stripes of every {@value #STRIPES}th read, each in read order, then the stripes
+ * pairwise, so results do not depend on the path taken.
+ */
+final class AlleleColumns {
+
+  /** Number of stripes each allele's weights are summed in, a multiple of any vector length used */
+  static final int STRIPES = 8;
+
+  private static final boolean VECTORIZED =
+      ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+          && AlleleColumnsVector.isSupported();
+
+  private AlleleColumns() {}
+
+  /**
+   * @param alleleCodes code of the allele supported by each read, from 0 to alleleCount - 1
+   * @param weights weighted depth of each read
+   * @param reads number of reads in alleleCodes and weights
+   * @param alleleCount number of distinct allele codes
+   * @return weighted depth of each allele code
+   */
+  static double[] weightedDepths(int[] alleleCodes, double[] weights, int reads, int alleleCount) {
+    double[] stripes = new double[alleleCount * STRIPES];
+    int from =
+        VECTORIZED ? AlleleColumnsVector.sumStripes(alleleCodes, weights, reads, stripes) : 0;
+    for (int i = from; i < reads; i++) {
+      stripes[alleleCodes[i] * STRIPES + (i & (STRIPES - 1))] += weights[i];
+    }
+    double[] depths = new double[alleleCount];
+    for (int code = 0; code < alleleCount; code++) {
+      depths[code] = combineStripes(stripes, code * STRIPES);
+    }
+    return depths;
+  }
+
+  /**
+   * @param stripes stripe sums
+   * @param offset of the first of {@link #STRIPES} stripes to combine
+   * @return sum of the stripes, added pairwise
+   */
+  static double combineStripes(double[] stripes, int offset) {
+    return ((stripes[offset] + stripes[offset + 1]) + (stripes[offset + 2] + stripes[offset + 3]))
+        + ((stripes[offset + 4] + stripes[offset + 5])
+            + (stripes[offset + 6] + stripes[offset + 7]));
+  }
+
+  /**
+   * @param values to sum, one per allele so too few to vectorize
+   * @return compensated sum of values, as summed by {@link java.util.stream.DoubleStream#sum()}
+   */
+  static double sum(double[] values) {
+    return Arrays.stream(values).sum();
+  }
+}
@@ -0,0 +1,62 @@
+package org.pankratzlab.supernovo.pileup;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernel of {@link AlleleColumns}, only loaded once the incubating module is known to be
+ * resolved. Each block of {@link AlleleColumns#STRIPES} reads is split into a low and a high half
+ * vector, so every lane accumulates one stripe and the two halves' adds are independent.
+ */
+final class AlleleColumnsVector {
+
+  private static final int HALF = AlleleColumns.STRIPES / 2;
+  private static final VectorSpecies<Double> WEIGHTS = DoubleVector.SPECIES_256;
+  private static final VectorSpecies<Integer> CODES = IntVector.SPECIES_128;
+
+  private AlleleColumnsVector() {}
+
+  /** @return true if the hardware adds {@value #HALF} doubles at once */
+  static boolean isSupported() {
+    return WEIGHTS.length() == HALF
+        && CODES.length() == HALF
+        && DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= WEIGHTS.vectorBitSize();
+  }
+
+  /**
+   * Sums weights into the stripes of their allele code, for whole blocks of {@link
+   * AlleleColumns#STRIPES} reads
+   *
+   * @param alleleCodes code of the allele supported by each read
+   * @param weights weighted depth of each read
+   * @param reads number of reads in alleleCodes and weights
+   * @param stripes {@link AlleleColumns#STRIPES} zeroed stripes per allele code, summed into
+   * @return number of reads summed, the remaining reads are left to the scalar loop
+   */
+  static int sumStripes(int[] alleleCodes, double[] weights, int reads, double[] stripes) {
+    int blocked = reads - (reads & (AlleleColumns.STRIPES - 1));
+    for (int offset = 0; offset < stripes.length; offset += AlleleColumns.STRIPES) {
+      int code = offset / AlleleColumns.STRIPES;
+      DoubleVector low = DoubleVector.zero(WEIGHTS);
+      DoubleVector high = DoubleVector.zero(WEIGHTS);
+      for (int i = 0; i < blocked; i += AlleleColumns.STRIPES) {
+        low = low.add(DoubleVector.fromArray(WEIGHTS, weights, i), codes(alleleCodes, i).eq(code));
+        high =
+            high.add(
+                DoubleVector.fromArray(WEIGHTS, weights, i + HALF),
+                codes(alleleCodes, i + HALF).eq(code));
+      }
+      low.intoArray(stripes, offset);
+      high.intoArray(stripes, offset + HALF);
+    }
+    return blocked;
+  }
+
+  /** @return {@value #HALF} allele codes from offset, as doubles to compare in the same shape */
+  private static DoubleVector codes(int[] alleleCodes, int offset) {
+    IntVector codes = IntVector.fromArray(CODES, alleleCodes, offset);
+    return (DoubleVector) codes.convertShape(VectorOperators.I2D, WEIGHTS, 0);
+  }
+}
@@ -0,0 +1,110 @@
+package org.pankratzlab.supernovo.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+import org.pankratzlab.supernovo.CallingThresholds;
+import org.pankratzlab.supernovo.GenomePosition;
+import org.pankratzlab.supernovo.HaplotypeEvaluator;
+import org.pankratzlab.supernovo.ReferencePosition;
+import org.pankratzlab.supernovo.SNPAllele;
+import org.pankratzlab.supernovo.SiteBudget;
+import org.pankratzlab.supernovo.pileup.Pileup;
+import org.pankratzlab.supernovo.pileup.PileupSummary;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+
+public class DeNovoResultTest {
+
+  private static final int READ_PAIRS = 500;
+  private static final int POSITION = 120;
+  private static final int MAX_GCS = 50;
+
+  @Test
+  public void retainsNoReadsOrPileups() throws InterruptedException {
+    List<WeakReference<Object>> evidence = new ArrayList<>();
+    DeNovoResult result = evaluate(evidence);
+    for (int i = 0; i < MAX_GCS && evidence.stream().anyMatch(r -> r.get() != null); i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertTrue(
+        "Result retains reads, pileups or summaries",
+        evidence.stream().allMatch(r -> r.get() == null));
+    assertEquals(POSITION, result.position);
+  }
+
+  @Test
+  public void holdsOnlyPrimitivesAndStrings() {
+    assertPrimitiveOnly(DeNovoResult.class);
+  }
+
+  private static DeNovoResult evaluate(List<WeakReference<Object>> evidence) {
+    ReferencePosition pos =
+        new ReferencePosition("chr1", 0, POSITION, SNPAllele.A, SNPAllele.C);
+    List<PileupSummary> summaries = new ArrayList<>();
+    for (int sample = 0; sample < 3; sample++) {
+      Pileup pileup = pileup(pos);
+      evidence.add(new WeakReference<>(pileup));
+      evidence.add(new WeakReference<>(pileup.getSummary()));
+      pileup.getRecords().forEach(record -> evidence.add(new WeakReference<>(record)));
+      summaries.add(pileup.getSummary());
+    }
+    return new DeNovoResult(
+        pos,
+        Optional.empty(),
+        new HaplotypeEvaluator.Result(0, 0, 0, 0, ImmutableList.of()),
+        SiteBudget.noDegradations(),
+        CallingThresholds.DEFAULT,
+        "child",
+        summaries.get(0),
+        "p1",
+        summaries.get(1),
+        "p2",
+        summaries.get(2));
+  }
+
+  private static Pileup pileup(GenomePosition pos) {
+    SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
+    ImmutableList.Builder<SAMRecord> records = ImmutableList.builder();
+    for (int i = 0; i < READ_PAIRS; i++) {
+      records.add(
+          builder
+              .addPair(
+                  "read" + i,
+                  0,
+                  POSITION - 20 + i % 20,
+                  POSITION + 200,
+                  false,
+                  false,
+                  "36M",
+                  "36M",
+                  false,
+                  true,
+                  30)
+              .get(0));
+    }
+    return new Pileup(records.build(), pos);
+  }
+
+  private static void assertPrimitiveOnly(Class<?> outputClass) {
+    for (Field field : outputClass.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers())) continue;
+      Class<?> type = field.getType();
+      if (OutputFields.class.isAssignableFrom(type)) assertPrimitiveOnly(type);
+      else
+        assertTrue(
+            field + " is not a primitive or String",
+            type.isPrimitive()
+                || String.class.equals(type)
+                || type.isArray() && type.getComponentType().isPrimitive());
+    }
+  }
+}
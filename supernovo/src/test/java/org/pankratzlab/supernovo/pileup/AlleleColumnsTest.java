@@ -0,0 +1,77 @@
+package org.pankratzlab.supernovo.pileup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Random;
+import org.junit.Test;
+
+public class AlleleColumnsTest {
+
+  private static final int ALLELES = 4;
+  private static final int[] READ_COUNTS = {0, 1, 7, 8, 9, 63, 64, 1000, 16387};
+  private static final String VERSIONED_CLASSES = "META-INF/versions/17/";
+
+  @Test
+  public void stripedSumMatchesSequentialSum() {
+    Random random = new Random(42);
+    for (int reads : READ_COUNTS) {
+      int[] codes = codes(random, reads);
+      double[] weights = weights(random, reads);
+      double[] depths = AlleleColumns.weightedDepths(codes, weights, reads, ALLELES);
+      for (int code = 0; code < ALLELES; code++) {
+        double expected = 0.0;
+        for (int i = 0; i < reads; i++) if (codes[i] == code) expected += weights[i];
+        assertEquals(expected, depths[code], 1e-9 * reads);
+      }
+    }
+  }
+
+  @Test
+  public void vectorKernelMatchesScalarExactly() throws Exception {
+    Method vectorized = versionedWeightedDepths();
+    Random random = new Random(7);
+    for (int reads : READ_COUNTS) {
+      int[] codes = codes(random, reads);
+      double[] weights = weights(random, reads);
+      assertArrayEquals(
+          "Vector and scalar depths differ for " + reads + " reads",
+          AlleleColumns.weightedDepths(codes, weights, reads, ALLELES),
+          (double[]) vectorized.invoke(null, codes, weights, reads, ALLELES),
+          0.0);
+    }
+  }
+
+  private static Method versionedWeightedDepths() throws Exception {
+    URL classes = AlleleColumns.class.getProtectionDomain().getCodeSource().getLocation();
+    File versioned = new File(new File(classes.toURI()), VERSIONED_CLASSES);
+    assumeTrue("No versioned classes in " + classes, versioned.isDirectory());
+    ClassLoader loader = new URLClassLoader(new URL[] {versioned.toURI().toURL()}, null);
+    Class<?> columns = Class.forName(AlleleColumns.class.getName(), true, loader);
+    Field isVectorized = columns.getDeclaredField("VECTORIZED");
+    isVectorized.setAccessible(true);
+    assumeTrue("Vector API not resolved or supported", isVectorized.getBoolean(null));
+    Method weightedDepths =
+        columns.getDeclaredMethod(
+            "weightedDepths", int[].class, double[].class, int.class, int.class);
+    weightedDepths.setAccessible(true);
+    return weightedDepths;
+  }
+
+  private static int[] codes(Random random, int reads) {
+    int[] codes = new int[reads];
+    for (int i = 0; i < reads; i++) codes[i] = random.nextInt(ALLELES);
+    return codes;
+  }
+
+  private static double[] weights(Random random, int reads) {
+    double[] weights = new double[reads];
+    for (int i = 0; i < reads; i++) weights[i] = random.nextDouble() * Math.pow(10, i % 5 - 2);
+    return weights;
+  }
+}